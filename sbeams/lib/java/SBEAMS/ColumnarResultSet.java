@@ -0,0 +1,367 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.*;
+
+//-----------------------------------------------------------------------------------------------
+// Column-oriented copy of selected columns from a result set.  Numeric columns are held
+// in primitive arrays and string columns as int codes into a dictionary of distinct
+// values, so wide tables with many rows cost a fraction of a String[][].  Only the
+// requested columns are tokenized while the result set is parsed.  An inferred column is
+// only numeric if every value reads back from it exactly as the server sent it.
+public class ColumnarResultSet {
+
+  public static final int AUTO = 0;
+  public static final int STRING = 1;
+  public static final int INT = 2;
+  public static final int LONG = 3;
+  public static final int DOUBLE = 4;
+  private static String[] TYPE_NAMES = {"AUTO", "STRING", "INT", "LONG", "DOUBLE"};
+
+  private String[] names;
+  private Column[] columns;
+  private int rowCount = 0;
+//-----------------------------------------------------------------------------------------------
+  abstract static class Column {
+	protected BitSet nulls = new BitSet();
+	abstract int getType();
+	abstract void add(int row, String value);
+	abstract String getString(int row);
+	abstract void trim(int rows);
+	static int grow(int capacity, int row) {
+	  return (row < capacity) ? capacity : Math.max(row+1, capacity*2);
+	}
+	// Numeric columns ignore surrounding blanks, and hold blank values as nulls
+	static String number(String value) {
+	  if (value == null)
+		return null;
+	  value = value.trim();
+	  return (value.length() == 0) ? null : value;
+	}
+  } //Column class
+//-----------------------------------------------------------------------------------------------
+  static class IntColumn extends Column {
+	int[] values = new int[1024];
+	int getType() {
+	  return INT;
+	}
+	void add(int row, String value) {
+	  if (row >= values.length) {
+		int[] grown = new int[grow(values.length, row)];
+		System.arraycopy(values, 0, grown, 0, values.length);
+		values = grown;
+	  }
+	  value = number(value);
+	  if (value == null)
+		nulls.set(row);
+	  else
+		values[row] = Integer.parseInt(value);
+	}
+	String getString(int row) {
+	  return nulls.get(row) ? null : String.valueOf(values[row]);
+	}
+	void trim(int rows) {
+	  int[] exact = new int[rows];
+	  System.arraycopy(values, 0, exact, 0, rows);
+	  values = exact;
+	}
+  } //IntColumn class
+//-----------------------------------------------------------------------------------------------
+  static class LongColumn extends Column {
+	long[] values = new long[1024];
+	int getType() {
+	  return LONG;
+	}
+	void add(int row, String value) {
+	  if (row >= values.length) {
+		long[] grown = new long[grow(values.length, row)];
+		System.arraycopy(values, 0, grown, 0, values.length);
+		values = grown;
+	  }
+	  value = number(value);
+	  if (value == null)
+		nulls.set(row);
+	  else
+		values[row] = Long.parseLong(value);
+	}
+	String getString(int row) {
+	  return nulls.get(row) ? null : String.valueOf(values[row]);
+	}
+	void trim(int rows) {
+	  long[] exact = new long[rows];
+	  System.arraycopy(values, 0, exact, 0, rows);
+	  values = exact;
+	}
+  } //LongColumn class
+//-----------------------------------------------------------------------------------------------
+  static class DoubleColumn extends Column {
+	double[] values = new double[1024];
+	int getType() {
+	  return DOUBLE;
+	}
+	void add(int row, String value) {
+	  if (row >= values.length) {
+		double[] grown = new double[grow(values.length, row)];
+		System.arraycopy(values, 0, grown, 0, values.length);
+		values = grown;
+	  }
+	  value = number(value);
+	  if (value == null) {
+		nulls.set(row);
+		values[row] = Double.NaN;
+	  }else {
+		values[row] = Double.parseDouble(value);
+	  }
+	}
+	String getString(int row) {
+	  return nulls.get(row) ? null : String.valueOf(values[row]);
+	}
+	void trim(int rows) {
+	  double[] exact = new double[rows];
+	  System.arraycopy(values, 0, exact, 0, rows);
+	  values = exact;
+	}
+  } //DoubleColumn class
+//-----------------------------------------------------------------------------------------------
+  static class StringColumn extends Column {
+	int[] codes = new int[1024];
+	HashMap<String,Integer> lookup = new HashMap<String,Integer>();
+	ArrayList<String> dictionary = new ArrayList<String>();
+	int getType() {
+	  return STRING;
+	}
+	void add(int row, String value) {
+	  if (row >= codes.length) {
+		int[] grown = new int[grow(codes.length, row)];
+		System.arraycopy(codes, 0, grown, 0, codes.length);
+		codes = grown;
+	  }
+	  if (value == null) {
+		nulls.set(row);
+		codes[row] = -1;
+		return;
+	  }
+	  Integer code = lookup.get(value);
+	  if (code == null) {
+		code = Integer.valueOf(dictionary.size());
+		lookup.put(value, code);
+		dictionary.add(value);
+	  }
+	  codes[row] = code.intValue();
+	}
+	String getString(int row) {
+	  return (codes[row] < 0) ? null : dictionary.get(codes[row]);
+	}
+	void trim(int rows) {
+	  int[] exact = new int[rows];
+	  System.arraycopy(codes, 0, exact, 0, rows);
+	  codes = exact;
+	  lookup = null;
+	}
+  } //StringColumn class
+//-----------------------------------------------------------------------------------------------
+  // Infers its type while the values stream in, holding them in the narrowest column that
+  // reads every one back unchanged: INT, then LONG, or DOUBLE for values such as 0.5 that
+  // print the same as doubles.  Empty strings are nulls there.  The first value that does
+  // not fit moves the column over once, to LONG or else to STRING, and the values moved
+  // across still read as the text they arrived as.
+  static class AutoColumn extends Column {
+	Column column = new IntColumn();
+	BitSet empty = new BitSet();
+	boolean seen = false;
+	int getType() {
+	  return column.getType();
+	}
+	void add(int row, String value) {
+	  if (column instanceof StringColumn || value == null) {
+		column.add(row, value);
+		return;
+	  }
+	  if (value.length() == 0) {
+		empty.set(row);
+		column.add(row, null);
+		return;
+	  }
+	  int type = fit(value);
+	  int current = column.getType();
+	  if (type != current && !(type == INT && current == LONG)) {
+		if (!seen)
+		  column = copy(newColumn(type), row);
+		else if (type == LONG && current == INT)
+		  column = copy(new LongColumn(), row);
+		else
+		  column = copy(new StringColumn(), row);
+	  }
+	  seen = true;
+	  column.add(row, value);
+	}
+	String getString(int row) {
+	  return column.getString(row);
+	}
+	void trim(int rows) {
+	  column.trim(rows);
+	}
+	private Column copy(Column wider, int rows) {
+	  boolean text = wider instanceof StringColumn;
+	  for (int m=0;m<rows;m++)
+		wider.add(m, (text && empty.get(m)) ? "" : column.getString(m));
+	  return wider;
+	}
+	private static Column newColumn(int type) {
+	  if (type == INT)
+		return new IntColumn();
+	  if (type == LONG)
+		return new LongColumn();
+	  if (type == DOUBLE)
+		return new DoubleColumn();
+	  return new StringColumn();
+	}
+	// The narrowest type that gives the value back as it is, so 007 and 1.50 stay strings
+	private static int fit(String value) {
+	  boolean integer = true;
+	  for (int m=0;m<value.length();m++) {
+		char c = value.charAt(m);
+		if (c >= '0' && c <= '9' || (m == 0 && c == '-'))
+		  continue;
+		if (c != '.' && c != 'e' && c != 'E' && c != '-' && c != '+')
+		  return STRING;
+		integer = false;
+	  }
+	  try {
+		if (integer) {
+		  long number = Long.parseLong(value);
+		  if (!String.valueOf(number).equals(value))
+			return STRING;
+		  return (number == (int)number) ? INT : LONG;
+		}
+		if (!String.valueOf(Double.parseDouble(value)).equals(value))
+		  return STRING;
+		return DOUBLE;
+	  } catch (NumberFormatException e) {
+		return STRING;
+	  }
+	}
+  } //AutoColumn class
+//-----------------------------------------------------------------------------------------------
+  private ColumnarResultSet (String[] names, Column[] columns, int rowCount) {
+	this.names = names;
+	this.columns = columns;
+	this.rowCount = rowCount;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // Reads the named columns (all of them if columnNames is null) from the cursor.  types
+  // may be null, or hold AUTO for any column whose type should be inferred from its data.
+  public static ColumnarResultSet read (ResultSetCursor cursor, String[] columnNames, int[] types)
+	throws IOException {
+	if (columnNames == null)
+	  columnNames = cursor.getHeaders();
+	int[] index = new int[columnNames.length];
+	Column[] columns = new Column[columnNames.length];
+	for (int m=0;m<columnNames.length;m++) {
+	  index[m] = cursor.getColumnIndex(columnNames[m]);
+	  if (index[m] == -1)
+		throw new IOException("No column "+columnNames[m]+" in result set");
+	  int type = (types == null) ? AUTO : types[m];
+	  if (type == INT)
+		columns[m] = new IntColumn();
+	  else if (type == LONG)
+		columns[m] = new LongColumn();
+	  else if (type == DOUBLE)
+		columns[m] = new DoubleColumn();
+	  else if (type == STRING)
+		columns[m] = new StringColumn();
+	  else
+		columns[m] = new AutoColumn();
+	}
+	cursor.setProjection(index);
+
+	int row = 0;
+	while (cursor.next()) {
+	  for (int m=0;m<columns.length;m++) {
+		String value = cursor.getField(index[m]);
+		try {
+		  columns[m].add(row, value);
+		} catch (NumberFormatException e) {
+		  throw new IOException("Row "+(row+1)+", column "+columnNames[m]+": '"+value+
+								"' is not "+TYPE_NAMES[columns[m].getType()]);
+		}
+	  }
+	  row++;
+	}
+
+	for (int m=0;m<columns.length;m++) {
+	  columns[m].trim(row);
+	  if (columns[m] instanceof AutoColumn)
+		columns[m] = ((AutoColumn)columns[m]).column;
+	}
+	String[] names = new String[columnNames.length];
+	System.arraycopy(columnNames, 0, names, 0, names.length);
+	return new ColumnarResultSet(names, columns, row);
+  }//read
+//-----------------------------------------------------------------------------------------------
+  public int getRowCount() {
+	return rowCount;
+  }//getRowCount
+//-----------------------------------------------------------------------------------------------
+  public int getColumnCount() {
+	return columns.length;
+  }//getColumnCount
+//-----------------------------------------------------------------------------------------------
+  public String getColumnName(int column) {
+	return names[column];
+  }//getColumnName
+//-----------------------------------------------------------------------------------------------
+  public int getColumnIndex(String columnName) {
+	for (int m=0;m<names.length;m++) {
+	  if (names[m].equals(columnName))
+		return m;
+	}
+	return -1;
+  }//getColumnIndex
+//-----------------------------------------------------------------------------------------------
+  public int getColumnType(int column) {
+	return columns[column].getType();
+  }//getColumnType
+//-----------------------------------------------------------------------------------------------
+  public boolean isNull(int row, int column) {
+	return columns[column].nulls.get(row);
+  }//isNull
+//-----------------------------------------------------------------------------------------------
+  // Any column, whatever its type; null for null values
+  public String getString(int row, int column) {
+	return columns[column].getString(row);
+  }//getString
+//-----------------------------------------------------------------------------------------------
+  // The primitive arrays below are the backing storage, not copies
+  public int[] getInts(int column) {
+	return ((IntColumn)typed(column, INT)).values;
+  }//getInts
+//-----------------------------------------------------------------------------------------------
+  public long[] getLongs(int column) {
+	return ((LongColumn)typed(column, LONG)).values;
+  }//getLongs
+//-----------------------------------------------------------------------------------------------
+  // Nulls read as NaN
+  public double[] getDoubles(int column) {
+	return ((DoubleColumn)typed(column, DOUBLE)).values;
+  }//getDoubles
+//-----------------------------------------------------------------------------------------------
+  // Dictionary codes for a STRING column; -1 marks a null
+  public int[] getStringCodes(int column) {
+	return ((StringColumn)typed(column, STRING)).codes;
+  }//getStringCodes
+//-----------------------------------------------------------------------------------------------
+  public String[] getDictionary(int column) {
+	ArrayList<String> dictionary = ((StringColumn)typed(column, STRING)).dictionary;
+	return dictionary.toArray(new String[dictionary.size()]);
+  }//getDictionary
+//-----------------------------------------------------------------------------------------------
+  private Column typed(int column, int type) {
+	if (columns[column].getType() != type)
+	  throw new IllegalArgumentException("Column "+names[column]+" is "+
+										 TYPE_NAMES[columns[column].getType()]+", not "+
+										 TYPE_NAMES[type]);
+	return columns[column];
+  }//typed
+//-----------------------------------------------------------------------------------------------
+}//ColumnarResultSet
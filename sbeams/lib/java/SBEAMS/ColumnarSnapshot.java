@@ -0,0 +1,344 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+//-----------------------------------------------------------------------------------------------
+// A ColumnarResultSet saved as a binary file and read back through a memory mapping, so a
+// later run can use a large table without downloading or parsing it again.  The header
+// records the schema, the row count and the URL the table came from.  Layout, big-endian:
+//   "SBCS" version created(long) rowCount columnCount sourceURL
+//   per column: name type offset(long)
+//   per column at its offset, 8-byte aligned: null bitmap (longs), then
+//     INT/LONG/DOUBLE  the values
+//     STRING           dictionary size, string end offsets, UTF-8 bytes, padding, codes
+// Strings in the header are an int byte count followed by UTF-8.
+public class ColumnarSnapshot {
+
+  private static int MAGIC = 0x53424353;
+  private static int VERSION = 1;
+
+  private File file;
+  private ByteBuffer map;
+  private long created;
+  private int rowCount;
+  private String sourceURL;
+  private String[] names;
+  private int[] types;
+  private int[] nullOffsets;
+  private int[] dataOffsets;
+  private String[][] dictionaries;
+//-----------------------------------------------------------------------------------------------
+  private ColumnarSnapshot (File file, ByteBuffer map)
+	throws IOException {
+	this.file = file;
+	this.map = map;
+	if (map.getInt() != MAGIC)
+	  throw new IOException(file+" is not a columnar snapshot");
+	int version = map.getInt();
+	if (version != VERSION)
+	  throw new IOException(file+" has snapshot version "+version+", expected "+VERSION);
+	created = map.getLong();
+	rowCount = map.getInt();
+	int columnCount = map.getInt();
+	sourceURL = readString(map);
+	names = new String[columnCount];
+	types = new int[columnCount];
+	nullOffsets = new int[columnCount];
+	dataOffsets = new int[columnCount];
+	dictionaries = new String[columnCount][];
+	for (int m=0;m<columnCount;m++) {
+	  names[m] = readString(map);
+	  types[m] = map.getInt();
+	  nullOffsets[m] = (int)map.getLong();
+	  dataOffsets[m] = nullOffsets[m]+bitmapBytes(rowCount);
+	  if (types[m] == ColumnarResultSet.STRING) {
+		int size = map.getInt(dataOffsets[m]);
+		int bytes = map.getInt(dataOffsets[m]+4*size);
+		int codes = align(dataOffsets[m]+4+4*size+bytes);
+		// codes follow the dictionary; the dictionary itself is decoded on first use
+		dataOffsets[m] = codes;
+	  }
+	}
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public static ColumnarSnapshot open (File file)
+	throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	  FileChannel channel = raf.getChannel();
+	  if (channel.size() > Integer.MAX_VALUE)
+		throw new IOException(file+" is too large to map");
+	  // the mapping stays valid after the channel is closed
+	  return new ColumnarSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+	} finally {
+	  raf.close();
+	}
+  }//open
+//-----------------------------------------------------------------------------------------------
+  // Writes to a temporary file first so readers never map a half-written snapshot
+  public static void write (ColumnarResultSet rs, String sourceURL, File file)
+	throws IOException {
+	int columns = rs.getColumnCount();
+	int rows = rs.getRowCount();
+	byte[][] names = new byte[columns][];
+	byte[][][] dictionaries = new byte[columns][][];
+	int headerSize = 4+4+8+4+4+4+utf8(sourceURL).length;
+	for (int m=0;m<columns;m++) {
+	  names[m] = utf8(rs.getColumnName(m));
+	  headerSize += 4+names[m].length+4+8;
+	}
+	long[] offsets = new long[columns];
+	long size = align(headerSize);
+	for (int m=0;m<columns;m++) {
+	  offsets[m] = size;
+	  size += bitmapBytes(rows);
+	  int type = rs.getColumnType(m);
+	  if (type == ColumnarResultSet.INT) {
+		size += 4L*rows;
+	  }else if (type == ColumnarResultSet.LONG || type == ColumnarResultSet.DOUBLE) {
+		size += 8L*rows;
+	  }else {
+		String[] dictionary = rs.getDictionary(m);
+		dictionaries[m] = new byte[dictionary.length][];
+		long bytes = 0;
+		for (int d=0;d<dictionary.length;d++) {
+		  dictionaries[m][d] = utf8(dictionary[d]);
+		  bytes += dictionaries[m][d].length;
+		}
+		size = align(size+4+4L*dictionary.length+bytes)+4L*rows;
+	  }
+	  size = align(size);
+	}
+	if (size > Integer.MAX_VALUE)
+	  throw new IOException("table too large for a snapshot: "+size+" bytes");
+
+	File temp = new File(file.getPath()+".tmp");
+	RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+	try {
+	  raf.setLength(size);
+	  FileChannel channel = raf.getChannel();
+	  MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	  out.putInt(MAGIC);
+	  out.putInt(VERSION);
+	  out.putLong(System.currentTimeMillis());
+	  out.putInt(rows);
+	  out.putInt(columns);
+	  writeBytes(out, utf8(sourceURL));
+	  for (int m=0;m<columns;m++) {
+		writeBytes(out, names[m]);
+		out.putInt(rs.getColumnType(m));
+		out.putLong(offsets[m]);
+	  }
+	  for (int m=0;m<columns;m++) {
+		out.position((int)offsets[m]);
+		writeNulls(out, rs, m);
+		int type = rs.getColumnType(m);
+		if (type == ColumnarResultSet.INT) {
+		  out.asIntBuffer().put(rs.getInts(m), 0, rows);
+		}else if (type == ColumnarResultSet.LONG) {
+		  out.asLongBuffer().put(rs.getLongs(m), 0, rows);
+		}else if (type == ColumnarResultSet.DOUBLE) {
+		  out.asDoubleBuffer().put(rs.getDoubles(m), 0, rows);
+		}else {
+		  byte[][] dictionary = dictionaries[m];
+		  out.putInt(dictionary.length);
+		  int end = 0;
+		  for (int d=0;d<dictionary.length;d++) {
+			end += dictionary[d].length;
+			out.putInt(end);
+		  }
+		  for (int d=0;d<dictionary.length;d++)
+			out.put(dictionary[d]);
+		  out.position(align(out.position()));
+		  out.asIntBuffer().put(rs.getStringCodes(m), 0, rows);
+		}
+	  }
+	  out.force();
+	} finally {
+	  raf.close();
+	}
+	if (!temp.renameTo(file)) {
+	  file.delete();
+	  if (!temp.renameTo(file))
+		throw new IOException("could not replace "+file);
+	}
+  }//write
+//-----------------------------------------------------------------------------------------------
+  private static void writeNulls(ByteBuffer out, ColumnarResultSet rs, int column) {
+	int rows = rs.getRowCount();
+	for (int word=0;word<bitmapBytes(rows)/8;word++) {
+	  long bits = 0;
+	  for (int bit=0;bit<64 && word*64+bit<rows;bit++) {
+		if (rs.isNull(word*64+bit, column))
+		  bits |= 1L << bit;
+	  }
+	  out.putLong(bits);
+	}
+  }//writeNulls
+//-----------------------------------------------------------------------------------------------
+  private static void writeBytes(ByteBuffer out, byte[] bytes) {
+	out.putInt(bytes.length);
+	out.put(bytes);
+  }//writeBytes
+//-----------------------------------------------------------------------------------------------
+  private static String readString(ByteBuffer in)
+	throws IOException {
+	byte[] bytes = new byte[in.getInt()];
+	in.get(bytes);
+	return new String(bytes, "UTF-8");
+  }//readString
+//-----------------------------------------------------------------------------------------------
+  private static byte[] utf8(String value)
+	throws UnsupportedEncodingException {
+	return ((value == null) ? "" : value).getBytes("UTF-8");
+  }//utf8
+//-----------------------------------------------------------------------------------------------
+  private static int bitmapBytes(int rows) {
+	return 8*((rows+63)/64);
+  }//bitmapBytes
+//-----------------------------------------------------------------------------------------------
+  private static int align(int offset) {
+	return (offset+7) & ~7;
+  }//align
+//-----------------------------------------------------------------------------------------------
+  private static long align(long offset) {
+	return (offset+7) & ~7L;
+  }//align
+//-----------------------------------------------------------------------------------------------
+  public File getFile() {
+	return file;
+  }//getFile
+//-----------------------------------------------------------------------------------------------
+  public String getSourceURL() {
+	return sourceURL;
+  }//getSourceURL
+//-----------------------------------------------------------------------------------------------
+  // When the snapshot was written, in milliseconds since the epoch
+  public long getCreated() {
+	return created;
+  }//getCreated
+//-----------------------------------------------------------------------------------------------
+  public int getRowCount() {
+	return rowCount;
+  }//getRowCount
+//-----------------------------------------------------------------------------------------------
+  public int getColumnCount() {
+	return names.length;
+  }//getColumnCount
+//-----------------------------------------------------------------------------------------------
+  public String getColumnName(int column) {
+	return names[column];
+  }//getColumnName
+//-----------------------------------------------------------------------------------------------
+  public int getColumnIndex(String columnName) {
+	for (int m=0;m<names.length;m++) {
+	  if (names[m].equals(columnName))
+		return m;
+	}
+	return -1;
+  }//getColumnIndex
+//-----------------------------------------------------------------------------------------------
+  public int getColumnType(int column) {
+	return types[column];
+  }//getColumnType
+//-----------------------------------------------------------------------------------------------
+  public boolean isNull(int row, int column) {
+	long word = map.getLong(nullOffsets[column]+8*(row >> 6));
+	return (word & (1L << (row & 63))) != 0;
+  }//isNull
+//-----------------------------------------------------------------------------------------------
+  public int getInt(int row, int column) {
+	typed(column, ColumnarResultSet.INT);
+	return map.getInt(dataOffsets[column]+4*row);
+  }//getInt
+//-----------------------------------------------------------------------------------------------
+  public long getLong(int row, int column) {
+	typed(column, ColumnarResultSet.LONG);
+	return map.getLong(dataOffsets[column]+8*row);
+  }//getLong
+//-----------------------------------------------------------------------------------------------
+  // Nulls read as NaN
+  public double getDouble(int row, int column) {
+	typed(column, ColumnarResultSet.DOUBLE);
+	return map.getDouble(dataOffsets[column]+8*row);
+  }//getDouble
+//-----------------------------------------------------------------------------------------------
+  // Any column, whatever its type; null for null values
+  public String getString(int row, int column) {
+	if (isNull(row, column))
+	  return null;
+	switch (types[column]) {
+	case ColumnarResultSet.INT:
+	  return String.valueOf(getInt(row, column));
+	case ColumnarResultSet.LONG:
+	  return String.valueOf(getLong(row, column));
+	case ColumnarResultSet.DOUBLE:
+	  return String.valueOf(getDouble(row, column));
+	default:
+	  return getDictionary(column)[map.getInt(dataOffsets[column]+4*row)];
+	}
+  }//getString
+//-----------------------------------------------------------------------------------------------
+  // Read-only views straight onto the mapped file
+  public IntBuffer getInts(int column) {
+	typed(column, ColumnarResultSet.INT);
+	return slice(column, 4).asIntBuffer();
+  }//getInts
+//-----------------------------------------------------------------------------------------------
+  public LongBuffer getLongs(int column) {
+	typed(column, ColumnarResultSet.LONG);
+	return slice(column, 8).asLongBuffer();
+  }//getLongs
+//-----------------------------------------------------------------------------------------------
+  public DoubleBuffer getDoubles(int column) {
+	typed(column, ColumnarResultSet.DOUBLE);
+	return slice(column, 8).asDoubleBuffer();
+  }//getDoubles
+//-----------------------------------------------------------------------------------------------
+  public IntBuffer getStringCodes(int column) {
+	typed(column, ColumnarResultSet.STRING);
+	return slice(column, 4).asIntBuffer();
+  }//getStringCodes
+//-----------------------------------------------------------------------------------------------
+  public synchronized String[] getDictionary(int column) {
+	typed(column, ColumnarResultSet.STRING);
+	if (dictionaries[column] == null) {
+	  int start = nullOffsets[column]+bitmapBytes(rowCount);
+	  int size = map.getInt(start);
+	  int bytes = start+4+4*size;
+	  String[] dictionary = new String[size];
+	  int from = 0;
+	  try {
+		for (int d=0;d<size;d++) {
+		  int to = map.getInt(start+4+4*d);
+		  byte[] utf8 = new byte[to-from];
+		  ByteBuffer view = map.duplicate();
+		  view.position(bytes+from);
+		  view.get(utf8);
+		  dictionary[d] = new String(utf8, "UTF-8");
+		  from = to;
+		}
+	  } catch (UnsupportedEncodingException e) {
+		throw new IllegalStateException(e.toString());
+	  }
+	  dictionaries[column] = dictionary;
+	}
+	return dictionaries[column];
+  }//getDictionary
+//-----------------------------------------------------------------------------------------------
+  private ByteBuffer slice(int column, int width) {
+	ByteBuffer view = map.duplicate();
+	view.position(dataOffsets[column]);
+	view.limit(dataOffsets[column]+width*rowCount);
+	return view.slice().asReadOnlyBuffer();
+  }//slice
+//-----------------------------------------------------------------------------------------------
+  private void typed(int column, int type) {
+	if (types[column] != type)
+	  throw new IllegalArgumentException("Column "+names[column]+" is not of type "+type);
+  }//typed
+//-----------------------------------------------------------------------------------------------
+}//ColumnarSnapshot
@@ -0,0 +1,52 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+//-----------------------------------------------------------------------------------------------
+// Counts the bytes read through it, optionally adding them to a running total as well
+public class CountingInputStream extends FilterInputStream {
+
+  private long count = 0;
+  private AtomicLong total;
+//-----------------------------------------------------------------------------------------------
+  public CountingInputStream (InputStream in) {
+	this(in, null);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public CountingInputStream (InputStream in, AtomicLong total) {
+	super(in);
+	this.total = total;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public int read() throws IOException {
+	int b = super.read();
+	if (b != -1)
+	  add(1);
+	return b;
+  }//read
+//-----------------------------------------------------------------------------------------------
+  public int read(byte[] b, int off, int len) throws IOException {
+	int n = super.read(b, off, len);
+	if (n > 0)
+	  add(n);
+	return n;
+  }//read
+//-----------------------------------------------------------------------------------------------
+  public long skip(long n) throws IOException {
+	long skipped = super.skip(n);
+	add(skipped);
+	return skipped;
+  }//skip
+//-----------------------------------------------------------------------------------------------
+  private void add(long n) {
+	count += n;
+	if (total != null)
+	  total.addAndGet(n);
+  }//add
+//-----------------------------------------------------------------------------------------------
+  public long getCount() {
+	return count;
+  }//getCount
+//-----------------------------------------------------------------------------------------------
+}//CountingInputStream
@@ -0,0 +1,10 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+
+//-----------------------------------------------------------------------------------------------
+// Told how far a download has got after each block is written.  The count includes
+// bytes kept from an earlier, interrupted attempt; total is -1 when the server did not
+// say how long the file is.
+public interface DownloadListener {
+  public void bytesTransferred(long done, long total);
+}//DownloadListener
@@ -0,0 +1,52 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+
+//-----------------------------------------------------------------------------------------------
+// A response whose body is read through a filter stream (decoding, counting, caching...)
+// while status, headers and disconnect still go to the original response.
+public class FilteredResponse extends TransportResponse {
+
+  private TransportResponse response;
+  private InputStream body;
+  private RequestMetrics metrics;
+//-----------------------------------------------------------------------------------------------
+  public FilteredResponse (TransportResponse response, InputStream body) {
+	this(response, body, null);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public FilteredResponse (TransportResponse response, InputStream body, RequestMetrics metrics) {
+	this.response = response;
+	this.body = body;
+	this.metrics = metrics;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public int getStatusCode() throws IOException {
+	return response.getStatusCode();
+  }//getStatusCode
+//-----------------------------------------------------------------------------------------------
+  public String getHeaderField(String name) {
+	return response.getHeaderField(name);
+  }//getHeaderField
+//-----------------------------------------------------------------------------------------------
+  public InputStream getInputStream() {
+	return body;
+  }//getInputStream
+//-----------------------------------------------------------------------------------------------
+  public String getProtocol() {
+	return response.getProtocol();
+  }//getProtocol
+//-----------------------------------------------------------------------------------------------
+  public void disconnect() {
+	response.disconnect();
+  }//disconnect
+//-----------------------------------------------------------------------------------------------
+  public long getConnectTime() {
+	return response.getConnectTime();
+  }//getConnectTime
+//-----------------------------------------------------------------------------------------------
+  public RequestMetrics getRequestMetrics() {
+	return (metrics != null) ? metrics : response.getRequestMetrics();
+  }//getRequestMetrics
+//-----------------------------------------------------------------------------------------------
+}//FilteredResponse
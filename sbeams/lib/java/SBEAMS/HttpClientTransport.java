@@ -0,0 +1,117 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+
+//-----------------------------------------------------------------------------------------------
+// Pooled transport on java.net.http.  HTTPS requests negotiate HTTP/2 through ALPN and
+// share one multiplexed connection per host; servers that only speak HTTP/1.1 get
+// ordinary keep-alive connections from the same pool.
+public class HttpClientTransport implements SBEAMSTransport {
+
+  private volatile HttpClient client;
+  private int poolSize;
+  private int idleTimeout;
+//-----------------------------------------------------------------------------------------------
+  protected static class ExchangeResponse extends TransportResponse {
+	private HttpResponse<InputStream> response;
+	private InputStream body;
+	ExchangeResponse (HttpResponse<InputStream> response) {
+	  this.response = response;
+	  this.body = response.body();
+	}
+	public int getStatusCode() {
+	  return response.statusCode();
+	}
+	public String getHeaderField(String name) {
+	  return response.headers().firstValue(name).orElse(null);
+	}
+	public InputStream getInputStream() {
+	  return body;
+	}
+	public String getProtocol() {
+	  return response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1";
+	}
+	public void disconnect() {
+	  // closing an unfinished body cancels the exchange instead of pooling the connection
+	  try {
+		body.close();
+	  } catch (IOException e) {
+	  }
+	}
+  } //ExchangeResponse class
+//-----------------------------------------------------------------------------------------------
+  public HttpClientTransport (int poolSize, int idleTimeout) {
+	// read once by the JDK when its first client is built, so settings given on the
+	// command line or by an earlier transport win over these
+	synchronized (HttpClientTransport.class) {
+	  if (System.getProperty("jdk.httpclient.connectionPoolSize") == null)
+		System.setProperty("jdk.httpclient.connectionPoolSize", String.valueOf(poolSize));
+	  if (System.getProperty("jdk.httpclient.keepalive.timeout") == null)
+		System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(idleTimeout));
+	  this.poolSize = Integer.getInteger("jdk.httpclient.connectionPoolSize", 0).intValue();
+	  this.idleTimeout = Integer.getInteger("jdk.httpclient.keepalive.timeout", 1200).intValue();
+	}
+	client = HttpClient.newBuilder()
+	  .version(HttpClient.Version.HTTP_2)
+	  .followRedirects(HttpClient.Redirect.NORMAL)
+	  .connectTimeout(Duration.ofSeconds(30))
+	  .build();
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public TransportResponse send (String method, String urlString, Hashtable<String,String> headers, byte[] body)
+	throws IOException {
+	HttpClient client = this.client;
+	if (client == null)
+	  throw new IOException("Transport has been shut down");
+	HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(urlString));
+	// cleartext h2c upgrades confuse the CGI front ends, so plain http stays on HTTP/1.1
+	if (urlString.startsWith("http:"))
+	  builder.version(HttpClient.Version.HTTP_1_1);
+	if (headers != null) {
+	  for (Enumeration<String> e = headers.keys(); e.hasMoreElements();) {
+		String name = e.nextElement();
+		builder.header(name, headers.get(name));
+	  }
+	}
+	if (body != null)
+	  builder.method(method, HttpRequest.BodyPublishers.ofByteArray(body));
+	else
+	  builder.method(method, HttpRequest.BodyPublishers.noBody());
+
+	try {
+	  HttpResponse<InputStream> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+	  return new ExchangeResponse(response);
+	} catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  throw new InterruptedIOException("Request to "+urlString+" interrupted");
+	} catch (IllegalArgumentException e) {
+	  throw new MalformedURLException(e.getMessage());
+	}
+  }//send
+//-----------------------------------------------------------------------------------------------
+  // Pool settings in effect for the whole process; a pool size of 0 means unbounded
+  public String getName() {
+	return "HTTP/2 (poolSize="+poolSize+", idleTimeout="+idleTimeout+"s)";
+  }//getName
+//-----------------------------------------------------------------------------------------------
+  // Newer runtimes can close the client outright; older ones release its connections
+  // and selector thread once the last reference to it is gone.
+  public void shutdown() {
+	HttpClient old = client;
+	client = null;
+	if (old instanceof AutoCloseable) {
+	  try {
+		((AutoCloseable)old).close();
+	  } catch (Exception e) {
+	  }
+	}
+  }//shutdown
+//-----------------------------------------------------------------------------------------------
+}//HttpClientTransport
@@ -0,0 +1,27 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.IOException;
+
+//-----------------------------------------------------------------------------------------------
+// An HTTP error status from the server, kept so callers can tell a bad request from a
+// server that is struggling.
+public class HttpStatusException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+  private int statusCode;
+//-----------------------------------------------------------------------------------------------
+  public HttpStatusException (int statusCode, String urlString) {
+	super("Server returned HTTP response code: "+statusCode+" for URL: "+urlString);
+	this.statusCode = statusCode;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public int getStatusCode() {
+	return statusCode;
+  }//getStatusCode
+//-----------------------------------------------------------------------------------------------
+  // 5xx, request timeouts and rate limiting may succeed on another try
+  public boolean isTransient() {
+	return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+  }//isTransient
+//-----------------------------------------------------------------------------------------------
+}//HttpStatusException
@@ -0,0 +1,105 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+//-----------------------------------------------------------------------------------------------
+// HTTP/1.1 keep-alive transport built on HttpURLConnection.  The JDK keeps idle
+// connections in a process-wide cache, so the pool settings are system properties
+// that only take effect if they are set before the first connection is opened.
+public class HttpURLConnectionTransport implements SBEAMSTransport {
+
+  private int maxConnections;
+  private int idleTimeout;
+//-----------------------------------------------------------------------------------------------
+  protected static class ConnectionResponse extends TransportResponse {
+	private HttpURLConnection uc;
+	private long connectTime;
+	ConnectionResponse (HttpURLConnection uc, long connectTime) {
+	  this.uc = uc;
+	  this.connectTime = connectTime;
+	}
+	public long getConnectTime() {
+	  return connectTime;
+	}
+	public int getStatusCode() throws IOException {
+	  return uc.getResponseCode();
+	}
+	public String getHeaderField(String name) {
+	  return uc.getHeaderField(name);
+	}
+	public InputStream getInputStream() throws IOException {
+	  if (uc.getResponseCode() >= 400) {
+		// error responses without a body have no error stream
+		InputStream err = uc.getErrorStream();
+		return (err != null) ? err : new ByteArrayInputStream(new byte[0]);
+	  }
+	  return uc.getInputStream();
+	}
+	public String getProtocol() {
+	  return "HTTP/1.1";
+	}
+	public void disconnect() {
+	  uc.disconnect();
+	}
+  } //ConnectionResponse class
+//-----------------------------------------------------------------------------------------------
+  public HttpURLConnectionTransport (int maxConnections, int idleTimeout) {
+	// settings given on the command line or by an earlier transport win over these
+	synchronized (HttpURLConnectionTransport.class) {
+	  setDefault("http.keepAlive", "true");
+	  setDefault("http.maxConnections", String.valueOf(maxConnections));
+	  setDefault("http.keepAlive.time.server", String.valueOf(idleTimeout));
+	  setDefault("http.keepAlive.time.proxy", String.valueOf(idleTimeout));
+	  this.maxConnections = Integer.getInteger("http.maxConnections", 5).intValue();
+	  this.idleTimeout = Integer.getInteger("http.keepAlive.time.server", 5).intValue();
+	}
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  private static void setDefault(String name, String value) {
+	if (System.getProperty(name) == null)
+	  System.setProperty(name, value);
+  }//setDefault
+//-----------------------------------------------------------------------------------------------
+  public TransportResponse send (String method, String urlString, Hashtable<String,String> headers, byte[] body)
+	throws IOException {
+	URL url = new URL(urlString);
+	HttpURLConnection uc = (HttpURLConnection)url.openConnection();
+	uc.setDoInput(true);
+	uc.setUseCaches(false);
+	uc.setAllowUserInteraction(false);
+	uc.setRequestMethod(method);
+	if (headers != null) {
+	  for (Enumeration<String> e = headers.keys(); e.hasMoreElements();) {
+		String name = e.nextElement();
+		uc.setRequestProperty(name, headers.get(name));
+	  }
+	}
+	if (body != null) {
+	  uc.setDoOutput(true);
+	  uc.setFixedLengthStreamingMode(body.length);
+	}
+	// connecting first separates TCP and TLS setup from sending the request
+	long start = System.currentTimeMillis();
+	uc.connect();
+	long connectTime = System.currentTimeMillis()-start;
+	if (body != null) {
+	  OutputStream out = uc.getOutputStream();
+	  out.write(body);
+	  out.flush();
+	  out.close();
+	}
+	return new ConnectionResponse(uc, connectTime);
+  }//send
+//-----------------------------------------------------------------------------------------------
+  // Pool settings in effect for the whole process
+  public String getName() {
+	return "HTTP/1.1 keep-alive (maxConnections="+maxConnections+", idleTimeout="+idleTimeout+"s)";
+  }//getName
+//-----------------------------------------------------------------------------------------------
+  public void shutdown() {
+	// idle connections are reclaimed by the JDK keep-alive cache
+  }//shutdown
+//-----------------------------------------------------------------------------------------------
+}//HttpURLConnectionTransport
@@ -0,0 +1,229 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//-----------------------------------------------------------------------------------------------
+// An entire result set held in memory once, with hash indexes built on demand over any
+// column or combination of columns.  A key may match any number of rows.  Each index is
+// built once and then read without locking, so one instance can serve many threads.
+public class IndexedResultSet {
+
+  private String[] headers;
+  private String[][] rows;
+  private ConcurrentHashMap<String,Index> indexes = new ConcurrentHashMap<String,Index>();
+//-----------------------------------------------------------------------------------------------
+  public static class Index {
+	private int[] columns;
+	// key -> Integer for a single row, int[] for several
+	private HashMap<String,Object> rowsByKey = new HashMap<String,Object>();
+	private static int[] NONE = new int[0];
+	Index (IndexedResultSet rs, int[] columns) {
+	  this.columns = columns;
+	  boolean repeats = false;
+	  for (int row=0;row<rs.rows.length;row++) {
+		String key = rs.key(row, columns);
+		Object seen = rowsByKey.get(key);
+		if (seen == null) {
+		  rowsByKey.put(key, Integer.valueOf(row));
+		}else if (seen instanceof Integer) {
+		  rowsByKey.put(key, new RowList(((Integer)seen).intValue(), row));
+		  repeats = true;
+		}else {
+		  ((RowList)seen).add(row);
+		}
+	  }
+	  if (repeats) {
+		for (Map.Entry<String,Object> entry : rowsByKey.entrySet()) {
+		  if (entry.getValue() instanceof RowList)
+			entry.setValue(((RowList)entry.getValue()).toArray());
+		}
+	  }
+	}
+	// Row numbers for the key, in table order; values are given in index column order
+	public int[] getRows(String[] key) {
+	  if (key.length != columns.length)
+		throw new IllegalArgumentException("index has "+columns.length+" key columns, not "+key.length);
+	  return find(join(key));
+	}
+	public int[] getRows(String key) {
+	  return getRows(new String[] {key});
+	}
+	// First matching row, or -1
+	public int getRow(String[] key) {
+	  int[] found = getRows(key);
+	  return (found.length == 0) ? -1 : found[0];
+	}
+	public int getRow(String key) {
+	  return getRow(new String[] {key});
+	}
+	public boolean containsKey(String[] key) {
+	  return getRow(key) != -1;
+	}
+	public boolean containsKey(String key) {
+	  return getRow(key) != -1;
+	}
+	public int getKeyCount() {
+	  return rowsByKey.size();
+	}
+	private int[] find(String key) {
+	  Object found = rowsByKey.get(key);
+	  if (found == null)
+		return NONE;
+	  if (found instanceof Integer)
+		return new int[] {((Integer)found).intValue()};
+	  return ((int[])found).clone();
+	}
+  } //Index class
+//-----------------------------------------------------------------------------------------------
+  // Rows of a repeated key while an index is being built; grows by doubling so a key
+  // shared by many rows costs linear time, and is trimmed to an int[] once built
+  private static class RowList {
+	private int[] rows = new int[4];
+	private int size = 0;
+	RowList (int first, int second) {
+	  add(first);
+	  add(second);
+	}
+	void add(int row) {
+	  if (size == rows.length)
+		rows = Arrays.copyOf(rows, size*2);
+	  rows[size++] = row;
+	}
+	int[] toArray() {
+	  return Arrays.copyOf(rows, size);
+	}
+  } //RowList class
+//-----------------------------------------------------------------------------------------------
+  public IndexedResultSet (String[] headers, String[][] rows) {
+	this.headers = headers;
+	this.rows = rows;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // Reads every row, short ones included, and closes the cursor
+  public static IndexedResultSet read (ResultSetCursor cursor)
+	throws IOException {
+	try {
+	  ArrayList<String[]> rows = new ArrayList<String[]>();
+	  while (cursor.next())
+		rows.add(cursor.getRow());
+	  String[][] data = new String[rows.size()][];
+	  rows.toArray(data);
+	  return new IndexedResultSet(cursor.getHeaders(), data);
+	} finally {
+	  cursor.close();
+	}
+  }//read
+//-----------------------------------------------------------------------------------------------
+  // A copy, since the instance may be shared by every caller of a coalesced fetch
+  public String[] getHeaders() {
+	return headers.clone();
+  }//getHeaders
+//-----------------------------------------------------------------------------------------------
+  public int getColumnIndex(String columnTitle) {
+	for (int m=0;m<headers.length;m++) {
+	  if (headers[m].equals(columnTitle))
+		return m;
+	}
+	return -1;
+  }//getColumnIndex
+//-----------------------------------------------------------------------------------------------
+  public int getRowCount() {
+	return rows.length;
+  }//getRowCount
+//-----------------------------------------------------------------------------------------------
+  // A copy, since rows may be shared with other readers of the same result set
+  public String[] getRow(int row) {
+	return rows[row].clone();
+  }//getRow
+//-----------------------------------------------------------------------------------------------
+  // Fields past the end of a short row read as empty strings
+  public String getField(int row, int column) {
+	String[] fields = rows[row];
+	return (column < fields.length) ? fields[column] : "";
+  }//getField
+//-----------------------------------------------------------------------------------------------
+  public String getField(int row, String columnTitle) {
+	return getField(row, column(columnTitle));
+  }//getField
+//-----------------------------------------------------------------------------------------------
+  public Index getIndex(String columnTitle) {
+	return getIndex(new String[] {columnTitle});
+  }//getIndex
+//-----------------------------------------------------------------------------------------------
+  // Index over the combination of the given columns, built the first time it is asked for
+  public Index getIndex(String[] columnTitles) {
+	String name = join(columnTitles);
+	Index index = indexes.get(name);
+	if (index == null) {
+	  int[] columns = new int[columnTitles.length];
+	  for (int m=0;m<columns.length;m++)
+		columns[m] = column(columnTitles[m]);
+	  index = new Index(this, columns);
+	  Index raced = indexes.putIfAbsent(name, index);
+	  if (raced != null)
+		index = raced;
+	}
+	return index;
+  }//getIndex
+//-----------------------------------------------------------------------------------------------
+  // valueColumn of the first row whose keyColumn is key, or null
+  public String lookup(String keyColumn, String key, String valueColumn) {
+	int row = getIndex(keyColumn).getRow(key);
+	return (row == -1) ? null : getField(row, valueColumn);
+  }//lookup
+//-----------------------------------------------------------------------------------------------
+  // valueColumn of every row whose keyColumn is key, in table order
+  public String[] lookupAll(String keyColumn, String key, String valueColumn) {
+	int[] found = getIndex(keyColumn).getRows(key);
+	int column = column(valueColumn);
+	String[] values = new String[found.length];
+	for (int m=0;m<found.length;m++)
+	  values[m] = getField(found[m], column);
+	return values;
+  }//lookupAll
+//-----------------------------------------------------------------------------------------------
+  // Unsynchronized key to value map; where a key repeats, its first row wins
+  public Map<String,String> toMap(String keyColumn, String valueColumn) {
+	int key = column(keyColumn);
+	int value = column(valueColumn);
+	HashMap<String,String> map = new HashMap<String,String>();
+	for (int row=rows.length-1;row>=0;row--)
+	  map.put(getField(row, key), getField(row, value));
+	return map;
+  }//toMap
+//-----------------------------------------------------------------------------------------------
+  private int column(String columnTitle) {
+	int column = getColumnIndex(columnTitle);
+	if (column == -1)
+	  throw new IllegalArgumentException("No column "+columnTitle+" in result set");
+	return column;
+  }//column
+//-----------------------------------------------------------------------------------------------
+  // Composite keys are joined with tabs, which a tab-delimited field cannot contain
+  private String key(int row, int[] columns) {
+	if (columns.length == 1)
+	  return getField(row, columns[0]);
+	StringBuffer key = new StringBuffer();
+	for (int m=0;m<columns.length;m++) {
+	  if (m > 0)
+		key.append('\t');
+	  key.append(getField(row, columns[m]));
+	}
+	return key.toString();
+  }//key
+//-----------------------------------------------------------------------------------------------
+  private static String join(String[] values) {
+	if (values.length == 1)
+	  return values[0];
+	StringBuffer joined = new StringBuffer();
+	for (int m=0;m<values.length;m++) {
+	  if (m > 0)
+		joined.append('\t');
+	  joined.append(values[m]);
+	}
+	return joined.toString();
+  }//join
+//-----------------------------------------------------------------------------------------------
+}//IndexedResultSet
@@ -165,85 +165,47 @@ public class ConditionInfoWizardPanel extends WizardPanel
   protected Vector[] getVariableDataFromExperimentXSD(String schemaPath) {
 	Vector vars = new Vector();
 	Vector units = new Vector();
-	String[] lines = new String[1];
-	if (schemaPath.startsWith("sbeamsIndirect://")) {
-
-	  // get client
-	  if (wizardContext.getAttribute(SBEAMS_CLIENT) == null) {
-		try{ 
-		  sc = new SBEAMSClient(true);
-		}catch (Exception e) {
-		  e.printStackTrace();
-		}
-	  }else {
-		sc = (SBEAMSClient)wizardContext.getAttribute(SBEAMS_CLIENT);
-	  }
-
-	  //get schema
-	  try {
-		String[] pieces = schemaPath.split("://");
-		String bigLine = sc.fetchSbeamsPage("http://"+pieces[1]);
-		lines = bigLine.split("\\n");
-	  }catch (IOException e) {
-		System.err.println("Page Not Found");
-	  }catch (Exception t) {
-		t.printStackTrace();
-	  }
-	}else {
-	  try{
-		BufferedReader br = new BufferedReader(new FileReader(schemaPath));
-		//	  sb = new StringBuffer();
-		String newLineOfText;
-		Vector v = new Vector();
-		while ((newLineOfText = br.readLine()) != null)
-		  v.add(newLineOfText);
-		lines = new String[v.size()];
-		v.toArray(lines);
-	  } catch (IOException e) {
-		e.printStackTrace();
-	  }
-	}
 
+	// get client; an SBEAMS schema with none yet makes one
+	if (wizardContext.getAttribute(SBEAMS_CLIENT) != null)
+	  sc = (SBEAMSClient)wizardContext.getAttribute(SBEAMS_CLIENT);
+	SBEAMSResolver resolver = new SBEAMSResolver(sc);
 
 	Pattern varStart = Pattern.compile("<xsd:simpleType name=\"VariableNameType\">");
-	Pattern varValue = Pattern.compile("<xsd:enumeration value=\"(.*?)\"/>");
-	Pattern end   = Pattern.compile("</xsd:simpleType>");
-
 	Pattern unitStart = Pattern.compile("<xsd:simpleType name=\"VariableUnitsType\">");
-	Pattern unitValue = Pattern.compile("<xsd:enumeration value=\"(.*?)\"/>");
-	Pattern unitEnd   = Pattern.compile("</xsd:simpleType>");
-
-	for (int m=0;m<lines.length;) {
-	  Matcher varStartMatch = varStart.matcher(lines[m].trim());
-	  if (varStartMatch.matches()) {
-		m++;
-		Matcher varEndMatch = end.matcher(lines[m].trim());
-		while (m<lines.length && !varEndMatch.matches()) {
-		  Matcher varValueMatch = varValue.matcher(lines[m].trim());
-		  if (varValueMatch.matches())
-			vars.add(varValueMatch.group(1));
-		  m++;
-		  varEndMatch = end.matcher(lines[m].trim());
-		}
-		continue;
-	  }
+	Pattern value = Pattern.compile("<xsd:enumeration value=\"(.*?)\"/>");
+	Pattern end   = Pattern.compile("</xsd:simpleType>");
 
-	  Matcher unitStartMatch = unitStart.matcher(lines[m].trim());
-	  if (unitStartMatch.matches()) {
-		m++;
-		Matcher unitEndMatch = end.matcher(lines[m].trim());
-		while (m<lines.length && !unitEndMatch.matches()) {
-		  Matcher unitValueMatch = unitValue.matcher(lines[m].trim());
-		  if (unitValueMatch.matches())
-			units.add(unitValueMatch.group(1));
-		  m++;
-		  unitEndMatch = end.matcher(lines[m].trim());
+	// pick out the enumerations as the schema streams in
+	try {
+	  BufferedReader in = resolver.openReader(schemaPath);
+	  try {
+		Vector current = null;
+		String line;
+		while ((line = in.readLine()) != null) {
+		  line = line.trim();
+		  if (current == null) {
+			if (varStart.matcher(line).matches())
+			  current = vars;
+			else if (unitStart.matcher(line).matches())
+			  current = units;
+		  }else if (end.matcher(line).matches()) {
+			current = null;
+		  }else {
+			Matcher valueMatch = value.matcher(line);
+			if (valueMatch.matches())
+			  current.add(valueMatch.group(1));
+		  }
 		}
-		continue;
+	  } finally {
+		in.close();
 	  }
-
-	  m++;
+	}catch (IOException e) {
+	  System.err.println("Unable to read "+schemaPath+": "+e.getMessage());
+	}catch (Exception t) {
+	  t.printStackTrace();
 	}
+	sc = resolver.getClient();
 
 	Vector[] ret = {vars, units};
 	return ret;
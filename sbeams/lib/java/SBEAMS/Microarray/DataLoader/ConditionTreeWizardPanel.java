@@ -72,6 +72,9 @@ public class ConditionTreeWizardPanel extends WizardPanel
 //-----------------------------------------------------------------------------------------------
   public JScrollPane initTree (){
 	try{
+	  // Left to the navigator rather than SBEAMSResolver: it is handed the repository
+	  // root, not a file, and walks the whole tree under it with its own httpIndirect
+	  // handling.  There is no single resource here for the resolver to open.
 	  experimentNavigator = new MetaDataNavigator(repository);
 	}catch (Exception e) {
 	  e.printStackTrace();
@@ -0,0 +1,517 @@
+package DataLoader;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+//-----------------------------------------------------------------------------------------------
+// Reads an expression matrix -- gene rows of ratios followed by lambdas for each condition --
+// in one pass.  Each row goes straight from the input into per-condition column buffers, so
+// no copy of the text is kept; the columns grow in blocks and are copied out one at a time
+// at the end, which keeps the peak close to the size of the finished float arrays.
+// A local file can instead be mapped and parsed in place, fields located by their byte
+// offsets and values read by FloatParser, with no objects made per value.  Rows being
+// independent, a mapped file is cut into line-aligned chunks that are parsed on a fork/join
+// pool into segments of their own and joined in file order.  Mapping can be turned off,
+// for files on network mounts or ones still being written, with -DDataLoader.mapFiles=false
+// or setMapFiles(false).
+public class ExpressionMatrixReader {
+//-----------------------------------------------------------------------------------------------
+  private int headerRows;
+  private int tailRows;
+  private int prependedColumns;
+  private int appendedColumns;
+  private boolean tabDelimited;
+  private Hashtable rosetta;
+  // an unsynchronized copy, since every row of every chunk looks its gene up
+  private HashMap translations;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+  private boolean mapFiles = !"false".equals(System.getProperty("DataLoader.mapFiles"));
+  private static int MIN_CHUNK = 1 << 20;
+  private String[] conditionNames;
+  private String[] genes;
+  private float[][] ratioValues;
+  private float[][] lambdaValues;
+  private String error;
+//-----------------------------------------------------------------------------------------------
+  // A float column built up a block at a time.  Blocks double up to a limit, so small
+  // matrices stay small and large ones are never copied while growing.
+  static class FloatColumn {
+	private static int FIRST_BLOCK = 1024;
+	private static int MAX_BLOCK = 1 << 16;
+	private ArrayList blocks = new ArrayList();
+	private float[] current = new float[0];
+	private int used = 0;
+	private int size = 0;
+
+	void add(float value) {
+	  if (used == current.length) {
+		current = new float[Math.min(Math.max(current.length*2, FIRST_BLOCK), MAX_BLOCK)];
+		blocks.add(current);
+		used = 0;
+	  }
+	  current[used++] = value;
+	  size++;
+	}
+
+	int size() {
+	  return size;
+	}
+
+	// Copies the values into dest from offset on, letting go of each block once it is copied
+	void moveTo(float[] dest, int offset) {
+	  int done = 0;
+	  for (int m=0;m<blocks.size();m++) {
+		float[] block = (float[])blocks.get(m);
+		int n = Math.min(block.length, size-done);
+		System.arraycopy(block, 0, dest, offset+done, n);
+		done += n;
+		blocks.set(m, null);
+	  }
+	  blocks.clear();
+	  current = new float[0];
+	  used = 0;
+	  size = 0;
+	}
+  }// FloatColumn
+//-----------------------------------------------------------------------------------------------
+  // The rows parsed from one stretch of the input
+  class Segment {
+	ArrayList genes = new ArrayList();
+	FloatColumn[] ratios = new FloatColumn[conditionNames.length];
+	FloatColumn[] lambdas = new FloatColumn[conditionNames.length];
+	String[] fields = new String[2*conditionNames.length + prependedColumns + appendedColumns];
+	int[] fieldStarts = new int[fields.length];
+	int[] fieldEnds = new int[fields.length];
+	byte[] scratch = new byte[256];
+	String error;
+
+	Segment() {
+	  for (int m=0;m<conditionNames.length;m++) {
+		ratios[m] = new FloatColumn();
+		lambdas[m] = new FloatColumn();
+	  }
+	}
+
+	void addGene(String gene) {
+	  //translate the name, if possible
+	  String translated = (String)translations.get(gene.toLowerCase());
+	  genes.add((translated != null) ? translated : gene);
+	}
+  }// Segment
+//-----------------------------------------------------------------------------------------------
+  public ExpressionMatrixReader(int headerRows, int tailRows, int prependedColumns,
+								int appendedColumns, boolean tabDelimited, Hashtable rosetta) {
+	this.headerRows = headerRows;
+	this.tailRows = tailRows;
+	this.prependedColumns = prependedColumns;
+	this.appendedColumns = appendedColumns;
+	this.tabDelimited = tabDelimited;
+	this.rosetta = (rosetta == null) ? new Hashtable() : rosetta;
+	translations = new HashMap(this.rosetta);
+  }// constructor
+//-----------------------------------------------------------------------------------------------
+  // Splits at each tab, or at each whitespace character, as String.split("\\t") or
+  // split("\\s") would, dropping trailing empty fields.  Returns the field count, or -1 if
+  // there are more than fields can hold.
+  private int split(String line, String[] fields) {
+	int count = 0;
+	int start = 0;
+	int length = line.length();
+	for (int m=0;m<=length;m++) {
+	  if (m < length && !isDelimiter(line.charAt(m)))
+		continue;
+	  if (count == fields.length) {
+		if (m == start && trailingEmpty(line, m))
+		  break;
+		return -1;
+	  }
+	  fields[count++] = line.substring(start, m);
+	  start = m+1;
+	}
+	while (count > 0 && fields[count-1].length() == 0)
+	  count--;
+	return count;
+  }// split
+//-----------------------------------------------------------------------------------------------
+  // Whether nothing but delimiters follows position m
+  private boolean trailingEmpty(String line, int m) {
+	for (;m<line.length();m++) {
+	  if (!isDelimiter(line.charAt(m)))
+		return false;
+	}
+	return true;
+  }// trailingEmpty
+//-----------------------------------------------------------------------------------------------
+  private boolean isDelimiter(char c) {
+	if (tabDelimited)
+	  return c == '\t';
+	return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }// isDelimiter
+//-----------------------------------------------------------------------------------------------
+  // split() over the bytes start..end, recording where each field starts and ends
+  private int split(ByteBuffer buf, int start, int end, int[] fieldStarts, int[] fieldEnds) {
+	int count = 0;
+	int fieldStart = start;
+	for (int m=start;m<=end;m++) {
+	  if (m < end && !isDelimiter((char)(buf.get(m) & 0xff)))
+		continue;
+	  if (count == fieldStarts.length) {
+		if (m == fieldStart && trailingEmpty(buf, m, end))
+		  break;
+		return -1;
+	  }
+	  fieldStarts[count] = fieldStart;
+	  fieldEnds[count++] = m;
+	  fieldStart = m+1;
+	}
+	while (count > 0 && fieldStarts[count-1] == fieldEnds[count-1])
+	  count--;
+	return count;
+  }// split
+//-----------------------------------------------------------------------------------------------
+  private boolean trailingEmpty(ByteBuffer buf, int m, int end) {
+	for (;m<end;m++) {
+	  if (!isDelimiter((char)(buf.get(m) & 0xff)))
+		return false;
+	}
+	return true;
+  }// trailingEmpty
+//-----------------------------------------------------------------------------------------------
+  public boolean read(BufferedReader in) throws IOException {
+	error = null;
+	String line = null;
+	for (int m=0;m<headerRows;m++) {
+	  line = in.readLine();
+	  if (line == null) {
+		error = "the file ends in its header";
+		return false;
+	  }
+	}
+	startColumns(line);
+	Segment segment = new Segment();
+
+	// the last tailRows lines are not data, so each line waits until that many follow it;
+	// blank lines at the very end do not count
+	LinkedList pending = new LinkedList();
+	int blanks = 0;
+	int row = headerRows;
+	while ((line = in.readLine()) != null) {
+	  if (line.length() == 0) {
+		blanks++;
+		continue;
+	  }
+	  for (;blanks > 0;blanks--)
+		pending.addLast("");
+	  pending.addLast(line);
+	  while (pending.size() > tailRows) {
+		if (!addRow((String)pending.removeFirst(), ++row, segment)) {
+		  error = segment.error;
+		  return false;
+		}
+	  }
+	}
+	finishColumns(new Segment[] {segment});
+	return true;
+  }// read
+//-----------------------------------------------------------------------------------------------
+  // Maps a local file and parses it in place.  A file too big for one mapping is streamed,
+  // as is every file when mapping is off.  The mapping is only released once it is
+  // garbage collected.
+  public boolean read(File file) throws IOException {
+	FileInputStream in = new FileInputStream(file);
+	try {
+	  FileChannel channel = in.getChannel();
+	  if (!mapFiles || channel.size() > Integer.MAX_VALUE)
+		return read(new BufferedReader(new InputStreamReader(in), 64*1024));
+	  return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+	} finally {
+	  in.close();
+	}
+  }// read
+//-----------------------------------------------------------------------------------------------
+  // Parses the whole of a buffer holding the file's bytes
+  public boolean read(ByteBuffer buf) {
+	error = null;
+	int limit = buf.limit();
+	int p = 0;
+	String header = null;
+	for (int m=0;m<headerRows;m++) {
+	  if (p >= limit) {
+		error = "the file ends in its header";
+		return false;
+	  }
+	  int eol = lineEnd(buf, p, limit);
+	  header = decode(buf, p, eol, new byte[eol-p]);
+	  p = nextLine(buf, eol, limit);
+	}
+	startColumns(header);
+	int end = dataEnd(buf, p, limit);
+	int[] bounds = chunkBounds(buf, p, end);
+	Segment[] segments = new Segment[bounds.length-1];
+	for (int m=0;m<segments.length;m++)
+	  segments[m] = new Segment();
+	if (segments.length == 1) {
+	  parseRange(buf, p, end, segments[0]);
+	}else {
+	  ForkJoinPool.commonPool().invoke(new ChunkTask(buf, bounds, segments, 0, segments.length));
+	}
+	for (int m=0;m<segments.length;m++) {
+	  if (segments[m].error != null) {
+		error = segments[m].error;
+		return false;
+	  }
+	}
+	finishColumns(segments);
+	return true;
+  }// read
+//-----------------------------------------------------------------------------------------------
+  // Splits the data rows into line-aligned ranges, a few per thread so that a slow one
+  // does not hold up the rest; returns the range starts followed by the end
+  private int[] chunkBounds(ByteBuffer buf, int start, int end) {
+	int chunks = 1;
+	if (parallelism > 1 && end-start >= 2*MIN_CHUNK)
+	  chunks = (int)Math.min(4L*parallelism, (end-start)/MIN_CHUNK);
+	int[] bounds = new int[chunks+1];
+	int count = 0;
+	bounds[count++] = start;
+	for (int m=1;m<chunks;m++) {
+	  int target = start + (int)((long)(end-start)*m/chunks);
+	  if (target <= bounds[count-1])
+		continue;
+	  // on to the start of the next line
+	  int next = nextLine(buf, lineEnd(buf, target, end), end);
+	  if (next > bounds[count-1] && next < end)
+		bounds[count++] = next;
+	}
+	bounds[count++] = end;
+	int[] trimmed = new int[count];
+	System.arraycopy(bounds, 0, trimmed, 0, count);
+	return trimmed;
+  }// chunkBounds
+//-----------------------------------------------------------------------------------------------
+  // Parses chunks from..to, halving the work until each task has one chunk
+  class ChunkTask extends RecursiveAction {
+	private ByteBuffer buf;
+	private int[] bounds;
+	private Segment[] segments;
+	private int from;
+	private int to;
+
+	ChunkTask(ByteBuffer buf, int[] bounds, Segment[] segments, int from, int to) {
+	  this.buf = buf;
+	  this.bounds = bounds;
+	  this.segments = segments;
+	  this.from = from;
+	  this.to = to;
+	}
+
+	protected void compute() {
+	  if (to-from == 1) {
+		// a view of its own, rather than one buffer object shared between threads
+		parseRange(buf.duplicate(), bounds[from], bounds[to], segments[from]);
+		return;
+	  }
+	  int middle = (from+to)/2;
+	  invokeAll(new ChunkTask(buf, bounds, segments, from, middle),
+				new ChunkTask(buf, bounds, segments, middle, to));
+	}
+  }// ChunkTask
+//-----------------------------------------------------------------------------------------------
+  // How many threads read(File) and read(ByteBuffer) cut the work up for; 1 parses in this
+  // thread.  The chunks run on the common fork/join pool, shared with the rest of the JVM.
+  public void setParallelism(int threads) {
+	parallelism = Math.max(threads, 1);
+  }// setParallelism
+//-----------------------------------------------------------------------------------------------
+  // Whether read(File) maps local files or streams them like remote ones
+  public void setMapFiles(boolean mapFiles) {
+	this.mapFiles = mapFiles;
+  }// setMapFiles
+//-----------------------------------------------------------------------------------------------
+  public boolean getMapFiles() {
+	return mapFiles;
+  }// getMapFiles
+//-----------------------------------------------------------------------------------------------
+  private static boolean isLineBreak(byte b) {
+	return b == '\n' || b == '\r';
+  }// isLineBreak
+//-----------------------------------------------------------------------------------------------
+  // Where the line starting at p ends, before its \n, \r or \r\n
+  private static int lineEnd(ByteBuffer buf, int p, int limit) {
+	while (p < limit && !isLineBreak(buf.get(p)))
+	  p++;
+	return p;
+  }// lineEnd
+//-----------------------------------------------------------------------------------------------
+  private static int nextLine(ByteBuffer buf, int eol, int limit) {
+	if (eol+1 < limit && buf.get(eol) == '\r' && buf.get(eol+1) == '\n')
+	  return eol+2;
+	return Math.min(eol+1, limit);
+  }// nextLine
+//-----------------------------------------------------------------------------------------------
+  // The end of the data rows: before any blank lines at the very end and the tailRows
+  // lines before those
+  private int dataEnd(ByteBuffer buf, int start, int limit) {
+	int end = limit;
+	while (end > start && isLineBreak(buf.get(end-1)))
+	  end--;
+	for (int m=0;m<tailRows && end > start;m++) {
+	  while (end > start && !isLineBreak(buf.get(end-1)))
+		end--;
+	  // and the one line break before it
+	  if (end > start)
+		end--;
+	  if (end > start && buf.get(end) == '\n' && buf.get(end-1) == '\r')
+		end--;
+	}
+	return end;
+  }// dataEnd
+//-----------------------------------------------------------------------------------------------
+  // The rows between start and end, which must be the start of a line and the end of one
+  private boolean parseRange(ByteBuffer buf, int start, int end, Segment segment) {
+	int p = start;
+	while (p < end) {
+	  int eol = lineEnd(buf, p, end);
+	  if (!addRow(buf, p, eol, segment))
+		return false;
+	  p = nextLine(buf, eol, end);
+	}
+	return true;
+  }// parseRange
+//-----------------------------------------------------------------------------------------------
+  // Text in the platform encoding, as FileReader would have read it
+  private static String decode(ByteBuffer buf, int start, int end, byte[] scratch) {
+	for (int m=start;m<end;m++)
+	  scratch[m-start] = buf.get(m);
+	return new String(scratch, 0, end-start);
+  }// decode
+//-----------------------------------------------------------------------------------------------
+  // The last header row names the conditions
+  private void startColumns(String header) {
+	String[] names = tabDelimited ? header.split("\\t") : header.split("\\s");
+	int extraneousColumns = prependedColumns + appendedColumns;
+	int conditions = Math.max((names.length-extraneousColumns)/2, 0);
+	conditionNames = new String[conditions];
+	for (int m=0;m<conditions;m++)
+	  conditionNames[m] = names[m+prependedColumns];
+  }// startColumns
+//-----------------------------------------------------------------------------------------------
+  private boolean addRow(String line, int row, Segment segment) {
+	String[] fields = segment.fields;
+	if (split(line, fields) != fields.length) {
+	  segment.error = "line "+row+" does not have "+fields.length+" columns";
+	  return false;
+	}
+	segment.addGene(fields[0].trim());
+	int conditions = conditionNames.length;
+	try {
+	  for (int h=0;h<conditions;h++) {
+		segment.ratios[h].add(Float.parseFloat(fields[h+prependedColumns]));
+		segment.lambdas[h].add(Float.parseFloat(fields[h+prependedColumns+conditions]));
+	  }
+	} catch (NumberFormatException e) {
+	  segment.error = "line "+row+": "+e.getMessage();
+	  return false;
+	}
+	return true;
+  }// addRow
+//-----------------------------------------------------------------------------------------------
+  // The row between start and end, located in the file by its byte offset
+  private boolean addRow(ByteBuffer buf, int start, int end, Segment segment) {
+	int[] starts = segment.fieldStarts;
+	int[] ends = segment.fieldEnds;
+	if (split(buf, start, end, starts, ends) != starts.length) {
+	  segment.error = "the row at byte "+start+" does not have "+starts.length+" columns";
+	  return false;
+	}
+	// trimmed as String.trim would
+	int geneStart = starts[0];
+	int geneEnd = ends[0];
+	while (geneStart < geneEnd && (buf.get(geneStart) & 0xff) <= ' ')
+	  geneStart++;
+	while (geneEnd > geneStart && (buf.get(geneEnd-1) & 0xff) <= ' ')
+	  geneEnd--;
+	if (segment.scratch.length < geneEnd-geneStart)
+	  segment.scratch = new byte[geneEnd-geneStart];
+	segment.addGene(decode(buf, geneStart, geneEnd, segment.scratch));
+
+	int conditions = conditionNames.length;
+	try {
+	  for (int h=0;h<conditions;h++) {
+		int r = h+prependedColumns;
+		int l = r+conditions;
+		segment.ratios[h].add(FloatParser.parse(buf, starts[r], ends[r]));
+		segment.lambdas[h].add(FloatParser.parse(buf, starts[l], ends[l]));
+	  }
+	} catch (NumberFormatException e) {
+	  segment.error = "the row at byte "+start+": "+e.getMessage();
+	  return false;
+	}
+	return true;
+  }// addRow
+//-----------------------------------------------------------------------------------------------
+  // Joins the segments' rows, in order, into the finished arrays
+  private void finishColumns(Segment[] segments) {
+	int total = 0;
+	for (int m=0;m<segments.length;m++)
+	  total += segments[m].genes.size();
+	genes = new String[total];
+	int offset = 0;
+	for (int m=0;m<segments.length;m++) {
+	  for (int g=0;g<segments[m].genes.size();g++)
+		genes[offset++] = (String)segments[m].genes.get(g);
+	  segments[m].genes = null;
+	}
+	ratioValues = new float[conditionNames.length][];
+	lambdaValues = new float[conditionNames.length][];
+	for (int h=0;h<conditionNames.length;h++) {
+	  ratioValues[h] = new float[total];
+	  lambdaValues[h] = new float[total];
+	  offset = 0;
+	  for (int m=0;m<segments.length;m++) {
+		int size = segments[m].ratios[h].size();
+		segments[m].ratios[h].moveTo(ratioValues[h], offset);
+		segments[m].lambdas[h].moveTo(lambdaValues[h], offset);
+		offset += size;
+	  }
+	}
+  }// finishColumns
+//-----------------------------------------------------------------------------------------------
+  // Why the last read failed, or null
+  public String getError() {
+	return error;
+  }// getError
+//-----------------------------------------------------------------------------------------------
+  public String[] getConditionNames() {
+	return conditionNames;
+  }// getConditionNames
+//-----------------------------------------------------------------------------------------------
+  public String[] getGenes() {
+	return genes;
+  }// getGenes
+//-----------------------------------------------------------------------------------------------
+  public float[] getRatioData(int condition) {
+	return ratioValues[condition];
+  }// getRatioData
+//-----------------------------------------------------------------------------------------------
+  public float[] getLambdaData(int condition) {
+	return lambdaValues[condition];
+  }// getLambdaData
+//-----------------------------------------------------------------------------------------------
+  // An ExperimentCondition for each condition, keyed by its name
+  public void addConditions(Hashtable data) {
+	for (int m=0;m<conditionNames.length;m++) {
+	  ExperimentCondition e =  new ExperimentCondition(conditionNames[m],
+													   genes,
+													   ratioValues[m],
+													   lambdaValues[m]);
+	  data.put(conditionNames[m], e);
+	}
+  }// addConditions
+//-----------------------------------------------------------------------------------------------
+}// ExpressionMatrixReader
@@ -50,10 +50,11 @@ public class FileChooserWizardPanel extends WizardPanel
 	  try{
 		if (sc == null)
 		  sc = new SBEAMSClient(true);
-		Hashtable h = sc.fetchSbeamsResultSetHash(expNameURL, "project_id", "name");
-		if ( h.containsKey( project_id.toString() ) ) {
-		  experimentName =  (String) ( h.get(project_id.toString()) );
-		  experimentName = experimentName.trim();
+		sc.setResponseCache(getReferenceCache());
+		IndexedResultSet projects = sc.fetchIndexedResultSet(expNameURL);
+		String projectName = projects.lookup("project_id", project_id.toString(), "name");
+		if ( projectName != null ) {
+		  experimentName = projectName.trim();
 		  experimentName = experimentName.replaceAll("\\s","_");
 		}
 	  }catch (Exception e) {
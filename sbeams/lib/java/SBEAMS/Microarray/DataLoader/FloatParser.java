@@ -0,0 +1,96 @@
+package DataLoader;
+import java.nio.ByteBuffer;
+//-----------------------------------------------------------------------------------------------
+// Parses decimal floats straight from bytes, giving exactly what Float.parseFloat gives for
+// the same text.  Ordinary values -- a significand below 2^53 and a power of ten within
+// 10^-22..10^22 -- take one double multiply or divide of two exactly representable numbers,
+// which IEEE arithmetic rounds correctly.  Rounding that double on to a float can only go
+// wrong when it lands exactly halfway between two floats, so those, and anything else
+// (long significands, large exponents, subnormals, NaN, Infinity, type suffixes,
+// surrounding spaces, garbage), are handed to Float.parseFloat and the two never disagree.
+public class FloatParser {
+//-----------------------------------------------------------------------------------------------
+  private static double[] POWERS_OF_TEN = {
+	1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+	1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private static long MAX_EXACT = 1L << 53;
+  // the 29 bits of a double's significand that a float does not keep, and their midpoint
+  private static long DROPPED_BITS = (1L << 29) - 1;
+  private static long HALFWAY = 1L << 28;
+//-----------------------------------------------------------------------------------------------
+  public static float parse(ByteBuffer buf, int start, int end) {
+	int p = start;
+	boolean negative = false;
+	if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+	  negative = buf.get(p) == '-';
+	  p++;
+	}
+	long significand = 0;
+	int digits = 0;
+	int exponent = 0;
+	boolean any = false;
+	boolean fraction = false;
+	for (;p < end;p++) {
+	  int c = buf.get(p);
+	  if (c == '.' && !fraction) {
+		fraction = true;
+		continue;
+	  }
+	  if (c < '0' || c > '9')
+		break;
+	  any = true;
+	  if (significand != 0 || c != '0') {
+		// past 18 digits the significand no longer fits; leave it to the slow path
+		if (++digits > 18)
+		  return slowParse(buf, start, end);
+		significand = significand*10 + (c-'0');
+	  }
+	  if (fraction)
+		exponent--;
+	}
+	if (!any)
+	  return slowParse(buf, start, end);
+	if (p < end && (buf.get(p) == 'e' || buf.get(p) == 'E')) {
+	  p++;
+	  boolean negativeExponent = false;
+	  if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+		negativeExponent = buf.get(p) == '-';
+		p++;
+	  }
+	  int exponentStart = p;
+	  int value = 0;
+	  for (;p < end && buf.get(p) >= '0' && buf.get(p) <= '9';p++)
+		value = Math.min(value*10 + (buf.get(p)-'0'), 100000);
+	  if (p == exponentStart)
+		return slowParse(buf, start, end);
+	  exponent += negativeExponent ? -value : value;
+	}
+	if (p != end)
+	  return slowParse(buf, start, end);
+
+	if (significand == 0)
+	  return negative ? -0.0f : 0.0f;
+	// 1.500 is 15e-1, which the fast path can take
+	while (significand % 10 == 0) {
+	  significand /= 10;
+	  exponent++;
+	}
+	if (significand > MAX_EXACT || exponent < -22 || exponent > 22)
+	  return slowParse(buf, start, end);
+	double value = (double)significand;
+	value = (exponent < 0) ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+	if (value < Float.MIN_NORMAL || value > Float.MAX_VALUE ||
+		(Double.doubleToRawLongBits(value) & DROPPED_BITS) == HALFWAY)
+	  return slowParse(buf, start, end);
+	return negative ? -(float)value : (float)value;
+  }// parse
+//-----------------------------------------------------------------------------------------------
+  private static float slowParse(ByteBuffer buf, int start, int end) {
+	char[] text = new char[end-start];
+	for (int m=0;m<text.length;m++)
+	  text[m] = (char)(buf.get(start+m) & 0xff);
+	return Float.parseFloat(new String(text));
+  }// slowParse
+//-----------------------------------------------------------------------------------------------
+}// FloatParser
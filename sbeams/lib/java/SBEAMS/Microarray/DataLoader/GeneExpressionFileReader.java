@@ -5,79 +5,107 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.regex.*;
 import java.util.Hashtable;
+import java.util.Vector;
 import javax.swing.Timer;
 //-----------------------------------------------------------------------------------------------
 public class GeneExpressionFileReader {
 //-----------------------------------------------------------------------------------------------
   private String dataFileURI;
-  private SBEAMSClient sc;
-  private BufferedReader br;
-  private StringBuffer sb;
+  private SBEAMSResolver resolver;
   private static String MRNA = "MRNA";
   private static String MERGECONDS = "MERGECONDS";
   private static String UNKNOWN = "UNKNOWN";
+  private static int HEADER_LIMIT = 1 << 20;
   private Hashtable data;
   private String[] conditionNames;
   private Hashtable rosetta;
 //-----------------------------------------------------------------------------------------------
   public GeneExpressionFileReader(String dataFileURI, String translatorFile, SBEAMSClient sc){
-	this.sc = sc;
+	resolver = new SBEAMSResolver(sc);
 	rosetta = readTranslator(translatorFile);
 	this.dataFileURI = dataFileURI;
 	data = new Hashtable();
   }// FileReader
 //-----------------------------------------------------------------------------------------------
   public GeneExpressionFileReader(String dataFileURI, String translatorFile){
+ 	resolver = new SBEAMSResolver();
  	rosetta = readTranslator(translatorFile);
  	this.dataFileURI = dataFileURI;
  	data = new Hashtable();
   }// FileReader
 //-----------------------------------------------------------------------------------------------
   public GeneExpressionFileReader(String dataFileURI){
+ 	resolver = new SBEAMSResolver();
  	rosetta = new Hashtable();
  	this.dataFileURI = dataFileURI;
  	data = new Hashtable();
   }// FileReader
 //-----------------------------------------------------------------------------------------------
   public boolean read() {
-	String[] dataLines  = getFile(dataFileURI);
-	String filetype = determineFileType(dataLines[0]);
-	boolean successfulRead = false;
-	if (filetype.equals(MRNA)){
-	  successfulRead = readMrnaFile(dataLines);
-	}else if (filetype.equals(MERGECONDS)) {
-	  successfulRead = readMergeCondsFile(dataLines);
-	}else if (filetype.equals(UNKNOWN)) {
-	  // do nothing, so far
+	try {
+	  BufferedReader in = resolver.openReader(dataFileURI);
+	  try {
+		// the first line decides the format, then is read again as part of the matrix
+		in.mark(HEADER_LIMIT);
+		String header = in.readLine();
+		if (header == null)
+		  return false;
+		in.reset();
+		String filetype = determineFileType(header);
+		ExpressionMatrixReader matrix = null;
+		if (filetype.equals(MRNA)){
+		  matrix = readMrnaFile();
+		}else if (filetype.equals(MERGECONDS)) {
+		  matrix = readMergeCondsFile();
+		}else if (filetype.equals(UNKNOWN)) {
+		  // do nothing, so far
+		  return false;
+		}
+		boolean success;
+		if (SBEAMSResolver.isRemote(dataFileURI) || !matrix.getMapFiles()) {
+		  success = matrix.read(in);
+		}else {
+		  // a local file is mapped and parsed in place instead
+		  in.close();
+		  success = matrix.read(new File(dataFileURI));
+		}
+		if (!success) {
+		  System.err.println("Unable to read "+dataFileURI+": "+matrix.getError());
+		  return false;
+		}
+		conditionNames = matrix.getConditionNames();
+		matrix.addConditions(data);
+		return true;
+	  } finally {
+		in.close();
+	  }
+	}catch (IOException e) {
+	  System.err.println("Unable to read "+dataFileURI+": "+e.getMessage());
+	}catch (Exception t) {
+	  t.printStackTrace();
 	}
-	return successfulRead;
+	return false;
   }// read
 //-----------------------------------------------------------------------------------------------
+  // sbeamsIndirect://, httpIndirect:// or a local path, as SBEAMSResolver opens them
   private String[] getFile(String file){
-	if (file.startsWith("sbeamsIndirect://")) {
+	try {
+	  BufferedReader in = resolver.openReader(file);
 	  try {
-		String[] pieces = file.split("://");
-		if (sc != null)
-		  sc = new SBEAMSClient(true);
-		String bigLine = sc.fetchSbeamsPage("http://"+pieces[1]);
-		return bigLine.split("\\n");
-	  }catch (IOException e) {
-		System.err.println("Page Not Found");
-	  }catch (Exception t) {
-		t.printStackTrace();
-	  }
-	}else {
-	  try{
-		br = new BufferedReader(new FileReader(file));
-		sb = new StringBuffer();
-		String newLineOfText;
-		while ((newLineOfText = br.readLine()) != null)
-		  sb.append(newLineOfText+"\n");
-		String all = sb.toString();
-		return all.split("\\n");
-	  } catch (IOException e) {
-		e.printStackTrace();
+		Vector lines = new Vector();
+		String line;
+		while ((line = in.readLine()) != null)
+		  lines.add(line);
+		String[] all = new String[lines.size()];
+		lines.toArray(all);
+		return all;
+	  } finally {
+		in.close();
 	  }
+	}catch (IOException e) {
+	  System.err.println("Unable to read "+file+": "+e.getMessage());
+	}catch (Exception t) {
+	  t.printStackTrace();
 	}
 	return null;
   }// getFile
@@ -123,7 +151,7 @@ public class GeneExpressionFileReader {
 	}
   }// fileTypeUsingFileName
 //-----------------------------------------------------------------------------------------------
-  private boolean readMrnaFile(String[] dataLines){
+  private ExpressionMatrixReader readMrnaFile(){
 	/* Sample Header (1 line)
 sequence_name   gene_name       G0a_vs_NRC-1c.sig       G10a_vs_NRC-1c.sig      G20a_vs_NRC-1c.sig     G0a_vs_NRC-1c.sig       G10a_vs_NRC-1c.sig      G20a_vs_NRC-1c.sig
 	*/
@@ -131,14 +159,14 @@ sequence_name   gene_name       G0a_vs_NRC-1c.sig       G10a_vs_NRC-1c.sig
 	int tailRows = 0;
 	int prependedColumns = 2;
 	int appendedColumns = 0;
-	String delimiter = "\\s";
+	boolean tabDelimited = false;
 
-	return readDelimitedFile(dataLines, delimiter, headerRows, tailRows,
-							 prependedColumns, appendedColumns);
+	return new ExpressionMatrixReader(headerRows, tailRows, prependedColumns,
+									  appendedColumns, tabDelimited, rosetta);
 
 }
 //-----------------------------------------------------------------------------------------------
-  private boolean readMergeCondsFile(String[] dataLines){
+  private ExpressionMatrixReader readMergeCondsFile(){
 	/* Sample Header (2 lines)
                  RATIOS                          LAMBDAS
 GENE    DESCRIPT        1296_HO_D_vs_NRC-1.sig  1296_HO_L_vs_NRC-1.sig  1296_LO_D_vs_NRC-1.sig  1296_LO_L_vs_NRC-1.sig  1296_HO_D_vs_NRC-1.sig  1296_HO_L_vs_NRC-1.sig  1296_LO_D_vs_NRC-1.sig  1296_LO_L_vs_NRC-1.sig  NumSigConds
@@ -147,61 +175,18 @@ GENE    DESCRIPT        1296_HO_D_vs_NRC-1.sig  1296_HO_L_vs_NRC-1.sig  1296_LO_
 	int tailRows = 1;
 	int prependedColumns = 2;
 	int appendedColumns = 1;
-	String delimiter = "\\t";
+	boolean tabDelimited = true;
 
-	return readDelimitedFile (dataLines, delimiter, headerRows, tailRows,
-							  prependedColumns, appendedColumns);
+	return new ExpressionMatrixReader(headerRows, tailRows, prependedColumns,
+									  appendedColumns, tabDelimited, rosetta);
   }
-//-----------------------------------------------------------------------------------------------
-  private boolean readDelimitedFile(String[] dataLines, String delimiter, int headerRows, 
-									int tailRows,int prependedColumns, int appendedColumns){
-	int extraneousColumns = prependedColumns + appendedColumns;
-
-	// Look at the first data line
-	String[] line = (dataLines[headerRows-1]).split(delimiter);
-	int conditions = (int)(line.length-extraneousColumns)/2;
-	conditionNames = new String[conditions];
-	for (int m=0;m<conditions;m++){
-	  conditionNames[m] = line[m+prependedColumns];
-	}
-	//Handle rest of lines
-	int size = dataLines.length -(headerRows + tailRows);
-	String[] genes = new String[size];
-	float[][] ratioValues = new float[conditions][size];
-	float[][] lambdaValues = new float[conditions][size];
-
-	for (int m=headerRows;m<dataLines.length-tailRows;m++) {
-	  line = dataLines[m].split(delimiter);
-	  if (line.length != (2*conditions) + extraneousColumns) {
-		return false;
-	  }
-
-	  //translate the name, if possible
-	  if (rosetta.containsKey(line[0].trim().toLowerCase())){
-		genes[m-headerRows] = (String)rosetta.get(line[0].trim().toLowerCase());
-	  } else
-		genes[m-headerRows] = line[0].trim();
-
-	  for (int h=0;h<conditions;h++){
-		ratioValues[h][m-headerRows] = (new Float(line[h+prependedColumns])).floatValue();
-		lambdaValues[h][m-headerRows] = (new Float(line[h+prependedColumns+conditions])).floatValue();
-	  }
-	}
-
-	for (int m=0;m<conditionNames.length;m++) {
-	  ExperimentCondition e =  new ExperimentCondition(conditionNames[m],
-													   genes,
-													   ratioValues[m],
-													   lambdaValues[m]);
-	  data.put(conditionNames[m], e);
-	}
-	return true;
-  }// readDelimitedFile
 //-----------------------------------------------------------------------------------------------
   private Hashtable readTranslator(String rosettaFile) {
 	Hashtable translator = new Hashtable();
+	if (rosettaFile == null)
+	  return translator;
 	String[] dataLines = getFile(rosettaFile);
-	for (int m=0;m<dataLines.length;m++) {
+	for (int m=0;dataLines != null && m<dataLines.length;m++) {
 	  String[] entry = dataLines[m].trim().split("\\t");
 	  if (entry.length == 2)
 		translator.put(entry[0].trim().toLowerCase(), entry[1].trim());
@@ -218,7 +203,7 @@ GENE    DESCRIPT        1296_HO_D_vs_NRC-1.sig  1296_HO_L_vs_NRC-1.sig  1296_LO_
   }// getData
 //-----------------------------------------------------------------------------------------------
   public SBEAMSClient getSbeamsClient() {
-	return sc;
+	return resolver.getClient();
   }
 //-----------------------------------------------------------------------------------------------
 }// FileReader
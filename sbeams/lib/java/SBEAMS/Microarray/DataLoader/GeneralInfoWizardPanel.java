@@ -5,6 +5,8 @@ import java.util.Hashtable;
 import java.util.Enumeration;
 import java.util.Arrays;
 import java.util.regex.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.awt.*;
 import java.io.*;
 import java.awt.event.*;
@@ -59,21 +61,37 @@ public class GeneralInfoWizardPanel extends WizardPanel {
 	}else {
 	  sc = (SBEAMSClient)wizardContext.getAttribute(SBEAMS_CLIENT);
 	}
+	if (sc != null)
+	  sc.setResponseCache(getReferenceCache());
+
+	// start the constants lookup now so it downloads alongside the organism list
+	Future constantsFetch = null;
+	if (sc != null) {
+	  try{
+		constantsFetch = sc.submitRequest(new Callable() {
+			public Object call() throws Exception {
+			  return sc.query(constantsURL).whereNotNull("name").fetchHash("name", "experiment_constants_id");
+			}
+		  });
+	  }catch (Exception e) {
+		e.printStackTrace();
+	  }
+	}
 
 	Vector orgsFromSbeams = new Vector();
 	orgsFromSbeams.add(SELECT_ORGANISM);
-	try{
-	  String[] tempOrgs = sc.fetchSbeamsResultSetColumn(organismURL,"full_name");
-	  //	  String[] tempOrgs = (sc.fetchSbeamsPage(organismURL)).split("\\n");
-	  for (int m=0;m<tempOrgs.length;m++) {
-		if (tempOrgs[m].equals("Other")) {
-		  continue;
-		}else {
-		  orgsFromSbeams.add(tempOrgs[m]);
+	if (sc != null) {
+	  try{
+		// "Other" is always offered last.  It is dropped here rather than by the server,
+		// where full_name != 'Other' would drop organisms without a full_name too.
+		String[] tempOrgs = sc.query(organismURL).fetchColumn("full_name");
+		for (int m=0;tempOrgs != null && m<tempOrgs.length;m++) {
+		  if (tempOrgs[m] != null && !tempOrgs[m].equals("Other"))
+			orgsFromSbeams.add(tempOrgs[m]);
 		}
+	  }catch (Exception e) {
+		e.printStackTrace();
 	  }
-	}catch (Exception e) {
-	  e.printStackTrace();
 	}
 	orgsFromSbeams.add(OTHER_ORGANISM);
 	String[] organisms = new String[orgsFromSbeams.size()];
@@ -134,9 +152,12 @@ public class GeneralInfoWizardPanel extends WizardPanel {
 	constantsFiles = new Hashtable();
 	constantsFromSbeams.add(SELECT_CONSTANTS);
 	try{
-	  constantsFiles = sc.fetchSbeamsResultSetHash(constantsURL, "name", "experiment_constants_id");
-	  for (Enumeration enum = constantsFiles.keys(); enum.hasMoreElements();) {
-		constantsFromSbeams.add((String)enum.nextElement());
+	  // null when the server is unreachable or the table lacks the columns
+	  Hashtable fetched = (constantsFetch == null) ? null : (Hashtable)constantsFetch.get();
+	  if (fetched != null)
+		constantsFiles = fetched;
+	  for (Enumeration keys = constantsFiles.keys(); keys.hasMoreElements();) {
+		constantsFromSbeams.add((String)keys.nextElement());
 	  }
 	}catch (Exception e) {
 	  e.printStackTrace();
@@ -2,6 +2,7 @@ package DataLoader;
 //-----------------------------------------------------------------------------------------------
 import java.util.List;
 import javax.swing.JPanel;
+import SBEAMS.SBEAMSResponseCache;
 //-----------------------------------------------------------------------------------------------
 public abstract class WizardPanel extends JPanel {
 //-----------------------------------------------------------------------------------------------
@@ -54,5 +55,14 @@ public abstract class WizardPanel extends JPanel {
   public final WizardContext getWizardContext() {
 	return wizardContext;
   }
+//-----------------------------------------------------------------------------------------------
+  // Lookup tables that change rarely enough to keep on disk between wizard runs
+  protected static SBEAMSResponseCache getReferenceCache() {
+	SBEAMSResponseCache cache = SBEAMSResponseCache.getDefaultCache();
+	cache.setTableTTL("organism", 7*24*3600);
+	cache.setTableTTL("project", 3600);
+	cache.setTableTTL("MA_experiment_constants", 3600);
+	return cache;
+  }
 //-----------------------------------------------------------------------------------------------
 }
@@ -0,0 +1,241 @@
+package DataLoader.unitTests;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Random;
+import DataLoader.*;
+//-----------------------------------------------------------------------------------------------
+public class ExpressionMatrixReaderTest extends TestCase {
+//-----------------------------------------------------------------------------------------------
+  private static String MRNA =
+	"sequence_name\tgene_name\tA.sig\tB.sig\tA.sig\tB.sig\n"+
+	"VNG0001\tabc\t0.5\t-1.25\t10\t3.5e2\n"+
+	"VNG0002\tdef\t-0\t7\t0.001\t1E-3\n";
+  private static String MERGECONDS =
+	"\t\tRATIOS\t\tLAMBDAS\n"+
+	"GENE\tDESCRIPT\tA.sig\tB.sig\tA.sig\tB.sig\tNumSigConds\n"+
+	"VNG0001\tone\t0.5\t-1.25\t10\t350\t2\n"+
+	"VNG0002\ttwo\t1\t2\t3\t4\t0\n"+
+	"\t\t\t\t\t\t\n"+
+	"\n\n";
+//-----------------------------------------------------------------------------------------------
+  public ExpressionMatrixReaderTest (String name) {
+	super (name);
+  }
+//-----------------------------------------------------------------------------------------------
+  private static BufferedReader reader(String text) {
+	return new BufferedReader(new StringReader(text));
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testMrna () throws Exception {
+	System.out.println("testMrna");
+	Hashtable rosetta = new Hashtable();
+	rosetta.put("vng0002", "purine");
+	ExpressionMatrixReader matrix = new ExpressionMatrixReader(1, 0, 2, 0, false, rosetta);
+	assertTrue(matrix.read(reader(MRNA)));
+	assertTrue(matrix.getConditionNames().length == 2);
+	assertEquals("B.sig", matrix.getConditionNames()[1]);
+	assertEquals("VNG0001", matrix.getGenes()[0]);
+	assertEquals("purine", matrix.getGenes()[1]);
+	assertTrue(matrix.getRatioData(1)[0] == -1.25f);
+	assertTrue(Float.floatToIntBits(matrix.getRatioData(0)[1]) == Float.floatToIntBits(-0f));
+	assertTrue(matrix.getLambdaData(1)[0] == 350f);
+	assertTrue(matrix.getLambdaData(1)[1] == Float.parseFloat("1E-3"));
+
+	Hashtable data = new Hashtable();
+	matrix.addConditions(data);
+	assertTrue(((ExperimentCondition)data.get("A.sig")).verify());
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testMergeConds () throws Exception {
+	System.out.println("testMergeConds");
+	ExpressionMatrixReader matrix = new ExpressionMatrixReader(2, 1, 2, 1, true, null);
+	assertTrue(matrix.read(reader(MERGECONDS)));
+	assertTrue(matrix.getGenes().length == 2);
+	assertTrue(matrix.getRatioData(0)[1] == 1f);
+	assertTrue(matrix.getLambdaData(1)[1] == 4f);
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testBadRows () throws Exception {
+	System.out.println("testBadRows");
+	ExpressionMatrixReader matrix = new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	assertTrue(!matrix.read(reader(MRNA+"VNG0003\tghi\t1\t2\t3\n")));
+	assertTrue(matrix.getError().indexOf("line 4") != -1);
+	assertTrue(!matrix.read(reader(MRNA+"VNG0003\tghi\t1\t2\t3\t4\t5\n")));
+	assertTrue(!matrix.read(reader(MRNA+"VNG0003\tghi\t1\tx\t3\t4\n")));
+	// trailing delimiters are empty fields, which String.split dropped too
+	assertTrue(matrix.read(reader(MRNA+"VNG0003\tghi\t1\t2\t3\t4\t\t\n")));
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testLargeMatrix () throws Exception {
+	System.out.println("testLargeMatrix");
+	int rows = 20000;
+	String[][] values = new String[rows][6];
+	String text = largeMatrix(rows, 3, values);
+	ExpressionMatrixReader matrix = new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	assertTrue(matrix.read(reader(text)));
+	assertTrue(matrix.getGenes().length == rows);
+	for (int m=0;m<rows;m++) {
+	  for (int h=0;h<3;h++) {
+		assertTrue(matrix.getRatioData(h)[m] == new Float(values[m][h]).floatValue());
+		assertTrue(matrix.getLambdaData(h)[m] == new Float(values[m][h+3]).floatValue());
+	  }
+	}
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testParallel () throws Exception {
+	System.out.println("testParallel");
+	int rows = 60000;
+	String[][] values = new String[rows][6];
+	String text = largeMatrix(rows, 3, values);
+	String[] texts = {text, text.replaceAll("\n", "\r\n")};
+	for (int t=0;t<texts.length;t++) {
+	  ExpressionMatrixReader matrix = new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	  matrix.setParallelism(4);
+	  assertTrue(matrix.read(ByteBuffer.wrap(texts[t].getBytes())));
+	  assertTrue(matrix.getGenes().length == rows);
+	  for (int m=0;m<rows;m++) {
+		assertEquals("VNG"+m, matrix.getGenes()[m]);
+		for (int h=0;h<3;h++) {
+		  assertTrue(matrix.getRatioData(h)[m] == Float.parseFloat(values[m][h]));
+		  assertTrue(matrix.getLambdaData(h)[m] == Float.parseFloat(values[m][h+3]));
+		}
+	  }
+	}
+	// a bad row late in the file fails the read from whichever chunk it lands in
+	ExpressionMatrixReader matrix = new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	matrix.setParallelism(4);
+	assertTrue(!matrix.read(ByteBuffer.wrap((text+"VNG0\tg\t1\t2\t3\t4\t5\t6\t7\n").getBytes())));
+  }
+//-----------------------------------------------------------------------------------------------
+  private String largeMatrix (int rows, int conditions, String[][] values) {
+	Random random = new Random(17);
+	StringBuffer text = new StringBuffer("sequence_name gene_name c1 c2 c3 c1 c2 c3\n");
+	for (int m=0;m<rows;m++) {
+	  text.append("VNG").append(m).append(" g");
+	  for (int h=0;h<2*conditions;h++) {
+		values[m][h] = String.valueOf((float)(random.nextGaussian()*Math.pow(10, random.nextInt(9)-4)));
+		text.append(' ').append(values[m][h]);
+	  }
+	  text.append('\n');
+	}
+	return text.toString();
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testMapped () throws Exception {
+	System.out.println("testMapped");
+	String[] texts = {MRNA, MERGECONDS, MRNA.replaceAll("\n", "\r\n"), MERGECONDS.replaceAll("\n", "\r\n"),
+					  MERGECONDS.substring(0, MERGECONDS.length()-3)};
+	for (int m=0;m<texts.length;m++) {
+	  boolean merge = texts[m].startsWith("\t");
+	  ExpressionMatrixReader streamed = merge ? new ExpressionMatrixReader(2, 1, 2, 1, true, null)
+		: new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	  ExpressionMatrixReader mapped = merge ? new ExpressionMatrixReader(2, 1, 2, 1, true, null)
+		: new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	  assertTrue(streamed.read(reader(texts[m])));
+	  assertTrue(mapped.read(ByteBuffer.wrap(texts[m].getBytes())));
+	  assertTrue(Arrays.equals(streamed.getConditionNames(), mapped.getConditionNames()));
+	  assertTrue(Arrays.equals(streamed.getGenes(), mapped.getGenes()));
+	  for (int h=0;h<streamed.getConditionNames().length;h++) {
+		assertTrue(Arrays.equals(streamed.getRatioData(h), mapped.getRatioData(h)));
+		assertTrue(Arrays.equals(streamed.getLambdaData(h), mapped.getLambdaData(h)));
+	  }
+	}
+	ExpressionMatrixReader matrix = new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	assertTrue(!matrix.read(ByteBuffer.wrap((MRNA+"VNG0003\tghi\t1\t2\t3\n").getBytes())));
+	assertTrue(!matrix.read(ByteBuffer.wrap((MRNA+"\nVNG0003\tghi\t1\t2\t3\t4\n").getBytes())));
+	assertTrue(!matrix.read(ByteBuffer.wrap((MRNA+"VNG0003\tghi\t1\t2\t3\t4f5\n").getBytes())));
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testMapSwitch () throws Exception {
+	System.out.println("testMapSwitch");
+	File file = File.createTempFile("matrix", ".mrna");
+	file.deleteOnExit();
+	FileWriter out = new FileWriter(file);
+	out.write(MRNA);
+	out.close();
+	ExpressionMatrixReader mapped = new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	ExpressionMatrixReader streamed = new ExpressionMatrixReader(1, 0, 2, 0, false, null);
+	streamed.setMapFiles(false);
+	assertTrue(mapped.getMapFiles() && !streamed.getMapFiles());
+	assertTrue(mapped.read(file));
+	assertTrue(streamed.read(file));
+	assertTrue(Arrays.equals(mapped.getGenes(), streamed.getGenes()));
+	for (int h=0;h<mapped.getConditionNames().length;h++)
+	  assertTrue(Arrays.equals(mapped.getRatioData(h), streamed.getRatioData(h)));
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testFloatParser () throws Exception {
+	System.out.println("testFloatParser");
+	String[] edge = {"0", "-0", "+1", ".5", "5.", "1e10", "1E-10", "16777216", "16777217", "3.4028235e38",
+					 "1.4e-45", "1e-46", "123456789012345678901234", "0.1", "-0.30000001", "1.00000000000000000001",
+					 "NaN", "-Infinity", "1.5f", "2d", " 7 ", "1e", "e1", ".", "", "-", "1..2", "0x1p3", "1e+05"};
+	for (int m=0;m<edge.length;m++)
+	  assertSameParse(edge[m]);
+	Random random = new Random(5);
+	for (int m=0;m<200000;m++) {
+	  StringBuffer text = new StringBuffer();
+	  if (random.nextBoolean())
+		text.append('-');
+	  int digits = 1+random.nextInt(12);
+	  int point = random.nextInt(digits+1);
+	  for (int d=0;d<digits;d++) {
+		if (d == point)
+		  text.append('.');
+		text.append((char)('0'+random.nextInt(10)));
+	  }
+	  if (random.nextInt(4) == 0)
+		text.append('e').append(random.nextInt(30)-15);
+	  assertSameParse(text.toString());
+	  assertSameParse(String.valueOf(Float.intBitsToFloat(random.nextInt())));
+	}
+	// integers halfway between two floats, and their neighbours, where rounding twice would
+	// go wrong
+	for (int m=0;m<20000;m++) {
+	  long halfway = (1L << (24+m%8)) + (2*random.nextInt(1 << 20)+1) * (1L << (m%8));
+	  assertSameParse(String.valueOf(halfway));
+	  assertSameParse(String.valueOf(halfway-1));
+	  assertSameParse(String.valueOf(halfway+1)+"e-3");
+	}
+  }
+//-----------------------------------------------------------------------------------------------
+  private void assertSameParse(String text) {
+	ByteBuffer buf = ByteBuffer.wrap(("x"+text+"y").getBytes());
+	String expected;
+	try {
+	  expected = String.valueOf(Float.floatToIntBits(Float.parseFloat(text)));
+	} catch (NumberFormatException e) {
+	  expected = "NumberFormatException";
+	}
+	String parsed;
+	try {
+	  parsed = String.valueOf(Float.floatToIntBits(FloatParser.parse(buf, 1, buf.limit()-1)));
+	} catch (NumberFormatException e) {
+	  parsed = "NumberFormatException";
+	}
+	assertEquals(text, expected, parsed);
+  }
+//-----------------------------------------------------------------------------------------------
+  public void testFileReader () throws Exception {
+	System.out.println("testFileReader");
+	File file = File.createTempFile("matrix", ".mrna");
+	file.deleteOnExit();
+	FileWriter out = new FileWriter(file);
+	out.write(MRNA);
+	out.close();
+	GeneExpressionFileReader gefr = new GeneExpressionFileReader(file.getPath());
+	assertTrue(gefr.read());
+	assertTrue(gefr.getConditionNames().length == 2);
+	ExperimentCondition b = (ExperimentCondition)gefr.getData().get("B.sig");
+	assertTrue(b.getLambdaData()[0] == 350f);
+	assertTrue(gefr.getSbeamsClient() == null);
+  }
+//-----------------------------------------------------------------------------------------------
+  public static void main (String[] args) {
+	junit.textui.TestRunner.run (new TestSuite(ExpressionMatrixReaderTest.class));
+  }
+//-----------------------------------------------------------------------------------------------
+}
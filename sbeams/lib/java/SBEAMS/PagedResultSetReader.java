@@ -0,0 +1,145 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+//-----------------------------------------------------------------------------------------------
+// Joins the pages of a result set, fetched with rs_page_size and rs_page_number, back into
+// one tab-delimited stream.  The first two pages are fetched one at a time; only once the
+// second differs from the first, so the CGI is known to honour the paging parameters, are
+// up to window pages fetched ahead in parallel.  A page that is short of pageSize rows ends
+// the result set, as does one that is over it or a second page that repeats the first,
+// since either means the CGI ignored the paging parameters.  Once paging is confirmed a
+// page equal to the one before is just more rows.
+class PagedResultSetReader extends Reader {
+
+  private SBEAMSClient client;
+  private SBEAMSExecutor executor;
+  private String url;
+  private int pageSize;
+  private int window;
+  private LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+  private int nextPage = 0;
+  private boolean lastPage = false;
+  private boolean pagingConfirmed = false;
+  private String previousRows = null;
+  private String current = "";
+  private int pos = 0;
+//-----------------------------------------------------------------------------------------------
+  // Pages are fetched on their own executor: the reader may itself be running on the
+  // shared one, and blocking there on tasks queued behind it could starve the pool
+  PagedResultSetReader (SBEAMSClient client, SBEAMSExecutor executor, String url, int pageSize,
+						int window)
+	throws Exception {
+	if (pageSize <= 0)
+	  throw new IllegalArgumentException("page size must be positive");
+	this.client = client;
+	this.executor = executor;
+	this.url = url;
+	this.pageSize = pageSize;
+	this.window = Math.max(1, window);
+	requestPage();
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // SBEAMS numbers pages from 1
+  private void requestPage()
+	throws Exception {
+	String separator = (url.indexOf('?') >= 0) ? "&" : "?";
+	final String pageURL = url+separator+"rs_page_size="+pageSize+"&rs_page_number="+(++nextPage);
+	pending.addLast(executor.submit(new Callable<String>() {
+		public String call() throws Exception {
+		  return client.fetchSbeamsPage(pageURL);
+		}
+	  }));
+  }//requestPage
+//-----------------------------------------------------------------------------------------------
+  public int read(char[] b, int off, int len)
+	throws IOException {
+	while (pos >= current.length()) {
+	  if (!advance())
+		return -1;
+	}
+	int n = Math.min(len, current.length()-pos);
+	current.getChars(pos, pos+n, b, off);
+	pos += n;
+	return n;
+  }//read
+//-----------------------------------------------------------------------------------------------
+  private boolean advance()
+	throws IOException {
+	if (lastPage || pending.isEmpty())
+	  return false;
+	String page;
+	try {
+	  page = pending.removeFirst().get();
+	} catch (InterruptedException e) {
+	  close();
+	  throw new InterruptedIOException("interrupted waiting for a result set page");
+	} catch (ExecutionException e) {
+	  close();
+	  if (e.getCause() instanceof IOException)
+		throw (IOException)e.getCause();
+	  IOException error = new IOException("result set page failed: "+e.getCause());
+	  error.initCause(e.getCause());
+	  throw error;
+	}
+
+	int newline = page.indexOf('\n');
+	// every page repeats the header line
+	String rows = (newline < 0) ? "" : page.substring(newline+1);
+	boolean first = previousRows == null && !pagingConfirmed;
+	if (previousRows != null) {
+	  if (rows.equals(previousRows)) {
+		close();
+		return false;
+	  }
+	  pagingConfirmed = true;
+	}
+
+	if (countRows(rows) != pageSize) {
+	  close();
+	}else {
+	  try {
+		do {
+		  requestPage();
+		} while (pagingConfirmed && pending.size() < window);
+	  } catch (Exception e) {
+		lastPage = true;
+	  }
+	}
+	current = first ? page : rows;
+	// only the first page is compared, with the second
+	previousRows = pagingConfirmed ? null : rows;
+	pos = 0;
+	return true;
+  }//advance
+//-----------------------------------------------------------------------------------------------
+  private static int countRows(String rows) {
+	int count = 0;
+	boolean blank = true;
+	for (int m=0;m<rows.length();m++) {
+	  char c = rows.charAt(m);
+	  if (c == '\n') {
+		if (!blank)
+		  count++;
+		blank = true;
+	  }else if (c != '\r') {
+		blank = false;
+	  }
+	}
+	return blank ? count : count+1;
+  }//countRows
+//-----------------------------------------------------------------------------------------------
+  // Interrupting a fetch aborts its download rather than letting it run to the end
+  private void cancelPending() {
+	while (!pending.isEmpty())
+	  pending.removeFirst().cancel(true);
+  }//cancelPending
+//-----------------------------------------------------------------------------------------------
+  public void close() {
+	lastPage = true;
+	cancelPending();
+  }//close
+//-----------------------------------------------------------------------------------------------
+}//PagedResultSetReader
@@ -0,0 +1,82 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+
+//-----------------------------------------------------------------------------------------------
+// A window onto another stream: the first skip bytes are passed over, then at most length
+// bytes are read, or everything if length is negative
+public class RangeInputStream extends FilterInputStream {
+
+  private long skip;
+  private long remaining;
+//-----------------------------------------------------------------------------------------------
+  public RangeInputStream (InputStream in, long skip, long length) {
+	super(in);
+	this.skip = Math.max(skip, 0);
+	this.remaining = length;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // skip() may stop short of the count, or make no progress on some streams, so the
+  // leading bytes are read through when it does
+  private void skipLeading() throws IOException {
+	byte[] discard = null;
+	while (skip > 0) {
+	  long skipped = in.skip(skip);
+	  if (skipped <= 0) {
+		if (discard == null)
+		  discard = new byte[8192];
+		skipped = in.read(discard, 0, (int)Math.min(discard.length, skip));
+		if (skipped == -1) {
+		  remaining = 0;
+		  skip = 0;
+		  return;
+		}
+	  }
+	  skip -= skipped;
+	}
+  }//skipLeading
+//-----------------------------------------------------------------------------------------------
+  public int read() throws IOException {
+	skipLeading();
+	if (remaining == 0)
+	  return -1;
+	int b = in.read();
+	if (b != -1 && remaining > 0)
+	  remaining--;
+	return b;
+  }//read
+//-----------------------------------------------------------------------------------------------
+  public int read(byte[] b, int off, int len) throws IOException {
+	skipLeading();
+	if (remaining == 0)
+	  return -1;
+	if (remaining > 0)
+	  len = (int)Math.min(len, remaining);
+	int n = in.read(b, off, len);
+	if (n > 0 && remaining > 0)
+	  remaining -= n;
+	return n;
+  }//read
+//-----------------------------------------------------------------------------------------------
+  public long skip(long n) throws IOException {
+	skipLeading();
+	if (remaining >= 0)
+	  n = Math.min(n, remaining);
+	long skipped = in.skip(n);
+	if (skipped > 0 && remaining > 0)
+	  remaining -= skipped;
+	return skipped;
+  }//skip
+//-----------------------------------------------------------------------------------------------
+  public int available() throws IOException {
+	if (skip > 0 || remaining == 0)
+	  return 0;
+	int available = in.available();
+	return (remaining > 0) ? (int)Math.min(available, remaining) : available;
+  }//available
+//-----------------------------------------------------------------------------------------------
+  public boolean markSupported() {
+	return false;
+  }//markSupported
+//-----------------------------------------------------------------------------------------------
+}//RangeInputStream
@@ -0,0 +1,166 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+
+//-----------------------------------------------------------------------------------------------
+// Timings and sizes of one request, reported to an SBEAMSMetrics registry when its body
+// is closed.  Download time is the time spent blocked reading from the network; parse
+// time is the rest of the time between the headers arriving and the body being closed,
+// i.e. decoding plus whatever the reader did with each row.
+public class RequestMetrics {
+
+  private SBEAMSMetrics registry;
+  private String endpoint;
+  private long start = System.nanoTime();
+  private long headers = -1;
+  private long end = -1;
+  private long connectMillis = -1;
+  private long readNanos = 0;
+  private long wireBytes = 0;
+  private long bytes = 0;
+  private long rows = 0;
+  private int status = -1;
+  private boolean failed = false;
+//-----------------------------------------------------------------------------------------------
+  RequestMetrics (SBEAMSMetrics registry, String endpoint) {
+	this.registry = registry;
+	this.endpoint = endpoint;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // connectMillis is the time taken to open the connection, TLS included: 0 when a pooled
+  // connection was reused and -1 when the transport cannot tell
+  synchronized void headersReceived(int status, long connectMillis) {
+	this.status = status;
+	this.connectMillis = connectMillis;
+	headers = System.nanoTime();
+  }//headersReceived
+//-----------------------------------------------------------------------------------------------
+  public synchronized void addRows(long rows) {
+	this.rows += rows;
+  }//addRows
+//-----------------------------------------------------------------------------------------------
+  void failed() {
+	synchronized (this) {
+	  failed = true;
+	}
+	finish();
+  }//failed
+//-----------------------------------------------------------------------------------------------
+  void finish() {
+	synchronized (this) {
+	  if (end != -1)
+		return;
+	  end = System.nanoTime();
+	}
+	registry.record(this);
+  }//finish
+//-----------------------------------------------------------------------------------------------
+  // Counts compressed bytes and the time spent waiting on them
+  InputStream meterWire(InputStream in) {
+	return new FilterInputStream(in) {
+		public int read() throws IOException {
+		  byte[] one = new byte[1];
+		  return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xff);
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+		  long before = System.nanoTime();
+		  try {
+			int n = super.read(b, off, len);
+			synchronized (RequestMetrics.this) {
+			  readNanos += System.nanoTime()-before;
+			  if (n > 0)
+				wireBytes += n;
+			}
+			return n;
+		  } catch (IOException e) {
+			failed();
+			throw e;
+		  }
+		}
+	  };
+  }//meterWire
+//-----------------------------------------------------------------------------------------------
+  // Counts decoded bytes and finishes the record when the body is closed
+  InputStream meterBody(InputStream in) {
+	return new FilterInputStream(in) {
+		public int read() throws IOException {
+		  int b = super.read();
+		  if (b != -1)
+			addBytes(1);
+		  return b;
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+		  int n = super.read(b, off, len);
+		  if (n > 0)
+			addBytes(n);
+		  return n;
+		}
+		public void close() throws IOException {
+		  try {
+			super.close();
+		  } finally {
+			finish();
+		  }
+		}
+	  };
+  }//meterBody
+//-----------------------------------------------------------------------------------------------
+  private synchronized void addBytes(long n) {
+	bytes += n;
+  }//addBytes
+//-----------------------------------------------------------------------------------------------
+  public String getEndpoint() {
+	return endpoint;
+  }//getEndpoint
+//-----------------------------------------------------------------------------------------------
+  public synchronized int getStatus() {
+	return status;
+  }//getStatus
+//-----------------------------------------------------------------------------------------------
+  public synchronized boolean isFailed() {
+	return failed || status >= 400;
+  }//isFailed
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getConnectMillis() {
+	return connectMillis;
+  }//getConnectMillis
+//-----------------------------------------------------------------------------------------------
+  // Time to the response headers, i.e. the server's think time plus connecting
+  public synchronized long getFirstByteMillis() {
+	return (headers == -1) ? -1 : (headers-start)/1000000;
+  }//getFirstByteMillis
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getDownloadMillis() {
+	return readNanos/1000000;
+  }//getDownloadMillis
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getParseMillis() {
+	if (headers == -1 || end == -1)
+	  return -1;
+	return Math.max(0, (end-headers-readNanos)/1000000);
+  }//getParseMillis
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getTotalMillis() {
+	return ((end == -1) ? System.nanoTime()-start : end-start)/1000000;
+  }//getTotalMillis
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getWireBytes() {
+	return wireBytes;
+  }//getWireBytes
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getBytes() {
+	return bytes;
+  }//getBytes
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getRows() {
+	return rows;
+  }//getRows
+//-----------------------------------------------------------------------------------------------
+  public String toString() {
+	return endpoint+" status="+getStatus()+" connect="+getConnectMillis()+"ms firstByte="+
+	  getFirstByteMillis()+"ms download="+getDownloadMillis()+"ms parse="+getParseMillis()+
+	  "ms total="+getTotalMillis()+"ms wire="+getWireBytes()+"B body="+getBytes()+"B rows="+
+	  getRows();
+  }//toString
+//-----------------------------------------------------------------------------------------------
+}//RequestMetrics
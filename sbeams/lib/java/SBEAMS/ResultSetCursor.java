@@ -0,0 +1,202 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+
+//-----------------------------------------------------------------------------------------------
+// Forward-only cursor over a tab-delimited SBEAMS result set.  Rows are tokenized straight
+// off the stream as they arrive, so only the current row is ever held in memory.  The
+// first line is taken as the column headers; blank lines are skipped.
+public class ResultSetCursor {
+
+  private Reader in;
+  private TransportResponse response;
+  private char[] buf = new char[8192];
+  private int pos = 0;
+  private int limit = 0;
+  private boolean eof = false;
+  private boolean closed = false;
+  private StringBuffer carry = new StringBuffer();
+  private String[] headers;
+  private String[] fields = new String[16];
+  private int fieldCount = 0;
+  private int rowNumber = 0;
+  private boolean[] keep = null;
+//-----------------------------------------------------------------------------------------------
+  public ResultSetCursor (Reader in) throws IOException {
+	this.in = in;
+	if (readLine())
+	  headers = getRow();
+	else
+	  headers = new String[0];
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public ResultSetCursor (InputStream in) throws IOException {
+	this(new InputStreamReader(in));
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  ResultSetCursor (InputStream in, TransportResponse response) throws IOException {
+	this(new InputStreamReader(in));
+	this.response = response;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public String[] getHeaders() {
+	return headers;
+  }//getHeaders
+//-----------------------------------------------------------------------------------------------
+  public int getColumnIndex(String columnTitle) {
+	for (int m=0;m<headers.length;m++) {
+	  if (headers[m].equals(columnTitle))
+		return m;
+	}
+	return -1;
+  }//getColumnIndex
+//-----------------------------------------------------------------------------------------------
+  // Advances to the next row, returning false once the result set is exhausted
+  public boolean next() throws IOException {
+	if (closed)
+	  return false;
+	if (!readLine()) {
+	  close();
+	  return false;
+	}
+	rowNumber++;
+	return true;
+  }//next
+//-----------------------------------------------------------------------------------------------
+  // Restricts tokenizing to the given column indexes; fields of every other column
+  // read as null.  Negative indexes are ignored, and null turns projection off.
+  public void setProjection(int[] columns) {
+	if (columns == null) {
+	  keep = null;
+	  return;
+	}
+	keep = new boolean[headers.length];
+	for (int m=0;m<columns.length;m++) {
+	  if (columns[m] >= 0 && columns[m] < keep.length)
+		keep[columns[m]] = true;
+	}
+  }//setProjection
+//-----------------------------------------------------------------------------------------------
+  public int getFieldCount() {
+	return fieldCount;
+  }//getFieldCount
+//-----------------------------------------------------------------------------------------------
+  // Fields past the end of a short row read as empty strings
+  public String getField(int column) {
+	if (column < 0 || column >= fieldCount)
+	  return "";
+	return fields[column];
+  }//getField
+//-----------------------------------------------------------------------------------------------
+  public String getField(String columnTitle) {
+	return getField(getColumnIndex(columnTitle));
+  }//getField
+//-----------------------------------------------------------------------------------------------
+  public String[] getRow() {
+	String[] row = new String[fieldCount];
+	System.arraycopy(fields, 0, row, 0, fieldCount);
+	return row;
+  }//getRow
+//-----------------------------------------------------------------------------------------------
+  // Number of data rows returned so far (the header line is not counted)
+  public int getRowNumber() {
+	return rowNumber;
+  }//getRowNumber
+//-----------------------------------------------------------------------------------------------
+  // Closing before the end drops the connection rather than draining the rest of the table
+  public void close() {
+	if (closed)
+	  return;
+	closed = true;
+	if (response != null && response.getRequestMetrics() != null)
+	  response.getRequestMetrics().addRows(rowNumber);
+	if (!eof && response != null)
+	  response.disconnect();
+	try {
+	  in.close();
+	} catch (IOException e) {
+	}
+  }//close
+//-----------------------------------------------------------------------------------------------
+  private boolean fill() throws IOException {
+	if (eof)
+	  return false;
+	pos = 0;
+	limit = in.read(buf, 0, buf.length);
+	if (limit <= 0) {
+	  limit = 0;
+	  eof = true;
+	  return false;
+	}
+	return true;
+  }//fill
+//-----------------------------------------------------------------------------------------------
+  private void addField(String field) {
+	if (fieldCount == fields.length) {
+	  String[] grown = new String[fields.length*2];
+	  System.arraycopy(fields, 0, grown, 0, fields.length);
+	  fields = grown;
+	}
+	fields[fieldCount++] = field;
+  }//addField
+//-----------------------------------------------------------------------------------------------
+  private String endOfLine(String field) {
+	if (field.endsWith("\r"))
+	  return field.substring(0, field.length()-1);
+	return field;
+  }//endOfLine
+//-----------------------------------------------------------------------------------------------
+  private boolean readLine() throws IOException {
+	fieldCount = 0;
+	carry.setLength(0);
+	boolean blank = true;
+	int fieldChars = 0;
+	char lastChar = 0;
+	while (true) {
+	  boolean wanted = (keep == null) || (fieldCount < keep.length && keep[fieldCount]);
+	  if (pos >= limit && !fill()) {
+		// last line had no trailing newline
+		if (blank && (fieldChars == 0 || (fieldChars == 1 && lastChar == '\r')))
+		  return false;
+		addField(wanted ? endOfLine(carry.toString()) : null);
+		carry.setLength(0);
+		return true;
+	  }
+	  int start = pos;
+	  while (pos < limit && buf[pos] != '\t' && buf[pos] != '\n')
+		pos++;
+	  if (pos > start) {
+		fieldChars += pos-start;
+		lastChar = buf[pos-1];
+	  }
+	  if (pos == limit) {
+		if (wanted)
+		  carry.append(buf, start, pos-start);
+		continue;
+	  }
+
+	  // columns outside the projection are scanned past without building a String
+	  String field = null;
+	  if (wanted && carry.length() == 0) {
+		field = new String(buf, start, pos-start);
+	  }else if (wanted) {
+		carry.append(buf, start, pos-start);
+		field = carry.toString();
+		carry.setLength(0);
+	  }
+	  if (buf[pos++] == '\t') {
+		addField(field);
+		blank = false;
+	  }else {
+		if (blank && (fieldChars == 0 || (fieldChars == 1 && lastChar == '\r'))) {
+		  fieldChars = 0;
+		  continue;
+		}
+		addField(field == null ? null : endOfLine(field));
+		return true;
+	  }
+	  fieldChars = 0;
+	}
+  }//readLine
+//-----------------------------------------------------------------------------------------------
+}//ResultSetCursor
@@ -0,0 +1,233 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.*;
+
+//-----------------------------------------------------------------------------------------------
+// Equi-join of two result sets on one key column each, read as a forward-only cursor.
+// Both sides are read in step until one runs out; that one, the smaller, is hashed on
+// its key and the other is streamed past it, so memory grows with the smaller table
+// only.  Joined rows carry the chosen left columns followed by the chosen right ones.
+// Row order follows the streamed side, and in a left join whose left side was the one
+// hashed, left rows without a match come last.  Empty keys, SBEAMS's NULL, never match.
+public class ResultSetJoin {
+
+  public static final int INNER = 0;
+  public static final int LEFT = 1;
+
+  private Side left;
+  private Side right;
+  private int mode;
+  private String[] headers;
+  private String[] fields;
+  private int rowNumber = 0;
+
+  private HashMap<String,List<Row>> table = null;
+  private boolean leftBuilt;
+  private Side probe;
+  private LinkedList<Row> pending;
+  private ArrayList<Row> built;
+  private int unmatched = 0;
+  private Row probeRow;
+  private List<Row> matches;
+  private int matchIndex;
+//-----------------------------------------------------------------------------------------------
+  private static class Row {
+	String key;
+	String[] fields;
+	boolean matched = false;
+  } //Row class
+//-----------------------------------------------------------------------------------------------
+  private static class Side {
+	ResultSetCursor cursor;
+	int keyColumn;
+	int[] columns;
+	String[] names;
+
+	Side(ResultSetCursor cursor, String keyColumn, String[] columns) {
+	  this.cursor = cursor;
+	  this.keyColumn = cursor.getColumnIndex(keyColumn);
+	  if (this.keyColumn == -1)
+		throw new IllegalArgumentException("no key column "+keyColumn);
+	  names = (columns == null) ? cursor.getHeaders() : columns;
+	  this.columns = new int[names.length];
+	  for (int m=0;m<names.length;m++) {
+		this.columns[m] = cursor.getColumnIndex(names[m]);
+		if (this.columns[m] == -1)
+		  throw new IllegalArgumentException("no column "+names[m]);
+	  }
+	  int[] read = new int[this.columns.length+1];
+	  System.arraycopy(this.columns, 0, read, 0, this.columns.length);
+	  read[this.columns.length] = this.keyColumn;
+	  cursor.setProjection(read);
+	}
+
+	// The next row, or null at the end
+	Row read() throws IOException {
+	  if (!cursor.next())
+		return null;
+	  Row row = new Row();
+	  row.key = cursor.getField(keyColumn);
+	  row.fields = new String[columns.length];
+	  for (int m=0;m<columns.length;m++)
+		row.fields[m] = cursor.getField(columns[m]);
+	  return row;
+	}
+  } //Side class
+//-----------------------------------------------------------------------------------------------
+  // Null column lists take every column of that side
+  public ResultSetJoin (ResultSetCursor left, String leftKey, String[] leftColumns,
+						ResultSetCursor right, String rightKey, String[] rightColumns, int mode) {
+	if (mode != INNER && mode != LEFT)
+	  throw new IllegalArgumentException("unknown join mode "+mode);
+	this.left = new Side(left, leftKey, leftColumns);
+	this.right = new Side(right, rightKey, rightColumns);
+	this.mode = mode;
+	headers = new String[this.left.names.length+this.right.names.length];
+	System.arraycopy(this.left.names, 0, headers, 0, this.left.names.length);
+	System.arraycopy(this.right.names, 0, headers, this.left.names.length, this.right.names.length);
+	fields = new String[headers.length];
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public ResultSetJoin (ResultSetCursor left, String leftKey, ResultSetCursor right,
+						String rightKey, int mode) {
+	this(left, leftKey, null, right, rightKey, null, mode);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public String[] getHeaders() {
+	return headers;
+  }//getHeaders
+//-----------------------------------------------------------------------------------------------
+  public int getColumnIndex(String columnTitle) {
+	for (int m=0;m<headers.length;m++) {
+	  if (headers[m].equals(columnTitle))
+		return m;
+	}
+	return -1;
+  }//getColumnIndex
+//-----------------------------------------------------------------------------------------------
+  // Reads both sides until one ends, then hashes the one that ended
+  private void build() throws IOException {
+	ArrayList<Row> leftRows = new ArrayList<Row>();
+	LinkedList<Row> rightRows = new LinkedList<Row>();
+	while (true) {
+	  Row row = left.read();
+	  if (row == null) {
+		leftBuilt = true;
+		built = leftRows;
+		pending = rightRows;
+		probe = right;
+		break;
+	  }
+	  leftRows.add(row);
+	  row = right.read();
+	  if (row == null) {
+		leftBuilt = false;
+		built = new ArrayList<Row>(rightRows);
+		pending = new LinkedList<Row>(leftRows);
+		probe = left;
+		break;
+	  }
+	  rightRows.add(row);
+	}
+	table = new HashMap<String,List<Row>>(built.size()*2);
+	for (int m=0;m<built.size();m++) {
+	  Row row = built.get(m);
+	  if (row.key.length() == 0)
+		continue;
+	  List<Row> same = table.get(row.key);
+	  if (same == null) {
+		same = new ArrayList<Row>(1);
+		table.put(row.key, same);
+	  }
+	  same.add(row);
+	}
+	// only a hashed left side has to remember which rows found a partner
+	if (!(leftBuilt && mode == LEFT))
+	  built = null;
+  }//build
+//-----------------------------------------------------------------------------------------------
+  private Row nextProbe() throws IOException {
+	if (!pending.isEmpty())
+	  return pending.removeFirst();
+	return probe.read();
+  }//nextProbe
+//-----------------------------------------------------------------------------------------------
+  // Advances to the next joined row, returning false once the join is exhausted
+  public boolean next() throws IOException {
+	if (table == null)
+	  build();
+	while (true) {
+	  if (matches != null && matchIndex < matches.size()) {
+		Row match = matches.get(matchIndex++);
+		if (leftBuilt)
+		  setRow(match, probeRow);
+		else
+		  setRow(probeRow, match);
+		return true;
+	  }
+	  matches = null;
+
+	  Row row = nextProbe();
+	  if (row != null) {
+		List<Row> found = (row.key.length() == 0) ? null : table.get(row.key);
+		if (found != null) {
+		  if (built != null) {
+			for (int m=0;m<found.size();m++)
+			  found.get(m).matched = true;
+		  }
+		  probeRow = row;
+		  matches = found;
+		  matchIndex = 0;
+		} else if (mode == LEFT && !leftBuilt) {
+		  setRow(row, null);
+		  return true;
+		}
+		continue;
+	  }
+
+	  while (built != null && unmatched < built.size()) {
+		Row leftover = built.get(unmatched++);
+		if (!leftover.matched) {
+		  setRow(leftover, null);
+		  return true;
+		}
+	  }
+	  close();
+	  return false;
+	}
+  }//next
+//-----------------------------------------------------------------------------------------------
+  // Columns of a missing right row read as null
+  private void setRow(Row leftRow, Row rightRow) {
+	int width = left.names.length;
+	System.arraycopy(leftRow.fields, 0, fields, 0, width);
+	for (int m=0;m<right.names.length;m++)
+	  fields[width+m] = (rightRow == null) ? null : rightRow.fields[m];
+	rowNumber++;
+  }//setRow
+//-----------------------------------------------------------------------------------------------
+  public String getField(int column) {
+	return fields[column];
+  }//getField
+//-----------------------------------------------------------------------------------------------
+  public String getField(String columnTitle) {
+	int column = getColumnIndex(columnTitle);
+	return (column == -1) ? null : fields[column];
+  }//getField
+//-----------------------------------------------------------------------------------------------
+  public String[] getRow() {
+	return fields.clone();
+  }//getRow
+//-----------------------------------------------------------------------------------------------
+  // Number of joined rows returned so far
+  public int getRowNumber() {
+	return rowNumber;
+  }//getRowNumber
+//-----------------------------------------------------------------------------------------------
+  public void close() {
+	left.cursor.close();
+	right.cursor.close();
+  }//close
+//-----------------------------------------------------------------------------------------------
+} //ResultSetJoin class
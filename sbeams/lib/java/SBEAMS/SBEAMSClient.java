@@ -3,21 +3,47 @@ package SBEAMS;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.zip.*;
 import java.util.regex.*;
 
 //-----------------------------------------------------------------------------------------------
 public class SBEAMSClient {
 
-  private String cookie = null;
-  private static String userName; 
-  private static String password;
+  private volatile SBEAMSSession session;
+  private volatile String userName; 
+  private volatile String password;
   private boolean useGui = false;
   private int passwordAttempts = 3;
   private static boolean DEBUG = false;
-  private String baseURL =  "https://db.systemsbiology.net/sbeams";
+  private volatile String baseURL =  "https://db.systemsbiology.net/sbeams";
   private String COOKIE_URL =  baseURL + "/cgi/main.cgi";
   private static String DEFAULT_COOKIE_FILE = "./.sbeamsCookie";
   private static String COOKIE_ERROR = "badCookie";
+  // connection pools are process-wide in the JDK, so these are fixed at startup
+  private static final int POOL_SIZE = Integer.getInteger("sbeams.http.poolSize", 8).intValue();
+  private static final int IDLE_TIMEOUT = Integer.getInteger("sbeams.http.idleTimeout", 60).intValue();
+  private static SBEAMSTransport sharedTransport = null;
+  private volatile SBEAMSTransport transport = null;
+  private volatile SBEAMSResponseCache responseCache = null;
+  private volatile boolean useCompression = true;
+  private AtomicLong compressedBytes = new AtomicLong();
+  private AtomicLong uncompressedBytes = new AtomicLong();
+  private static int MAX_PARALLEL = Integer.getInteger("sbeams.http.maxParallel", 8).intValue();
+  private static SBEAMSExecutor sharedExecutor = null;
+  private static SBEAMSExecutor pageExecutor = null;
+  private static ConcurrentHashMap<Object,FutureTask<?>> inFlight = new ConcurrentHashMap<Object,FutureTask<?>>();
+  private volatile SBEAMSRequestPolicy requestPolicy = SBEAMSRequestPolicy.getSharedPolicy();
+  private volatile SBEAMSMetrics metrics = SBEAMSMetrics.getDefault();
+  private volatile SBEAMSEndpoints endpoints = null;
+  private volatile SBEAMSConcurrencyLimiter concurrencyLimiter = SBEAMSConcurrencyLimiter.getSharedLimiter();
+  private static int DOWNLOAD_RESUMES = Integer.getInteger("sbeams.download.resumes", 5).intValue();
+  private static int TRANSFER_BLOCK = 1 << 20;
+  private static Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-\\d+/(\\d+|\\*)");
+  private static Pattern TABLE_PARAM = Pattern.compile("(?:^|&)TABLE_NAME=([^&]*)");
 //-----------------------------------------------------------------------------------------------
  protected static class Response {
    String contentType = null;
@@ -25,20 +51,45 @@ public class SBEAMSClient {
    String content = null;
  } //Response class
 //-----------------------------------------------------------------------------------------------
+  // Clients made without credentials share one login for the whole process
   public SBEAMSClient () throws Exception {
+	session = SBEAMSSession.getSharedSession();
   }//constructor
 //-----------------------------------------------------------------------------------------------
   public SBEAMSClient (boolean useGui) throws Exception {
 	this.useGui = useGui;
+	session = SBEAMSSession.getSharedSession();
   }//constructor
 //-----------------------------------------------------------------------------------------------
+  // Credentials belong to this client alone, as does its login, so clients for different
+  // users can work side by side in one JVM.  Once configured, a client may be shared by
+  // any number of threads.
   public SBEAMSClient( String userName, String password ) throws Exception {
-  	SBEAMSClient.userName = userName;
-	SBEAMSClient.password = password;
+  	this.userName = userName;
+	this.password = password;
+	session = new SBEAMSSession();
   }//constructor
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSClient( String userName, String password, String baseURL ) throws Exception {
+	this(userName, password);
+	setBaseURL(baseURL);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // The user this client reads as: its own, or whoever logged in to its shared session
+  public String getUserName() {
+	return (userName != null) ? userName : session.getUserName();
+  }//getUserName
+//-----------------------------------------------------------------------------------------------
+  public void setSession(SBEAMSSession session) {
+	this.session = session;
+  }//setSession
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSSession getSession() {
+	return session;
+  }//getSession
 //-----------------------------------------------------------------------------------------------
   protected void destroyCookie() {
-	cookie = null;
+	session.invalidate();
   }//destroyCookie
 //-----------------------------------------------------------------------------------------------
   protected void setBaseURL(String baseURL) {
@@ -49,6 +100,128 @@ public class SBEAMSClient {
 	else 
 	  this.baseURL = baseURL+"/";
   }// setBaseURL
+//-----------------------------------------------------------------------------------------------
+  // The first URL is the primary, which logins and posts go to.  With mirrors listed
+  // after it, reads go to whichever server is currently fastest and fail over to the
+  // others, and the servers are probed in the background to keep their rankings current.
+  public void setBaseURLs(String[] baseURLs) {
+	setBaseURL(baseURLs[0]);
+	SBEAMSEndpoints old = endpoints;
+	if (old != null)
+	  old.stopProbing();
+	if (baseURLs.length < 2) {
+	  endpoints = null;
+	  return;
+	}
+	SBEAMSEndpoints router = new SBEAMSEndpoints(baseURLs);
+	router.startProbing(getTransport());
+	endpoints = router;
+  }//setBaseURLs
+//-----------------------------------------------------------------------------------------------
+  // The servers reads are routed across, or null when there is only the one
+  public SBEAMSEndpoints getEndpoints() {
+	return endpoints;
+  }//getEndpoints
+//-----------------------------------------------------------------------------------------------
+  // Transport used by every client that has not been given its own.  Sharing it lets
+  // successive clients reuse pooled connections instead of handshaking again.
+  public static synchronized SBEAMSTransport getSharedTransport() {
+	if (sharedTransport == null)
+	  sharedTransport = createTransport(POOL_SIZE, IDLE_TIMEOUT);
+	return sharedTransport;
+  }//getSharedTransport
+//-----------------------------------------------------------------------------------------------
+  // HTTP/2, or HTTP/1.1 keep-alive when -Dsbeams.http.transport=http1 is given.  The
+  // pool settings only take effect for the first transport in the process; getName()
+  // reports the ones actually in use.
+  public static SBEAMSTransport createTransport(int poolSize, int idleTimeout) {
+	if ("http1".equals(System.getProperty("sbeams.http.transport")))
+	  return new HttpURLConnectionTransport(poolSize, idleTimeout);
+	return new HttpClientTransport(poolSize, idleTimeout);
+  }//createTransport
+//-----------------------------------------------------------------------------------------------
+  public void setTransport(SBEAMSTransport transport) {
+	this.transport = transport;
+  }//setTransport
+//-----------------------------------------------------------------------------------------------
+  // Read-only fetches consult this cache; null (the default) turns caching off
+  public void setResponseCache(SBEAMSResponseCache responseCache) {
+	this.responseCache = responseCache;
+  }//setResponseCache
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSResponseCache getResponseCache() {
+	return responseCache;
+  }//getResponseCache
+//-----------------------------------------------------------------------------------------------
+  public void setUseCompression(boolean useCompression) {
+	this.useCompression = useCompression;
+  }//setUseCompression
+//-----------------------------------------------------------------------------------------------
+  // Body bytes as they came over the wire, before gzip/deflate decoding
+  public long getCompressedBytesRead() {
+	return compressedBytes.get();
+  }//getCompressedBytesRead
+//-----------------------------------------------------------------------------------------------
+  public long getUncompressedBytesRead() {
+	return uncompressedBytes.get();
+  }//getUncompressedBytesRead
+//-----------------------------------------------------------------------------------------------
+  // Retry, hedging and circuit breaking for reads; null sends each read exactly once
+  public void setRequestPolicy(SBEAMSRequestPolicy requestPolicy) {
+	this.requestPolicy = requestPolicy;
+  }//setRequestPolicy
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSRequestPolicy getRequestPolicy() {
+	return requestPolicy;
+  }//getRequestPolicy
+//-----------------------------------------------------------------------------------------------
+  // Registry that requests report their timings to; null stops measuring
+  public void setMetrics(SBEAMSMetrics metrics) {
+	this.metrics = metrics;
+  }//setMetrics
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSMetrics getMetrics() {
+	return metrics;
+  }//getMetrics
+//-----------------------------------------------------------------------------------------------
+  // Adaptive cap on requests in flight to each host; null sends without waiting
+  public void setConcurrencyLimiter(SBEAMSConcurrencyLimiter concurrencyLimiter) {
+	this.concurrencyLimiter = concurrencyLimiter;
+  }//setConcurrencyLimiter
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSConcurrencyLimiter getConcurrencyLimiter() {
+	return concurrencyLimiter;
+  }//getConcurrencyLimiter
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSTransport getTransport() {
+	if (transport == null)
+	  transport = getSharedTransport();
+	return transport;
+  }//getTransport
+//-----------------------------------------------------------------------------------------------
+  public static synchronized SBEAMSExecutor getSharedExecutor() {
+	if (sharedExecutor == null)
+	  sharedExecutor = new SBEAMSExecutor(MAX_PARALLEL);
+	return sharedExecutor;
+  }//getSharedExecutor
+//-----------------------------------------------------------------------------------------------
+  // Only ever runs single page fetches, which never wait on other tasks, so paged reads
+  // started from the shared executor cannot deadlock it
+  static synchronized SBEAMSExecutor getPageExecutor() {
+	if (pageExecutor == null)
+	  pageExecutor = new SBEAMSExecutor(MAX_PARALLEL);
+	return pageExecutor;
+  }//getPageExecutor
+//-----------------------------------------------------------------------------------------------
+  public static synchronized void setMaxParallelRequests(int maxParallel) {
+	MAX_PARALLEL = maxParallel;
+	if (sharedExecutor != null)
+	  sharedExecutor.shutdown();
+	sharedExecutor = null;
+	if (pageExecutor != null)
+	  pageExecutor.shutdown();
+	pageExecutor = null;
+  }//setMaxParallelRequests
 //-----------------------------------------------------------------------------------------------
   protected boolean findCookie(String cookiePath) {
 	boolean cookieFound = false;
@@ -60,7 +233,7 @@ public class SBEAMSClient {
 		Pattern cookieSeek = Pattern.compile("(SBEAMSName\\=(.+)\\;)");
 		Matcher match = cookieSeek.matcher(newLineOfText);
 		if (match.matches()) {
-		  cookie = match.group(1);
+		  session.setCookie(match.group(1));
 		  cookieFound = true;
 		  continue;
 		}
@@ -79,7 +252,7 @@ public class SBEAMSClient {
   protected void saveCookie(String cookieFile) {
 	try {
 	  BufferedWriter bufferedWriter = new BufferedWriter (new FileWriter (cookieFile));
-	  bufferedWriter.write(cookie);
+	  bufferedWriter.write(session.getCookie());
 	  bufferedWriter.newLine();
 	  bufferedWriter.flush();
 	} catch(IOException e){
@@ -94,137 +267,432 @@ public class SBEAMSClient {
   }//saveCookie
 //-----------------------------------------------------------------------------------------------
   public String getCookie() {
-	return cookie;
+	return session.getCookie();
   }//getCookie
 //-----------------------------------------------------------------------------------------------
   public void setCookie(String cookie) {
-	this.cookie = cookie;
+	session.setCookie(cookie);
   }//setCookie
 //-----------------------------------------------------------------------------------------------
+  // True while the cookie is set and, if it carries an expiry, has not yet expired
   public boolean goodCookie() {
-	if (cookie == null)
-	  return false;
-	// Hash for translating month to number
-	Hashtable monthHash = new Hashtable();
-	monthHash.put("Jan", new Integer(1));
-	monthHash.put("Feb", new Integer(2));
-	monthHash.put("Mar", new Integer(3));
-	monthHash.put("Apr", new Integer(4));
-	monthHash.put("May", new Integer(5));
-	monthHash.put("Jun", new Integer(6));
-	monthHash.put("Jly", new Integer(7));
-	monthHash.put("Aug", new Integer(8));
-	monthHash.put("Sep", new Integer(9));
-	monthHash.put("Oct", new Integer(10));
-	monthHash.put("Nov", new Integer(11));
-	monthHash.put("Dec", new Integer(12));
-	// Extract cookie expiration information
-	int cookieYear = 0;
-	int cookieMonth = 0;
-	int cookieDate = 0;
-	int cookieHour = 0;
-	int cookieMinute = 0;
-	int cookieSecond = 0;
-	Pattern expiration = Pattern.compile("expires\\=(\\w+)\\,\\s?(\\d+)\\-(\\w+)\\-(\\d+)\\s+(\\d+)\\:(\\d+)\\:(\\d+)\\;?");
-	Matcher match = expiration.matcher(cookie);
-	if (match.matches()) {
-	  cookieDate = (new Integer(match.group(2))).intValue();
-	  cookieMonth = ((Integer)monthHash.get(match.group(3))).intValue();
-	  cookieYear = (new Integer(match.group(4))).intValue();
-	  cookieHour = (new Integer(match.group(5))).intValue();
-	  cookieMinute = (new Integer(match.group(6))).intValue();
-	  cookieSecond = (new Integer(match.group(7))).intValue();
-	}else { return false;}
-	// Get current timestamp and compare it to cookie expiration information
-	Calendar calendar = new GregorianCalendar();
-	Date trialTime = new Date();
-	calendar.setTime(trialTime);
-
-	if (calendar.get(Calendar.YEAR) < cookieYear)
-	  return true;
-	else if (calendar.get(Calendar.YEAR) > cookieYear)
-	  return false;
-
-	if ((calendar.get(Calendar.MONTH)+1) < cookieMonth)
-	  return true;
-	else if ((calendar.get(Calendar.MONTH)+1) > cookieMonth)
-	  return false;
-
-	if (calendar.get(Calendar.DATE) < cookieDate)
-	  return true;
-	else if (calendar.get(Calendar.DATE) > cookieDate)
-	  return false;
-
-    if (calendar.get(Calendar.HOUR_OF_DAY) < cookieHour)
-	  return true;
-	else if (calendar.get(Calendar.HOUR_OF_DAY) > cookieHour)
-	  return false;
-
-	if (calendar.get(Calendar.MINUTE) < cookieMinute)
-	  return true;
-	else if (calendar.get(Calendar.MINUTE) > cookieMinute)
-	  return false;
-	
-	if (calendar.get(Calendar.SECOND) < cookieSecond)
-	  return true;
-	else if (calendar.get(Calendar.SECOND) > cookieSecond)
-	  return false;
-
-	return false;
-	
+	return session.isValid();
   }//goodCookie
 //-----------------------------------------------------------------------------------------------
   private Response postRequest (String urlString, String params)
 	throws Exception{
 	return postRequest (urlString, params, -1);
   }// postRequest
+//-----------------------------------------------------------------------------------------------
+  // Sends the request and returns the response with its body still unread
+  private TransportResponse openRequest (String urlString, String params)
+	throws Exception {
+	return openRequest(urlString, params, null);
+  }//openRequest
+//-----------------------------------------------------------------------------------------------
+  private TransportResponse openRequest (String urlString, String params, Hashtable<String,String> extraHeaders)
+	throws Exception {
+	return openRequest("POST", urlString, params, extraHeaders, baseURL);
+  }//openRequest
+//-----------------------------------------------------------------------------------------------
+  // A GET carries the parameters in the query string, a POST in the body.  Headers passed
+  // in win over the defaults, so a caller can turn off compression for one request.
+  private TransportResponse openRequest (String method, String urlString, String params,
+										 Hashtable<String,String> extraHeaders, String base)
+	throws Exception {
+	Hashtable<String,String> headers = new Hashtable<String,String>();
+	if (useCompression)
+	  headers.put("Accept-Encoding", "gzip, deflate");
+	headers.put("User-Agent", "CytoLinkFromMJ");
+	if (extraHeaders != null)
+	  headers.putAll(extraHeaders);
+
+	String target = formatURL(urlString, base);
+	// the session is only for SBEAMS, not for other hosts an httpIndirect:// URI names
+	String cookie = session.getCookie();
+	if (cookie != null && target.startsWith(base))
+	  headers.put("Cookie", cookie);
+
+	byte[] body = null;
+	if (method.equals("GET")) {
+	  if (params != null && params.length() > 0)
+		target += "?"+params;
+	} else {
+	  headers.put("Content-Type", "application/x-www-form-urlencoded");
+	  body = (params == null) ? new byte[0] : params.getBytes();
+	}
+	SBEAMSConcurrencyLimiter limiter = concurrencyLimiter;
+	SBEAMSConcurrencyLimiter.Permit permit = null;
+	if (limiter != null)
+	  permit = limiter.acquire(new URL(target).getAuthority());
+	SBEAMSMetrics registry = metrics;
+	RequestMetrics timing = (registry == null) ? null : registry.start(endpointName(urlString, params));
+	long start = System.currentTimeMillis();
+	long latency = -1;
+	boolean overloaded = true;
+	try {
+	  TransportResponse uc;
+	  try {
+		uc = getTransport().send(method, target, headers, body);
+		int status = uc.getStatusCode();
+		latency = System.currentTimeMillis() - start;
+		if (timing != null)
+		  timing.headersReceived(status, uc.getConnectTime());
+	  } catch (IOException e) {
+		if (timing != null)
+		  timing.failed();
+		throw e;
+	  }
+	  if (uc.getStatusCode() >= 400) {
+		HttpStatusException error = new HttpStatusException(uc.getStatusCode(), urlString);
+		overloaded = error.isTransient();
+		// drain the error page so the connection can go back to the pool
+		InputStream err = uc.getInputStream();
+		byte[] skip = new byte[4096];
+		while (err != null && err.read(skip) != -1);
+		if (err != null)
+		  err.close();
+		if (timing != null)
+		  timing.finish();
+		throw error;
+	  }
+	  TransportResponse decoded = decodeResponse(uc, timing);
+	  if (permit == null)
+		return decoded;
+	  TransportResponse held = holdPermit(decoded, permit, latency);
+	  permit = null;
+	  return held;
+	} finally {
+	  if (permit != null)
+		permit.release(latency, overloaded);
+	}
+  }//openRequest
+//-----------------------------------------------------------------------------------------------
+  // Keeps the request counted against its host's limit until the body is closed or the
+  // connection dropped
+  private static TransportResponse holdPermit (final TransportResponse uc,
+											   final SBEAMSConcurrencyLimiter.Permit permit,
+											   final long latency)
+	throws IOException {
+	InputStream body = new FilterInputStream(uc.getInputStream()) {
+		public void close() throws IOException {
+		  try {
+			super.close();
+		  } finally {
+			permit.release(latency, false);
+		  }
+		}
+	  };
+	return new FilteredResponse(uc, body, uc.getRequestMetrics()) {
+		public void disconnect() {
+		  super.disconnect();
+		  permit.release(latency, false);
+		}
+	  };
+  }//holdPermit
+//-----------------------------------------------------------------------------------------------
+  // Metrics key for a request: the path below baseURL, plus the table for ManageTable
+  private String endpointName (String urlString, String params) {
+	String path = formatURL(urlString);
+	if (path.startsWith(baseURL))
+	  path = path.substring(baseURL.length());
+	if (!path.startsWith("/"))
+	  path = "/"+path;
+	Matcher table = TABLE_PARAM.matcher((params == null) ? "" : params);
+	if (table.find())
+	  path += "?TABLE_NAME="+table.group(1);
+	return path;
+  }//endpointName
+//-----------------------------------------------------------------------------------------------
+  // Undoes gzip or deflate content encoding as the body is read, counting bytes on both
+  // sides of the decoder
+  private TransportResponse decodeResponse (TransportResponse uc, RequestMetrics timing)
+	throws IOException {
+	if (uc.getStatusCode() == 304) {
+	  if (timing != null)
+		timing.finish();
+	  return uc;
+	}
+	InputStream raw = new CountingInputStream(uc.getInputStream(), compressedBytes);
+	if (timing != null)
+	  raw = timing.meterWire(raw);
+	InputStream decoded = raw;
+	String encoding = uc.getHeaderField("Content-Encoding");
+	if (encoding != null) {
+	  encoding = encoding.trim().toLowerCase();
+	  if (encoding.equals("gzip") || encoding.equals("x-gzip"))
+		decoded = new GZIPInputStream(raw, 8192);
+	  else if (encoding.equals("deflate"))
+		decoded = inflate(raw);
+	}
+	InputStream body = new CountingInputStream(decoded, uncompressedBytes);
+	if (timing != null)
+	  body = timing.meterBody(body);
+	return new FilteredResponse(uc, body, timing);
+  }//decodeResponse
+//-----------------------------------------------------------------------------------------------
+  // "deflate" is meant to be zlib-wrapped, but some servers send raw deflate data
+  private static InputStream inflate (InputStream raw)
+	throws IOException {
+	PushbackInputStream in = new PushbackInputStream(raw, 2);
+	int first = in.read();
+	int second = in.read();
+	if (second != -1)
+	  in.unread(second);
+	if (first != -1)
+	  in.unread(first);
+	boolean zlibHeader = (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+	return new InflaterInputStream(in, new Inflater(!zlibHeader), 8192);
+  }//inflate
+//-----------------------------------------------------------------------------------------------
+  // Identifies a read for coalescing: what is being made of the response, for whom and
+  // under which session's cookie, and from which URL once it has been moved onto baseURL.
+  // Sessions compare by identity, so clients holding different cookies never share.
+  private Object requestKey (String kind, String urlString, String params) {
+	String[] request = splitParams(urlString, params);
+	return Arrays.asList(new Object[] {kind, getUserName(), session, formatURL(request[0]), request[1]});
+  }//requestKey
+//-----------------------------------------------------------------------------------------------
+  // Runs the read unless an identical one is already in flight, in which case this
+  // thread waits for that one's result instead of making its own request.  Callers
+  // must not modify a shared result.
+  @SuppressWarnings("unchecked")
+  private static <T> T coalesce (Object key, Callable<T> read)
+	throws Exception {
+	FutureTask<T> task = new FutureTask<T>(read);
+	// equal keys start with the same kind of read, so a running task yields a T as well
+	FutureTask<T> running = (FutureTask<T>)inFlight.putIfAbsent(key, task);
+	if (running == null) {
+	  running = task;
+	  try {
+		task.run();
+	  } finally {
+		inFlight.remove(key, task);
+	  }
+	}
+	try {
+	  return running.get();
+	} catch (ExecutionException e) {
+	  if (e.getCause() instanceof Exception)
+		throw (Exception)e.getCause();
+	  throw (Error)e.getCause();
+	}
+  }//coalesce
+//-----------------------------------------------------------------------------------------------
+  // Moves any query string on the URL into the POST parameters
+  private String[] splitParams (String urlString, String params) {
+	String paramsInUrl = new String();
+	String unparameterizedUrl = urlString;
+	Pattern potentialParams = Pattern.compile("(.*)\\?(.*)");
+	Matcher match = potentialParams.matcher(urlString);
+	if (match.matches()){
+	  unparameterizedUrl = match.group(1);
+	  paramsInUrl = match.group(2);
+	  if (params == null || params.length() == 0)
+		params = paramsInUrl;
+	  else if (paramsInUrl.length() > 0)
+		params += "&"+paramsInUrl;
+	}
+	return new String[] {unparameterizedUrl, params};
+  }//splitParams
 //-----------------------------------------------------------------------------------------------
   private Response postRequest (String urlString, String params, int maxLines)
-    throws Exception {
-	URL url = new URL(formatURL(urlString));
-	HttpURLConnection uc = (HttpURLConnection)url.openConnection();
-	uc.setDoInput(true);
-	uc.setDoOutput(true);
-	uc.setUseCaches(false);
-	uc.setAllowUserInteraction(false);
-	uc.setRequestMethod("POST");
-	uc.setRequestProperty("ContentType", "application/x-www-form-urlencoded");
-	uc.setRequestProperty("User-Agent", "CytoLinkFromMJ");
+	throws Exception {
+	return readResponse(openRequest(urlString, params), maxLines);
+  }//postRequest
+//-----------------------------------------------------------------------------------------------
+  // What a read makes of the response it opens.  It runs inside the request policy, so
+  // a reader that consumes the whole body has the body retried along with the request.
+  private interface ResponseReader<T> {
+	T read(TransportResponse uc) throws Exception;
+  }//ResponseReader
+//-----------------------------------------------------------------------------------------------
+  // Read-only fetches come through here so the response cache can answer them.  A fresh
+  // cache hit needs neither a login nor a network round trip.
+  private TransportResponse openReadRequest (String urlString, String params)
+	throws Exception {
+	return readRequest(urlString, params, new ResponseReader<TransportResponse>() {
+		public TransportResponse read(TransportResponse uc) {
+		  return uc;
+		}
+	  });
+  }//openReadRequest
+//-----------------------------------------------------------------------------------------------
+  private <T> T readRequest (String urlString, String params, final ResponseReader<T> reader)
+	throws Exception {
+	final String[] request = splitParams(urlString, params);
+	final SBEAMSResponseCache cache = responseCache;
+	long ttl = (cache == null) ? 0 : cache.getTTL(request[1]);
+	if (ttl <= 0) {
+	  if (!session.isValid() && onSbeams(request[0]))
+		fetchCookie();
+	  return runIdempotent(new Callable<T>() {
+		  public T call() throws Exception {
+			return readFully(sendIdempotent("POST", request[0], request[1], null), reader);
+		  }
+		});
+	}
 
-	if (cookie != null)
-	  uc.setRequestProperty("Cookie", cookie);
+	String user = getUserName();
+	if (user == null)
+	  user = cache.getLastUser();
+	String key = cache.key(user, formatURL(request[0]), request[1]);
+	final SBEAMSResponseCache.Entry entry = cache.lookup(key);
+	if (entry != null && entry.isFresh(ttl)) {
+	  if (metrics != null)
+		metrics.recordCacheHit(endpointName(request[0], request[1]));
+	  return reader.read(cache.open(entry));
+	}
 
-	PrintStream out = new PrintStream(uc.getOutputStream());
-	out.print(params);
-	out.flush();
-	out.close();
-	uc.connect();
+	if (!session.isValid() && onSbeams(request[0]))
+	  fetchCookie();
+	if (getUserName() != null && !getUserName().equals(user))
+	  key = cache.key(getUserName(), formatURL(request[0]), request[1]);
+	final String storeKey = key;
+	return runIdempotent(new Callable<T>() {
+		public T call() throws Exception {
+		  TransportResponse uc = sendIdempotent("POST", request[0], request[1],
+												(entry == null) ? null : entry.getValidators());
+		  if (uc.getStatusCode() == 304 && entry != null) {
+			uc.getInputStream().close();
+			cache.revalidated(entry);
+			return reader.read(cache.open(entry));
+		  }
+		  return readFully(cache.store(storeKey, formatURL(request[0]), uc), reader);
+		}
+	  });
+  }//readRequest
+//-----------------------------------------------------------------------------------------------
+  // A read that fails part way drops its connection before the policy tries again
+  private static <T> T readFully (TransportResponse uc, ResponseReader<T> reader)
+	throws Exception {
+	try {
+	  return reader.read(uc);
+	} catch (Exception e) {
+	  uc.disconnect();
+	  throw e;
+	}
+  }//readFully
+//-----------------------------------------------------------------------------------------------
+  // Reads may be retried or hedged by the request policy; logins and other posts may not
+  private TransportResponse openIdempotentRequest (String urlString, String params,
+												   Hashtable<String,String> extraHeaders)
+	throws Exception {
+	return openIdempotentRequest("POST", urlString, params, extraHeaders);
+  }//openIdempotentRequest
+//-----------------------------------------------------------------------------------------------
+  private TransportResponse openIdempotentRequest (final String method, final String urlString,
+												   final String params, final Hashtable<String,String> extraHeaders)
+	throws Exception {
+	return runIdempotent(new Callable<TransportResponse>() {
+		public TransportResponse call() throws Exception {
+		  return sendIdempotent(method, urlString, params, extraHeaders);
+		}
+	  });
+  }//openIdempotentRequest
+//-----------------------------------------------------------------------------------------------
+  // One attempt at a read, through the mirrors when there are any
+  private TransportResponse sendIdempotent (String method, String urlString, String params,
+											Hashtable<String,String> extraHeaders)
+	throws Exception {
+	SBEAMSEndpoints router = endpoints;
+	if (router == null || !onSbeams(urlString))
+	  return openRequest(method, urlString, params, extraHeaders, baseURL);
+	return openRoutedRequest(router, method, urlString, params, extraHeaders);
+  }//sendIdempotent
+//-----------------------------------------------------------------------------------------------
+  private <T> T runIdempotent (Callable<T> attempt)
+	throws Exception {
+	SBEAMSRequestPolicy policy = requestPolicy;
+	if (policy == null)
+	  return attempt.call();
+	return policy.execute(attempt);
+  }//runIdempotent
+//-----------------------------------------------------------------------------------------------
+  // Tries the servers fastest first, moving on whenever one cannot be reached or answers
+  // with a transient error.  Only when every server has failed does the last error reach
+  // the request policy; a client error such as a 404 would be the same anywhere.
+  private TransportResponse openRoutedRequest (SBEAMSEndpoints router, String method,
+											   String urlString, String params,
+											   Hashtable<String,String> extraHeaders)
+	throws Exception {
+	SBEAMSEndpoints.Endpoint[] order = router.route();
+	IOException last = null;
+	for (int m=0;m<order.length;m++) {
+	  long start = System.currentTimeMillis();
+	  try {
+		TransportResponse uc = openRequest(method, urlString, params, extraHeaders,
+										   order[m].getBaseURL());
+		router.succeeded(order[m], System.currentTimeMillis() - start);
+		return uc;
+	  } catch (HttpStatusException e) {
+		if (!e.isTransient())
+		  throw e;
+		router.failed(order[m]);
+		last = e;
+	  } catch (IOException e) {
+		router.failed(order[m]);
+		last = e;
+	  }
+	  if (DEBUG)
+		System.err.println("failing over from "+order[m].getBaseURL()+": "+last);
+	}
+	throw last;
+  }//openRoutedRequest
+//-----------------------------------------------------------------------------------------------
+  private Response readResponse (TransportResponse uc, int maxLines)
+	throws Exception {
 	StringBuffer sb = new StringBuffer();
 	String inputLine;
 	BufferedReader in = new BufferedReader(new InputStreamReader(uc.getInputStream()));
+	Response res = new Response();
+	res.contentType = uc.getHeaderField("Content-Type");
+	res.cookie = uc.getHeaderField("Set-Cookie");
+	int lines = 0;
 	if (maxLines > 0) {
 	  for (int m=0;m<maxLines && (inputLine = in.readLine()) != null;m++) {
 		sb.append(inputLine+"\n");
+		lines++;
 	  }
 	}else {
 	  while ((inputLine = in.readLine()) != null) {
 		sb.append(inputLine + "\n");
+		lines++;
 	  }
 	}
-	in.close();
+	if (uc.getRequestMetrics() != null)
+	  uc.getRequestMetrics().addRows(lines);
+	// a body that ended on its last wanted line leaves the connection fit for reuse
+	if (maxLines > 0 && lines == maxLines && in.read() != -1) {
+	  // drop the connection instead of letting close() drain the rest of the body
+	  uc.disconnect();
+	  try {
+		in.close();
+	  } catch (IOException e) {
+	  }
+	}else {
+	  in.close();
+	}
 
-	Response res = new Response();
 	res.content = sb.toString();
-	res.contentType = uc.getHeaderField("Content-Type");
-	res.cookie = uc.getHeaderField("Set-Cookie");
 	return res;
-  }//postRequest
+  }//readResponse
 //-----------------------------------------------------------------------------------------------
   private String formatURL (String urlString) {
+	return formatURL(urlString, baseURL);
+  }// formatURL
+//-----------------------------------------------------------------------------------------------
+  // Whether the URL is served by SBEAMS, and so needs the login and may go to any mirror
+  private boolean onSbeams (String urlString) {
+	return formatURL(urlString).startsWith(baseURL);
+  }//onSbeams
+//-----------------------------------------------------------------------------------------------
+  // Moves an SBEAMS URL onto the given server
+  private static String formatURL (String urlString, String base) {
 	Pattern sbeamsBase = Pattern.compile ("(.*?\\/sbeams)(.*)");
 	Matcher baseMatch = sbeamsBase.matcher(urlString);
 	if (baseMatch.matches())
-	  return new String(baseURL+baseMatch.group(2));
+	  return new String(base+baseMatch.group(2));
 	else 
 	  return urlString;	
   }// formatURL
@@ -234,143 +702,489 @@ public class SBEAMSClient {
 	return fetchSbeamsPage(urlString, params, -1);
   }
 //-----------------------------------------------------------------------------------------------
-  public String fetchSbeamsPage (String urlString, String params, int maxLines) 
+  public String fetchSbeamsPage (final String urlString, final String params, final int maxLines) 
 	throws Exception{
-	if (cookie == null)
-	  fetchCookie();
-	String paramsInUrl = new String();
-	String unparameterizedUrl = urlString;
-	Pattern potentialParams = Pattern.compile("(.*)\\?(.*)");
-	Matcher match = potentialParams.matcher(urlString);
-	if (match.matches()){
-	  unparameterizedUrl = match.group(1);
-	  paramsInUrl = match.group(2);
-	  if (params == null)
-		params = paramsInUrl;
-	  else
-		params +=paramsInUrl;
-	}
-
-	Response res = new Response();
-	res = postRequest(unparameterizedUrl, params, maxLines);
-	return res.content;
-
+	return coalesce(requestKey("page "+maxLines, urlString, params), new Callable<String>() {
+		public String call() throws Exception {
+		  Response res = readRequest(urlString, params, new ResponseReader<Response>() {
+			  public Response read(TransportResponse uc) throws Exception {
+				return readResponse(uc, maxLines);
+			  }
+			});
+		  return res.content;
+		}
+	  });
   }//fetchSbeamsPage
 //-----------------------------------------------------------------------------------------------
   public String fetchSbeamsPage (String url) 
 	throws Exception{
-	if (cookie == null)
-	  fetchCookie();
    	return fetchSbeamsPage (url, "", -1);
   }//fetchSbeamsPage
 //-----------------------------------------------------------------------------------------------
   public String fetchSbeamsPage (String url, int maxLines) 
 	throws Exception{
-	if (cookie == null)
-	  fetchCookie();
 	return fetchSbeamsPage (url, "", maxLines);
   }//fetchSbeamsPage
 //-----------------------------------------------------------------------------------------------
-  public String[] fetchSbeamsResultSetColumn (String url, String columnTitle) 
+  // Opens a tab-delimited result set for row-at-a-time reading.  The caller must close
+  // the cursor; closing it early abandons the rest of the download.
+  public ResultSetCursor openResultSet (String urlString, String params)
 	throws Exception{
-	if (cookie == null)
-	  fetchCookie();
-   	String result = fetchSbeamsPage (url, "");
-
-	// THIS will break if there is a "\n" in a record.
-	String[] lines = result.split("\\n");
-	String[] headers = lines[0].split("\\t");
-
-	// first line is column header, last line is blank
-	String[] columnData = new String[lines.length-1];
-	int desiredColumn = -1;
-	for (int m=0;m<headers.length;m++){
-	  if (columnTitle.equals(headers[m])){
-		desiredColumn=m;
-		continue;
+	TransportResponse uc = openReadRequest(urlString, params);
+	// until the cursor exists nothing else can close the body and free its permit
+	try {
+	  return new ResultSetCursor(uc.getInputStream(), uc);
+	} catch (IOException e) {
+	  uc.disconnect();
+	  throw e;
+	} catch (RuntimeException e) {
+	  uc.disconnect();
+	  throw e;
+	}
+  }//openResultSet
+//-----------------------------------------------------------------------------------------------
+  public ResultSetCursor openResultSet (String url)
+	throws Exception{
+	return openResultSet(url, "");
+  }//openResultSet
+//-----------------------------------------------------------------------------------------------
+  // Opens any response body, from SBEAMS or elsewhere, for streaming.  The response cache
+  // can answer it like any other read.  Closing the stream early abandons the rest.
+  public InputStream openStream (String url, String params)
+	throws Exception{
+	return openReadRequest(url, params).getInputStream();
+  }//openStream
+//-----------------------------------------------------------------------------------------------
+  // length bytes of the body starting at offset, or all the rest if length is negative.
+  // A fresh cached copy answers without a request; otherwise a Range is asked for, and if
+  // the server sends the whole body anyway the bytes before offset are skipped here.
+  public InputStream openStream (String url, String params, long offset, long length)
+	throws Exception{
+	if (offset <= 0 && length < 0)
+	  return openStream(url, params);
+	String[] request = splitParams(url, params);
+	SBEAMSResponseCache cache = responseCache;
+	long ttl = (cache == null) ? 0 : cache.getTTL(request[1]);
+	if (ttl > 0) {
+	  String user = getUserName();
+	  if (user == null)
+		user = cache.getLastUser();
+	  SBEAMSResponseCache.Entry entry = cache.lookup(cache.key(user, formatURL(request[0]), request[1]));
+	  if (entry != null && entry.isFresh(ttl)) {
+		if (metrics != null)
+		  metrics.recordCacheHit(endpointName(request[0], request[1]));
+		return new RangeInputStream(cache.open(entry).getInputStream(), offset, length);
 	  }
 	}
-	if (desiredColumn == -1){
-	  return null;
-	}else {
-	  for (int m=0;m<columnData.length;m++){
-		String[] splitDataLine = lines[m+1].split("\\t");
-		columnData[m] = splitDataLine[desiredColumn];
+
+	if (!session.isValid() && onSbeams(request[0]))
+	  fetchCookie();
+	Hashtable<String,String> headers = new Hashtable<String,String>();
+	// ranges count bytes of the body, not of a compressed encoding of it
+	headers.put("Accept-Encoding", "identity");
+	headers.put("Range", "bytes="+offset+"-"+((length < 0) ? "" : String.valueOf(offset+length-1)));
+	TransportResponse uc;
+	try {
+	  uc = openIdempotentRequest("GET", request[0], request[1], headers);
+	} catch (HttpStatusException e) {
+	  // the range starts past the end of the body
+	  if (e.getStatusCode() == 416)
+		return new ByteArrayInputStream(new byte[0]);
+	  throw e;
+	}
+	Matcher range = CONTENT_RANGE.matcher(nullToEmpty(uc.getHeaderField("Content-Range")));
+	long start = 0;
+	if (uc.getStatusCode() == 206 && range.find())
+	  start = Long.parseLong(range.group(1));
+	return new RangeInputStream(uc.getInputStream(), offset-start, length);
+  }//openStream
+//-----------------------------------------------------------------------------------------------
+  // Joins two result sets on their key columns as both stream in; see ResultSetJoin.
+  // Null column lists keep every column of that side.
+  public ResultSetJoin joinResultSets (String leftURL, String leftKey, String[] leftColumns,
+									   String rightURL, String rightKey, String[] rightColumns,
+									   int mode)
+	throws Exception{
+	ResultSetCursor left = openResultSet(leftURL);
+	try {
+	  ResultSetCursor right = openResultSet(rightURL);
+	  try {
+		return new ResultSetJoin(left, leftKey, leftColumns, right, rightKey, rightColumns, mode);
+	  } catch (RuntimeException e) {
+		right.close();
+		throw e;
 	  }
+	} catch (Exception e) {
+	  left.close();
+	  throw e;
 	}
-	return columnData;
-  }//fetchSbeamsResultSetColumn
+  }//joinResultSets
+//-----------------------------------------------------------------------------------------------
+  // Starts a lookup whose conditions, order and limit go to the server where it can
+  // take them; see SBEAMSQuery
+  public SBEAMSQuery query (String url) {
+	return new SBEAMSQuery(this, url);
+  }//query
+//-----------------------------------------------------------------------------------------------
+  // Reads a ManageTable-style result set pageSize rows at a time, keeping as many pages
+  // in flight as the parallel request limit allows.  Rows come back in table order.
+  public ResultSetCursor openPagedResultSet (String url, int pageSize)
+	throws Exception{
+	SBEAMSExecutor pages = getPageExecutor();
+	PagedResultSetReader reader = new PagedResultSetReader(this, pages, url, pageSize,
+														   pages.getMaxParallel());
+	try {
+	  return new ResultSetCursor(reader);
+	} catch (IOException e) {
+	  reader.close();
+	  throw e;
+	} catch (RuntimeException e) {
+	  reader.close();
+	  throw e;
+	}
+  }//openPagedResultSet
 //-----------------------------------------------------------------------------------------------
-  public String[][] fetchSbeamsResultSetColumns (String url, String[] columnHeaders)
+  // Runs any client call in the background.  Requests share this client's session, so
+  // any login happens here on the calling thread first: a password prompt raised from a
+  // pool thread would hold the session while the caller, often the event thread that
+  // has to show the prompt, waits on the same session or on the result.
+  public <T> Future<T> submitRequest (Callable<T> request)
 	throws Exception{
-	if (cookie == null)
+	if (!session.isValid())
 	  fetchCookie();
-   	String result = fetchSbeamsPage (url, "");
-	
-	// THIS will break if there is a "\n" in a record.
-	String[] lines = result.split("\\n");
-	String[] headers = lines[0].split("\\t");
-
-	// first line is column header, last line is blank
-	String[][] columnData = new String[lines.length-1][columnHeaders.length];
-	int[] headerVals = new int[columnHeaders.length];
-	for (int m=0;m<headerVals.length;m++) headerVals[m] = -1;
-
-	for (int m=0;m<columnHeaders.length;m++) {
-	  for (int h=0;h<headers.length;h++){
-		if (columnHeaders[m].equals(headers[h])) {
-		  headerVals[m] = h;
+	return getSharedExecutor().submit(request);
+  }//submitRequest
+//-----------------------------------------------------------------------------------------------
+  public Future<String> fetchSbeamsPageAsync (final String url)
+	throws Exception{
+	return submitRequest(new Callable<String>() {
+		public String call() throws Exception {
+		  return fetchSbeamsPage(url);
 		}
-	  }
-	}
+	  });
+  }//fetchSbeamsPageAsync
+//-----------------------------------------------------------------------------------------------
+  // Fetches all the pages concurrently; each Future yields the page as a String
+  public Future<?>[] fetchSbeamsPagesAsync (String[] urls)
+	throws Exception{
+	Future<?>[] pages = new Future<?>[urls.length];
+	for (int m=0;m<urls.length;m++)
+	  pages[m] = fetchSbeamsPageAsync(urls[m]);
+	return pages;
+  }//fetchSbeamsPagesAsync
+//-----------------------------------------------------------------------------------------------
+  public String[] fetchSbeamsResultSetColumn (final String url, final String columnTitle) 
+	throws Exception{
+	String[] column = coalesce(requestKey("column "+columnTitle, url, ""), new Callable<String[]>() {
+		public String[] call() throws Exception {
+		  ResultSetCursor cursor = openResultSet(url);
+		  try {
+			int desiredColumn = cursor.getColumnIndex(columnTitle);
+			if (desiredColumn == -1)
+			  return null;
+			cursor.setProjection(new int[] {desiredColumn});
+			Vector<String> columnData = new Vector<String>();
+			while (cursor.next())
+			  columnData.add(cursor.getField(desiredColumn));
+			String[] column = new String[columnData.size()];
+			columnData.toArray(column);
+			return column;
+		  } finally {
+			cursor.close();
+		  }
+		}
+	  });
+	return (column == null) ? null : column.clone();
+  }//fetchSbeamsResultSetColumn
+//-----------------------------------------------------------------------------------------------
+  public String[][] fetchSbeamsResultSetColumns (final String url, final String[] columnHeaders)
+	throws Exception{
+	StringBuffer kind = new StringBuffer("columns");
+	for (int m=0;m<columnHeaders.length;m++)
+	  kind.append("\t"+columnHeaders[m]);
+	String[][] shared = coalesce(requestKey(kind.toString(), url, ""), new Callable<String[][]>() {
+		public String[][] call() throws Exception {
+		  ResultSetCursor cursor = openResultSet(url);
+		  try {
+			int[] headerVals = new int[columnHeaders.length];
+			for (int m=0;m<columnHeaders.length;m++)
+			  headerVals[m] = cursor.getColumnIndex(columnHeaders[m]);
+			cursor.setProjection(headerVals);
 
-	for (int m=0;m<columnData.length;m++){
-	  String[] splitDataLine = lines[m+1].split("\\t");
-	  System.out.println(lines[m+1]);
-	  for (int h=0;h<headerVals.length;h++) {
-		if ( headerVals[h] >= 0) {
-		  columnData[m][h] = splitDataLine[headerVals[h]];
+			Vector<String[]> rows = new Vector<String[]>();
+			while (cursor.next()) {
+			  String[] row = new String[headerVals.length];
+			  for (int h=0;h<headerVals.length;h++) {
+				if ( headerVals[h] >= 0) {
+				  row[h] = cursor.getField(headerVals[h]);
+				}
+			  }
+			  rows.add(row);
+			}
+			String[][] columnData = new String[rows.size()][];
+			rows.toArray(columnData);
+			return columnData;
+		  } finally {
+			cursor.close();
+		  }
 		}
-	  }
-	}
+	  });
+	String[][] columnData = new String[shared.length][];
+	for (int m=0;m<shared.length;m++)
+	  columnData[m] = shared[m].clone();
 	return columnData;
   }//fetchSbeamsResultSetColumns
 //-----------------------------------------------------------------------------------------------
-  public Hashtable fetchSbeamsResultSetHash (String url, String keyColumn, String valueColumn) 
+  public Hashtable<String,String> fetchSbeamsResultSetHash (final String url, final String keyColumn,
+											final String valueColumn) 
+	throws Exception{
+	Hashtable<String,String> hash = coalesce(requestKey("hash "+keyColumn+"\t"+valueColumn, url, ""),
+											 new Callable<Hashtable<String,String>>() {
+		public Hashtable<String,String> call() throws Exception {
+		  ResultSetCursor cursor = openResultSet(url);
+		  try {
+			int key = cursor.getColumnIndex(keyColumn);
+			int value = cursor.getColumnIndex(valueColumn);
+			if (key == -1 || value == -1)
+			  return null;
+			Hashtable<String,String> hash = new Hashtable<String,String>();
+			int width = cursor.getHeaders().length;
+			while (cursor.next()) {
+			  if (cursor.getFieldCount() != width)
+				continue;
+			  hash.put(cursor.getField(key), cursor.getField(value));
+			}
+			return hash;
+		  } finally {
+			cursor.close();
+		  }
+		}
+	  });
+	return (hash == null) ? null : new Hashtable<String,String>(hash);
+  }//fetchSbeamsResultSetHash
+//-----------------------------------------------------------------------------------------------
+  // The whole result set, held once in memory so that any number of lookups by any
+  // columns can be answered from one download.  Concurrent identical fetches share it.
+  public IndexedResultSet fetchIndexedResultSet (final String url)
 	throws Exception{
-	if (cookie == null)
+	return coalesce(requestKey("indexed", url, ""), new Callable<IndexedResultSet>() {
+		public IndexedResultSet call() throws Exception {
+		  return IndexedResultSet.read(openResultSet(url));
+		}
+	  });
+  }//fetchIndexedResultSet
+//-----------------------------------------------------------------------------------------------
+  // Typed, column-oriented copy of the named columns; see ColumnarResultSet for types.
+  // Concurrent identical fetches share one instance.
+  public ColumnarResultSet fetchColumnarResultSet (final String url, final String[] columns,
+												   final int[] types)
+	throws Exception{
+	StringBuffer kind = new StringBuffer("columnar");
+	for (int m=0;columns != null && m<columns.length;m++)
+	  kind.append("\t"+columns[m]+":"+((types == null) ? ColumnarResultSet.AUTO : types[m]));
+	return coalesce(requestKey(kind.toString(), url, ""), new Callable<ColumnarResultSet>() {
+		public ColumnarResultSet call() throws Exception {
+		  ResultSetCursor cursor = openResultSet(url);
+		  try {
+			return ColumnarResultSet.read(cursor, columns, types);
+		  } finally {
+			cursor.close();
+		  }
+		}
+	  });
+  }//fetchColumnarResultSet
+//-----------------------------------------------------------------------------------------------
+  public ColumnarResultSet fetchColumnarResultSet (String url, String[] columns)
+	throws Exception{
+	return fetchColumnarResultSet(url, columns, null);
+  }//fetchColumnarResultSet
+//-----------------------------------------------------------------------------------------------
+  // Maps the snapshot in file if it was taken from this URL less than maxAge seconds ago;
+  // otherwise fetches the columns, saves them to file and maps that
+  public ColumnarSnapshot fetchColumnarSnapshot (String url, String[] columns, int[] types,
+												 File file, long maxAge)
+	throws Exception{
+	String source = formatURL(url);
+	if (file.exists()) {
+	  try {
+		ColumnarSnapshot snapshot = ColumnarSnapshot.open(file);
+		if (snapshot.getSourceURL().equals(source) &&
+			System.currentTimeMillis()-snapshot.getCreated() < maxAge*1000)
+		  return snapshot;
+	  } catch (IOException e) {
+		// unreadable or from another version; take a new one
+	  }
+	}
+	ColumnarSnapshot.write(fetchColumnarResultSet(url, columns, types), source, file);
+	return ColumnarSnapshot.open(file);
+  }//fetchColumnarSnapshot
+//-----------------------------------------------------------------------------------------------
+  // Streams a file from SBEAMS to disk without holding it in memory and returns its
+  // length.  The bytes collect in file.part, which is renamed to file once complete.  A
+  // transfer that breaks off is resumed with a Range request, both within this call (up
+  // to -Dsbeams.download.resumes times without progress) and in a later call for the
+  // same file, provided the server gave an ETag or Last-Modified to check the rest
+  // against.  A server that ignores the Range simply sends the whole file again.
+  public long downloadToFile (String url, String params, File file, DownloadListener listener)
+	throws Exception{
+	String[] request = splitParams(url, params);
+	if (!session.isValid() && onSbeams(request[0]))
 	  fetchCookie();
-   	String result = fetchSbeamsPage (url, "");
-	Hashtable hash = new Hashtable();
+	File part = new File(file.getPath()+".part");
+	File validatorFile = new File(file.getPath()+".part.validator");
+	String validator = readValidator(validatorFile);
+	if (validator == null)
+	  part.delete();
 
-	// THIS will break if there is a "\n" in a record.
-	String[] lines = result.split("\\n");
-	String[] headers = lines[0].split("\\t");
+	int stalls = 0;
+	while (true) {
+	  long offset = part.length();
+	  Hashtable<String,String> headers = new Hashtable<String,String>();
+	  // ranges count bytes of the file, not of a compressed encoding of it
+	  headers.put("Accept-Encoding", "identity");
+	  if (offset > 0) {
+		headers.put("Range", "bytes="+offset+"-");
+		if (validator != null)
+		  headers.put("If-Range", validator);
+	  }
+	  TransportResponse uc;
+	  try {
+		uc = openIdempotentRequest("GET", request[0], request[1], headers);
+	  } catch (HttpStatusException e) {
+		// nothing left past the end of what we already have
+		if (e.getStatusCode() == 416 && offset > 0)
+		  break;
+		throw e;
+	  }
+	  long total = -1;
+	  boolean append = false;
+	  Matcher range = CONTENT_RANGE.matcher(nullToEmpty(uc.getHeaderField("Content-Range")));
+	  if (uc.getStatusCode() == 206 && range.find() && Long.parseLong(range.group(1)) == offset) {
+		append = true;
+		if (!range.group(2).equals("*"))
+		  total = Long.parseLong(range.group(2));
+	  } else {
+		offset = 0;
+		String length = uc.getHeaderField("Content-Length");
+		if (length != null)
+		  total = Long.parseLong(length.trim());
+		validator = responseValidator(uc);
+		writeValidator(validatorFile, validator);
+	  }
 
-	// first line is column header, last line is blank
-	String[] columnData = new String[lines.length-1];
-	int key = -1;
-	int value = -1;
-	for (int m=0;m<headers.length;m++) {
-	  if (keyColumn.equals(headers[m])) {
-		key=m;
+	  long done = offset;
+	  FileChannel out = new FileOutputStream(part, append).getChannel();
+	  ReadableByteChannel in = Channels.newChannel(uc.getInputStream());
+	  boolean interrupted = false;
+	  try {
+		long moved;
+		while ((moved = out.transferFrom(in, done, TRANSFER_BLOCK)) > 0) {
+		  done += moved;
+		  if (listener != null)
+			listener.bytesTransferred(done, total);
+		}
+	  } catch (IOException e) {
+		uc.disconnect();
+		interrupted = true;
+		if (DEBUG)
+		  System.err.println("download interrupted at "+done+": "+e);
+	  } finally {
+		out.close();
+		try {
+		  in.close();
+		} catch (IOException e) {
+		}
 	  }
-	  if (valueColumn.equals(headers[m])) {
-		value=m;
+	  if (!interrupted && (total < 0 || done >= total))
+		break;
+	  stalls = (done > offset) ? 0 : stalls+1;
+	  if (stalls > DOWNLOAD_RESUMES)
+		throw new IOException("download of "+url+" stopped at "+done+" of "+total+" bytes");
+	}
+
+	file.delete();
+	if (!part.renameTo(file))
+	  throw new IOException("could not rename "+part+" to "+file);
+	validatorFile.delete();
+	return file.length();
+  }//downloadToFile
+//-----------------------------------------------------------------------------------------------
+  public long downloadToFile (String url, File file)
+	throws Exception{
+	return downloadToFile(url, "", file, null);
+  }//downloadToFile
+//-----------------------------------------------------------------------------------------------
+  // Streams a response into any channel, returning the number of bytes written.  There is
+  // no resuming here, since only the caller knows what the channel has kept.
+  public long downloadToChannel (String url, String params, WritableByteChannel out,
+								 DownloadListener listener)
+	throws Exception{
+	String[] request = splitParams(url, params);
+	if (!session.isValid() && onSbeams(request[0]))
+	  fetchCookie();
+	TransportResponse uc = openIdempotentRequest("GET", request[0], request[1], null);
+	// a compressed body's Content-Length says nothing about the decoded size
+	String length = uc.getHeaderField("Content-Length");
+	long total = -1;
+	if (length != null && uc.getHeaderField("Content-Encoding") == null)
+	  total = Long.parseLong(length.trim());
+	ReadableByteChannel in = Channels.newChannel(uc.getInputStream());
+	ByteBuffer buffer = ByteBuffer.allocateDirect(64*1024);
+	long done = 0;
+	try {
+	  while (in.read(buffer) != -1) {
+		buffer.flip();
+		while (buffer.hasRemaining())
+		  done += out.write(buffer);
+		buffer.clear();
+		if (listener != null)
+		  listener.bytesTransferred(done, total);
 	  }
+	} finally {
+	  in.close();
 	}
-	if (key == -1 || value == -1){
-	  return null;
-	}else {
-	  for (int m=0;m<columnData.length;m++) {
-		String[] splitDataLine = lines[m+1].split("\\t");
-		if (headers.length != splitDataLine.length)
-		  continue;
-		hash.put(splitDataLine[key], splitDataLine[value]);
+	return done;
+  }//downloadToChannel
+//-----------------------------------------------------------------------------------------------
+  // A strong ETag, else Last-Modified: what If-Range needs to be sure the rest of the file
+  // is the same file
+  private static String responseValidator (TransportResponse uc) {
+	String etag = uc.getHeaderField("ETag");
+	if (etag != null && !etag.startsWith("W/"))
+	  return etag;
+	return uc.getHeaderField("Last-Modified");
+  }//responseValidator
+//-----------------------------------------------------------------------------------------------
+  private static String readValidator (File validatorFile) {
+	try {
+	  BufferedReader in = new BufferedReader(new FileReader(validatorFile));
+	  try {
+		return in.readLine();
+	  } finally {
+		in.close();
 	  }
+	} catch (IOException e) {
+	  return null;
 	}
-	return hash;
-  }//fetchSbeamsResultSetHash
+  }//readValidator
+//-----------------------------------------------------------------------------------------------
+  private static void writeValidator (File validatorFile, String validator)
+	throws IOException {
+	if (validator == null) {
+	  validatorFile.delete();
+	  return;
+	}
+	FileWriter out = new FileWriter(validatorFile);
+	try {
+	  out.write(validator+"\n");
+	} finally {
+	  out.close();
+	}
+  }//writeValidator
+//-----------------------------------------------------------------------------------------------
+  private static String nullToEmpty (String value) {
+	return (value == null) ? "" : value;
+  }//nullToEmpty
 //-----------------------------------------------------------------------------------------------
   protected boolean promptForUsernamePassword() {
 	return promptForUsernamePassword(useGui);
@@ -422,34 +1236,52 @@ public class SBEAMSClient {
 	return success;
   }//promptForUsernamePassword
 //-----------------------------------------------------------------------------------------------
+  // Logs in unless the session already holds a live cookie.  Clients sharing the session
+  // wait here for one login rather than each making their own.
   private void fetchCookie() throws Exception{
-	while (passwordAttempts > 0) {
-	  if (userName == null || password== null)
-		promptForUsernamePassword();
-
-	  StringBuffer params = new StringBuffer();
-	  //setting the trusted connection			
-	  params.append("username");
-	  params.append("=");
-	  params.append(URLEncoder.encode(userName, "UTF8"));
-	  params.append("&");
-	  params.append("password");
-	  params.append("=");
-	  params.append(URLEncoder.encode(password, "UTF8"));
-	  params.append("&");
-	  params.append("login");
-	  params.append("=");
-	  params.append(URLEncoder.encode(" Login ", "UTF8"));
-	  Response res = postRequest(COOKIE_URL, params.toString());
-	  this.cookie = res.cookie;
-	  if (res.cookie == null) {
+	synchronized (session) {
+	  if (session.isValid())
+		return;
+	  while (passwordAttempts > 0) {
+		if (userName == null || password== null)
+		  promptForUsernamePassword();
+		if (login()) {
+		  session.setRefresher(new Callable<Boolean>() {
+			  public Boolean call() throws Exception {
+				return Boolean.valueOf(userName != null && password != null && login());
+			  }
+			});
+		  break;
+		}
 		password = null;
 		passwordAttempts--;
-	  }else {
-		break;
 	  }
 	}
-  }
+  }//fetchCookie
+//-----------------------------------------------------------------------------------------------
+  // Posts the stored credentials to main.cgi; true if a cookie came back
+  private boolean login() throws Exception{
+	StringBuffer params = new StringBuffer();
+	//setting the trusted connection			
+	params.append("username");
+	params.append("=");
+	params.append(URLEncoder.encode(userName, "UTF8"));
+	params.append("&");
+	params.append("password");
+	params.append("=");
+	params.append(URLEncoder.encode(password, "UTF8"));
+	params.append("&");
+	params.append("login");
+	params.append("=");
+	params.append(URLEncoder.encode(" Login ", "UTF8"));
+	Response res = postRequest(COOKIE_URL, params.toString());
+	if (res.cookie == null)
+	  return false;
+	session.setCookie(res.cookie, userName);
+	if (responseCache != null)
+	  responseCache.setLastUser(userName);
+	return true;
+  }//login
 //-----------------------------------------------------------------------------------------------
   public static void main (String [] args) {
 	System.out.println ("test SBEAMS Table Retrieval");
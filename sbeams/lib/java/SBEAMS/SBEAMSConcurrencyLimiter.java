@@ -0,0 +1,177 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//-----------------------------------------------------------------------------------------------
+// Caps the requests in flight to each SBEAMS host, adjusting the cap to what the server
+// is seen to sustain.  A request holds its permit from being sent until its body is
+// closed.  The cap grows by one per round trip's worth of responses while latency stays
+// near the best seen recently and the cap is actually in use; an error, or a response
+// slower than TOLERANCE times that baseline, cuts it by BACKOFF, at most once for every
+// round of requests sent after the previous cut.  A thread that already holds a permit
+// on a host is never made to wait for another, so a caller streaming two results at once
+// cannot block itself.
+public class SBEAMSConcurrencyLimiter {
+
+  private static SBEAMSConcurrencyLimiter sharedLimiter = null;
+  private static int INITIAL_LIMIT = Integer.getInteger("sbeams.limit.initial", 8).intValue();
+  private static int MAX_LIMIT = Integer.getInteger("sbeams.limit.max", 64).intValue();
+  private static double TOLERANCE = 2.0;
+  private static long SLACK = 25;
+  private static double BACKOFF = 0.75;
+  private static int BASELINE_WINDOW = 500;
+
+  private int initialLimit;
+  private int maxLimit;
+  private ConcurrentHashMap<String,HostLimit> hosts = new ConcurrentHashMap<String,HostLimit>();
+//-----------------------------------------------------------------------------------------------
+  // A slot taken on one host; releasing it more than once has no further effect
+  public static class Permit {
+	private HostLimit host;
+	private long sequence;
+	private Thread owner;
+	private int inFlight;
+	private boolean released = false;
+
+	Permit(HostLimit host, long sequence, Thread owner, int inFlight) {
+	  this.host = host;
+	  this.sequence = sequence;
+	  this.owner = owner;
+	  this.inFlight = inFlight;
+	}
+
+	// latency is the milliseconds until the response headers, or -1 if there were none;
+	// overloaded marks a failure the server's load may be to blame for
+	public void release(long latency, boolean overloaded) {
+	  synchronized (host) {
+		if (released)
+		  return;
+		released = true;
+		host.release(this, latency, overloaded);
+	  }
+	}
+  } //Permit class
+//-----------------------------------------------------------------------------------------------
+  static class HostLimit {
+	private double limit;
+	private int minLimit = 1;
+	private int maxLimit;
+	private int inFlight = 0;
+	private HashMap<Thread,int[]> holders = new HashMap<Thread,int[]>();
+	private long sent = 0;
+	private long lastCut = -1;
+	private long baseline = -1;
+	private long windowBest = -1;
+	private int windowSamples = 0;
+	private long cuts = 0;
+
+	HostLimit(int initialLimit, int maxLimit) {
+	  this.limit = initialLimit;
+	  this.maxLimit = maxLimit;
+	}
+
+	synchronized Permit acquire() throws InterruptedException {
+	  Thread thread = Thread.currentThread();
+	  while (inFlight >= (int)limit && !holders.containsKey(thread))
+		wait();
+	  inFlight++;
+	  int[] held = holders.get(thread);
+	  if (held == null)
+		holders.put(thread, new int[] {1});
+	  else
+		held[0]++;
+	  return new Permit(this, sent++, thread, inFlight);
+	}
+
+	void release(Permit permit, long latency, boolean overloaded) {
+	  int[] held = holders.get(permit.owner);
+	  if (held != null && --held[0] == 0)
+		holders.remove(permit.owner);
+	  // only a limit that was at least half used when the request went out has earned more
+	  boolean busy = permit.inFlight*2 >= (int)limit;
+	  inFlight--;
+	  if (latency >= 0)
+		sample(latency);
+	  if (overloaded || (latency >= 0 && latency > TOLERANCE*baseline + SLACK)) {
+		// one cut per round: requests sent before the last cut saw the old limit
+		if (permit.sequence > lastCut) {
+		  limit = Math.max(minLimit, limit*BACKOFF);
+		  lastCut = sent;
+		  cuts++;
+		}
+	  } else if (busy) {
+		limit = Math.min(maxLimit, limit + 1.0/limit);
+	  }
+	  notifyAll();
+	}
+
+	// The best latency over the last window of responses, so the baseline can drift
+	private void sample(long latency) {
+	  if (baseline < 0 || latency < baseline)
+		baseline = latency;
+	  if (windowBest < 0 || latency < windowBest)
+		windowBest = latency;
+	  if (++windowSamples >= BASELINE_WINDOW) {
+		baseline = windowBest;
+		windowBest = -1;
+		windowSamples = 0;
+	  }
+	}
+  } //HostLimit class
+//-----------------------------------------------------------------------------------------------
+  // Limiter that every client uses unless given its own
+  public static synchronized SBEAMSConcurrencyLimiter getSharedLimiter() {
+	if (sharedLimiter == null)
+	  sharedLimiter = new SBEAMSConcurrencyLimiter();
+	return sharedLimiter;
+  }//getSharedLimiter
+//-----------------------------------------------------------------------------------------------
+  // Starts each host at -Dsbeams.limit.initial and never lets it past -Dsbeams.limit.max
+  public SBEAMSConcurrencyLimiter() {
+	this(INITIAL_LIMIT, MAX_LIMIT);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSConcurrencyLimiter(int initialLimit, int maxLimit) {
+	this.initialLimit = Math.max(1, initialLimit);
+	this.maxLimit = Math.max(this.initialLimit, maxLimit);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  private HostLimit getHost(String host) {
+	HostLimit limit = hosts.get(host);
+	if (limit == null) {
+	  hosts.putIfAbsent(host, new HostLimit(initialLimit, maxLimit));
+	  limit = hosts.get(host);
+	}
+	return limit;
+  }//getHost
+//-----------------------------------------------------------------------------------------------
+  // Waits for room under the host's current limit
+  public Permit acquire(String host) throws InterruptedException {
+	return getHost(host).acquire();
+  }//acquire
+//-----------------------------------------------------------------------------------------------
+  // Requests the host may currently have in flight
+  public int getLimit(String host) {
+	HostLimit limit = getHost(host);
+	synchronized (limit) {
+	  return (int)limit.limit;
+	}
+  }//getLimit
+//-----------------------------------------------------------------------------------------------
+  public int getInFlight(String host) {
+	HostLimit limit = getHost(host);
+	synchronized (limit) {
+	  return limit.inFlight;
+	}
+  }//getInFlight
+//-----------------------------------------------------------------------------------------------
+  // Times the host's limit has been cut
+  public long getCutCount(String host) {
+	HostLimit limit = getHost(host);
+	synchronized (limit) {
+	  return limit.cuts;
+	}
+  }//getCutCount
+//-----------------------------------------------------------------------------------------------
+} //SBEAMSConcurrencyLimiter class
@@ -0,0 +1,186 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+//-----------------------------------------------------------------------------------------------
+// The SBEAMS servers a client may read from: a primary and any mirrors.  Each one's
+// latency is tracked from real requests and from a periodic probe of main.cgi, and
+// reads are routed to the fastest healthy server, moving on to the next one when a
+// server fails.  Logins and other posts always go to the primary.
+public class SBEAMSEndpoints {
+
+  private static long PROBE_INTERVAL = Long.getLong("sbeams.endpoints.probeInterval", 30).longValue();
+  private static String PROBE_PATH = "/cgi/main.cgi";
+  private static double SMOOTHING = 0.3;
+  private static ScheduledExecutorService scheduler = null;
+
+  private Endpoint[] endpoints;
+  private ScheduledFuture<?> probe = null;
+//-----------------------------------------------------------------------------------------------
+  public static class Endpoint {
+	private String baseURL;
+	private int rank;
+	private volatile boolean healthy = true;
+	private volatile double latency = -1;
+	private volatile int failures = 0;
+
+	Endpoint(String baseURL, int rank) {
+	  this.baseURL = baseURL;
+	  this.rank = rank;
+	}//constructor
+
+	public String getBaseURL() {
+	  return baseURL;
+	}//getBaseURL
+
+	public boolean isHealthy() {
+	  return healthy;
+	}//isHealthy
+
+	// Smoothed milliseconds to the response headers, or -1 before the first response
+	public double getLatency() {
+	  return latency;
+	}//getLatency
+
+	// Failures since the last success
+	public int getFailures() {
+	  return failures;
+	}//getFailures
+
+	synchronized void succeeded(long millis) {
+	  latency = (latency < 0) ? millis : latency + SMOOTHING*(millis - latency);
+	  failures = 0;
+	  healthy = true;
+	}//succeeded
+
+	synchronized void failed() {
+	  failures++;
+	  healthy = false;
+	}//failed
+
+	public String toString() {
+	  return baseURL+(healthy ? "" : " (down)")+((latency < 0) ? "" : " "+(int)latency+"ms");
+	}//toString
+  } //Endpoint class
+//-----------------------------------------------------------------------------------------------
+  // Healthy servers first, fastest first; a server not yet measured is tried ahead of
+  // measured ones so that it gets measured, and ties keep the order the servers were given
+  private static Comparator<Endpoint> ROUTE_ORDER = new Comparator<Endpoint>() {
+	  public int compare(Endpoint x, Endpoint y) {
+		if (x.healthy != y.healthy)
+		  return x.healthy ? -1 : 1;
+		double dx = Math.max(x.latency, 0);
+		double dy = Math.max(y.latency, 0);
+		if (dx != dy)
+		  return (dx < dy) ? -1 : 1;
+		return x.rank - y.rank;
+	  }
+	};
+//-----------------------------------------------------------------------------------------------
+  // The first base URL is the primary
+  public SBEAMSEndpoints(String[] baseURLs) {
+	if (baseURLs == null || baseURLs.length == 0)
+	  throw new IllegalArgumentException("no SBEAMS base URLs given");
+	endpoints = new Endpoint[baseURLs.length];
+	for (int m=0;m<baseURLs.length;m++)
+	  endpoints[m] = new Endpoint(trimSlash(baseURLs[m]), m);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  private static String trimSlash(String baseURL) {
+	while (baseURL.endsWith("/"))
+	  baseURL = baseURL.substring(0, baseURL.length()-1);
+	return baseURL;
+  }//trimSlash
+//-----------------------------------------------------------------------------------------------
+  private static synchronized ScheduledExecutorService getScheduler() {
+	if (scheduler == null) {
+	  scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		  public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SBEAMSEndpoints-probe");
+			t.setDaemon(true);
+			return t;
+		  }
+		});
+	}
+	return scheduler;
+  }//getScheduler
+//-----------------------------------------------------------------------------------------------
+  public Endpoint getPrimary() {
+	return endpoints[0];
+  }//getPrimary
+//-----------------------------------------------------------------------------------------------
+  public Endpoint[] getEndpoints() {
+	return endpoints.clone();
+  }//getEndpoints
+//-----------------------------------------------------------------------------------------------
+  // The order to try servers in for a read.  Servers that are down come last rather than
+  // not at all, so a read still has somewhere to go if every server has failed recently.
+  public Endpoint[] route() {
+	Endpoint[] order = endpoints.clone();
+	Arrays.sort(order, ROUTE_ORDER);
+	return order;
+  }//route
+//-----------------------------------------------------------------------------------------------
+  public void succeeded(Endpoint endpoint, long millis) {
+	endpoint.succeeded(millis);
+  }//succeeded
+//-----------------------------------------------------------------------------------------------
+  public void failed(Endpoint endpoint) {
+	endpoint.failed();
+  }//failed
+//-----------------------------------------------------------------------------------------------
+  // Probes every PROBE_INTERVAL seconds (-Dsbeams.endpoints.probeInterval) until stopped
+  public void startProbing(SBEAMSTransport transport) {
+	startProbing(transport, PROBE_INTERVAL);
+  }//startProbing
+//-----------------------------------------------------------------------------------------------
+  public synchronized void startProbing(final SBEAMSTransport transport, long intervalSeconds) {
+	stopProbing();
+	if (intervalSeconds <= 0)
+	  return;
+	probe = getScheduler().scheduleWithFixedDelay(new Runnable() {
+		public void run() {
+		  probe(transport);
+		}
+	  }, 0, intervalSeconds, TimeUnit.SECONDS);
+  }//startProbing
+//-----------------------------------------------------------------------------------------------
+  public synchronized void stopProbing() {
+	if (probe != null)
+	  probe.cancel(false);
+	probe = null;
+  }//stopProbing
+//-----------------------------------------------------------------------------------------------
+  // Fetches main.cgi from each server once.  Anything short of a server error counts as
+  // up, since without a cookie main.cgi just answers with its login page.
+  public void probe(SBEAMSTransport transport) {
+	for (int m=0;m<endpoints.length;m++) {
+	  Endpoint endpoint = endpoints[m];
+	  Hashtable<String,String> headers = new Hashtable<String,String>();
+	  headers.put("User-Agent", "CytoLinkFromMJ");
+	  long start = System.currentTimeMillis();
+	  try {
+		TransportResponse uc = transport.send("GET", endpoint.baseURL+PROBE_PATH, headers, null);
+		int status = uc.getStatusCode();
+		long elapsed = System.currentTimeMillis() - start;
+		// the login page is not worth reading
+		uc.disconnect();
+		if (status >= 500)
+		  endpoint.failed();
+		else
+		  endpoint.succeeded(elapsed);
+	  } catch (IOException e) {
+		endpoint.failed();
+	  } catch (RuntimeException e) {
+		endpoint.failed();
+	  }
+	}
+  }//probe
+//-----------------------------------------------------------------------------------------------
+  public String toString() {
+	return Arrays.asList(endpoints).toString();
+  }//toString
+//-----------------------------------------------------------------------------------------------
+} //SBEAMSEndpoints class
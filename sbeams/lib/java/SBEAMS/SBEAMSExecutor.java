@@ -0,0 +1,69 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+//-----------------------------------------------------------------------------------------------
+// Runs client requests in the background with at most maxParallel in flight at once.
+// Virtual threads are used when the runtime has them; otherwise a fixed pool of daemon
+// threads does the same job.
+public class SBEAMSExecutor {
+
+  private ExecutorService executor;
+  private Semaphore permits;
+  private int maxParallel;
+  private boolean virtualThreads = false;
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSExecutor (int maxParallel) {
+	this.maxParallel = maxParallel;
+	permits = new Semaphore(maxParallel);
+	executor = newVirtualThreadExecutor();
+	if (executor != null) {
+	  virtualThreads = true;
+	}else {
+	  executor = Executors.newFixedThreadPool(maxParallel, new ThreadFactory() {
+		  private int count = 0;
+		  public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SBEAMSClient-"+(++count));
+			t.setDaemon(true);
+			return t;
+		  }
+		});
+	}
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  private static ExecutorService newVirtualThreadExecutor() {
+	try {
+	  Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class<?>[0]);
+	  return (ExecutorService)factory.invoke(null, new Object[0]);
+	} catch (Exception e) {
+	  return null;
+	}
+  }//newVirtualThreadExecutor
+//-----------------------------------------------------------------------------------------------
+  public <T> Future<T> submit(final Callable<T> task) {
+	return executor.submit(new Callable<T>() {
+		public T call() throws Exception {
+		  permits.acquire();
+		  try {
+			return task.call();
+		  } finally {
+			permits.release();
+		  }
+		}
+	  });
+  }//submit
+//-----------------------------------------------------------------------------------------------
+  public int getMaxParallel() {
+	return maxParallel;
+  }//getMaxParallel
+//-----------------------------------------------------------------------------------------------
+  public boolean usesVirtualThreads() {
+	return virtualThreads;
+  }//usesVirtualThreads
+//-----------------------------------------------------------------------------------------------
+  public void shutdown() {
+	executor.shutdown();
+  }//shutdown
+//-----------------------------------------------------------------------------------------------
+}//SBEAMSExecutor
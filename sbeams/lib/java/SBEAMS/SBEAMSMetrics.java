@@ -0,0 +1,258 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.*;
+
+//-----------------------------------------------------------------------------------------------
+// Per-endpoint request counters and latency histograms.  The default registry is shared by
+// every client and published over JMX as SBEAMS:type=SBEAMSMetrics.  An endpoint is the
+// CGI path plus TABLE_NAME where there is one, e.g. /cgi/ManageTable.cgi?TABLE_NAME=organism.
+public class SBEAMSMetrics implements SBEAMSMetricsMBean {
+
+  private static SBEAMSMetrics defaultMetrics = null;
+  private static boolean LOG = Boolean.getBoolean("sbeams.metrics.log");
+  private static String ALL = "*";
+
+  private ConcurrentHashMap<String,Endpoint> endpoints = new ConcurrentHashMap<String,Endpoint>();
+//-----------------------------------------------------------------------------------------------
+  // Log-linear buckets: exact below 16ms, then 16 buckets per power of two, so any
+  // percentile is reported within about 6% of the true value
+  public static class Histogram {
+	private long[] buckets = new long[16+28*16];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+	public synchronized void record(long millis) {
+	  if (millis < 0)
+		return;
+	  buckets[bucket(millis)]++;
+	  count++;
+	  sum += millis;
+	  max = Math.max(max, millis);
+	}
+	static int bucket(long millis) {
+	  if (millis < 16)
+		return (int)millis;
+	  int exponent = 63-Long.numberOfLeadingZeros(millis);
+	  if (exponent > 31)
+		return 16+28*16-1;
+	  return 16+(exponent-4)*16+(int)((millis >> (exponent-4))-16);
+	}
+	static long upperBound(int bucket) {
+	  if (bucket < 16)
+		return bucket;
+	  int exponent = (bucket-16)/16+4;
+	  long mantissa = (bucket-16)%16+16;
+	  return ((mantissa+1) << (exponent-4))-1;
+	}
+	public synchronized long getCount() {
+	  return count;
+	}
+	public synchronized double getMean() {
+	  return (count == 0) ? 0 : (double)sum/count;
+	}
+	public synchronized long getMax() {
+	  return max;
+	}
+	// e.g. 0.99 for the 99th percentile
+	public synchronized long getPercentile(double percentile) {
+	  long rank = (long)Math.ceil(percentile*count);
+	  long seen = 0;
+	  for (int m=0;m<buckets.length;m++) {
+		seen += buckets[m];
+		// the last bucket has no upper bound of its own
+		if (seen >= rank && seen > 0)
+		  return (m == buckets.length-1) ? max : Math.min(max, upperBound(m));
+	  }
+	  return max;
+	}
+  } //Histogram class
+//-----------------------------------------------------------------------------------------------
+  public static class Endpoint {
+	private String name;
+	private long requests = 0;
+	private long errors = 0;
+	private long cacheHits = 0;
+	private long wireBytes = 0;
+	private long bytes = 0;
+	private long rows = 0;
+	private TreeMap<Integer,Long> statuses = new TreeMap<Integer,Long>();
+	Histogram connect = new Histogram();
+	Histogram firstByte = new Histogram();
+	Histogram download = new Histogram();
+	Histogram parse = new Histogram();
+	Histogram total = new Histogram();
+	Endpoint (String name) {
+	  this.name = name;
+	}
+	synchronized void record(RequestMetrics request) {
+	  requests++;
+	  if (request.isFailed())
+		errors++;
+	  wireBytes += request.getWireBytes();
+	  bytes += request.getBytes();
+	  rows += request.getRows();
+	  Integer status = Integer.valueOf(request.getStatus());
+	  Long seen = statuses.get(status);
+	  statuses.put(status, Long.valueOf((seen == null) ? 1 : seen.longValue()+1));
+	  connect.record(request.getConnectMillis());
+	  firstByte.record(request.getFirstByteMillis());
+	  download.record(request.getDownloadMillis());
+	  parse.record(request.getParseMillis());
+	  total.record(request.getTotalMillis());
+	}
+	synchronized void cacheHit() {
+	  cacheHits++;
+	}
+	public String getName() {
+	  return name;
+	}
+	public synchronized long getRequestCount() {
+	  return requests;
+	}
+	public synchronized long getErrorCount() {
+	  return errors;
+	}
+	public synchronized long getCacheHitCount() {
+	  return cacheHits;
+	}
+	public synchronized long getWireBytes() {
+	  return wireBytes;
+	}
+	public synchronized long getBytes() {
+	  return bytes;
+	}
+	public synchronized long getRows() {
+	  return rows;
+	}
+	// Response count by HTTP status; -1 counts requests that got no response
+	public synchronized Map<Integer,Long> getStatusCounts() {
+	  return new TreeMap<Integer,Long>(statuses);
+	}
+	public Histogram getConnectLatency() {
+	  return connect;
+	}
+	public Histogram getFirstByteLatency() {
+	  return firstByte;
+	}
+	public Histogram getDownloadLatency() {
+	  return download;
+	}
+	public Histogram getParseLatency() {
+	  return parse;
+	}
+	public Histogram getTotalLatency() {
+	  return total;
+	}
+	public String toString() {
+	  return name+": requests="+getRequestCount()+" errors="+getErrorCount()+" cacheHits="+
+		getCacheHitCount()+" statuses="+getStatusCounts()+" wire="+getWireBytes()+"B body="+
+		getBytes()+"B rows="+getRows()+" firstByte p50/p99="+firstByte.getPercentile(0.5)+"/"+
+		firstByte.getPercentile(0.99)+"ms download p50/p99="+download.getPercentile(0.5)+"/"+
+		download.getPercentile(0.99)+"ms parse p50/p99="+parse.getPercentile(0.5)+"/"+
+		parse.getPercentile(0.99)+"ms total p50/p99="+total.getPercentile(0.5)+"/"+
+		total.getPercentile(0.99)+"ms";
+	}
+  } //Endpoint class
+//-----------------------------------------------------------------------------------------------
+  public static synchronized SBEAMSMetrics getDefault() {
+	if (defaultMetrics == null) {
+	  defaultMetrics = new SBEAMSMetrics();
+	  try {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(defaultMetrics,
+			new ObjectName("SBEAMS:type=SBEAMSMetrics"));
+	  } catch (Exception e) {
+		// already registered by another class loader, or no JMX; the counters still work
+	  }
+	}
+	return defaultMetrics;
+  }//getDefault
+//-----------------------------------------------------------------------------------------------
+  public RequestMetrics start(String endpoint) {
+	return new RequestMetrics(this, endpoint);
+  }//start
+//-----------------------------------------------------------------------------------------------
+  void record(RequestMetrics request) {
+	getEndpoint(request.getEndpoint()).record(request);
+	getEndpoint(ALL).record(request);
+	if (LOG)
+	  System.err.println("SBEAMS "+request);
+  }//record
+//-----------------------------------------------------------------------------------------------
+  public void recordCacheHit(String endpoint) {
+	getEndpoint(endpoint).cacheHit();
+	getEndpoint(ALL).cacheHit();
+  }//recordCacheHit
+//-----------------------------------------------------------------------------------------------
+  // "*" holds the totals over every endpoint
+  public Endpoint getEndpoint(String name) {
+	Endpoint endpoint = endpoints.get(name);
+	if (endpoint == null) {
+	  endpoints.putIfAbsent(name, new Endpoint(name));
+	  endpoint = endpoints.get(name);
+	}
+	return endpoint;
+  }//getEndpoint
+//-----------------------------------------------------------------------------------------------
+  public String[] getEndpoints() {
+	TreeSet<String> names = new TreeSet<String>(endpoints.keySet());
+	names.remove(ALL);
+	return names.toArray(new String[names.size()]);
+  }//getEndpoints
+//-----------------------------------------------------------------------------------------------
+  public String describeEndpoint(String endpoint) {
+	Endpoint found = endpoints.get(endpoint);
+	return (found == null) ? null : found.toString();
+  }//describeEndpoint
+//-----------------------------------------------------------------------------------------------
+  public void reset() {
+	endpoints.clear();
+  }//reset
+//-----------------------------------------------------------------------------------------------
+  public long getRequestCount() {
+	return getEndpoint(ALL).getRequestCount();
+  }//getRequestCount
+//-----------------------------------------------------------------------------------------------
+  public long getErrorCount() {
+	return getEndpoint(ALL).getErrorCount();
+  }//getErrorCount
+//-----------------------------------------------------------------------------------------------
+  public long getCacheHitCount() {
+	return getEndpoint(ALL).getCacheHitCount();
+  }//getCacheHitCount
+//-----------------------------------------------------------------------------------------------
+  public long getBytesRead() {
+	return getEndpoint(ALL).getBytes();
+  }//getBytesRead
+//-----------------------------------------------------------------------------------------------
+  public long getWireBytesRead() {
+	return getEndpoint(ALL).getWireBytes();
+  }//getWireBytesRead
+//-----------------------------------------------------------------------------------------------
+  public long getRowsRead() {
+	return getEndpoint(ALL).getRows();
+  }//getRowsRead
+//-----------------------------------------------------------------------------------------------
+  public double getMeanLatencyMillis() {
+	return getEndpoint(ALL).getTotalLatency().getMean();
+  }//getMeanLatencyMillis
+//-----------------------------------------------------------------------------------------------
+  public long getP50LatencyMillis() {
+	return getEndpoint(ALL).getTotalLatency().getPercentile(0.5);
+  }//getP50LatencyMillis
+//-----------------------------------------------------------------------------------------------
+  public long getP95LatencyMillis() {
+	return getEndpoint(ALL).getTotalLatency().getPercentile(0.95);
+  }//getP95LatencyMillis
+//-----------------------------------------------------------------------------------------------
+  public long getP99LatencyMillis() {
+	return getEndpoint(ALL).getTotalLatency().getPercentile(0.99);
+  }//getP99LatencyMillis
+//-----------------------------------------------------------------------------------------------
+  public long getMaxLatencyMillis() {
+	return getEndpoint(ALL).getTotalLatency().getMax();
+  }//getMaxLatencyMillis
+//-----------------------------------------------------------------------------------------------
+}//SBEAMSMetrics
@@ -0,0 +1,21 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+
+//-----------------------------------------------------------------------------------------------
+// JMX view of SBEAMSMetrics.  Latencies are request totals over every endpoint.
+public interface SBEAMSMetricsMBean {
+  public long getRequestCount();
+  public long getErrorCount();
+  public long getCacheHitCount();
+  public long getBytesRead();
+  public long getWireBytesRead();
+  public long getRowsRead();
+  public double getMeanLatencyMillis();
+  public long getP50LatencyMillis();
+  public long getP95LatencyMillis();
+  public long getP99LatencyMillis();
+  public long getMaxLatencyMillis();
+  public String[] getEndpoints();
+  public String describeEndpoint(String endpoint);
+  public void reset();
+}//SBEAMSMetricsMBean
@@ -0,0 +1,432 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.net.URLEncoder;
+import java.util.*;
+import java.util.regex.*;
+
+//-----------------------------------------------------------------------------------------------
+// A lookup against an SBEAMS result set, described by the columns wanted, conditions on
+// the rows, an order and a row limit.  Against ManageTable.cgi the conditions, order and
+// limit travel as where_clause, orderby_clause and rs_page_size, so the server only sends
+// the rows asked for.  Anything the server cannot be given (any condition on another
+// CGI, or one ManageTable would reject) is applied instead as the rows stream in.
+// ManageTable has no way to choose columns, so unwanted columns are skipped unparsed.
+// Client-side comparisons follow the server's: numeric when both sides are numbers,
+// otherwise text ignoring case, and an empty field is NULL.
+public class SBEAMSQuery {
+
+  private static Pattern MANAGE_TABLE = Pattern.compile("ManageTable\\.cgi");
+  // ManageTable refuses a where clause containing any of these
+  private static Pattern FORBIDDEN = Pattern.compile("delete|insert|update", Pattern.CASE_INSENSITIVE);
+  private static String[] OPERATORS = {"=", "!=", "<", "<=", ">", ">=", "LIKE", "IN", "IS NULL", "IS NOT NULL"};
+
+  private SBEAMSClient client;
+  private String url;
+  private boolean pushdown;
+  private String[] columns = null;
+  private ArrayList<Condition> conditions = new ArrayList<Condition>();
+  // column name and Boolean ascending
+  private ArrayList<Object[]> order = new ArrayList<Object[]>();
+  private int limit = -1;
+  private Hashtable<String,String> expressions = new Hashtable<String,String>();
+//-----------------------------------------------------------------------------------------------
+  private static class Condition {
+	String column;
+	String operator;
+	String[] values;
+	// whether ManageTable would take it
+	boolean onServer;
+
+	boolean matches(String field) {
+	  boolean isNull = field == null || field.length() == 0;
+	  if (operator.equals("IS NULL"))
+		return isNull;
+	  if (operator.equals("IS NOT NULL"))
+		return !isNull;
+	  // NULL compares as neither true nor false, so the row is dropped
+	  if (isNull)
+		return false;
+	  if (operator.equals("IN")) {
+		for (int m=0;m<values.length;m++) {
+		  if (compare(field, values[m]) == 0)
+			return true;
+		}
+		return false;
+	  }
+	  if (operator.equals("LIKE"))
+		return likePattern(values[0]).matcher(field).matches();
+	  int cmp = compare(field, values[0]);
+	  if (operator.equals("="))
+		return cmp == 0;
+	  if (operator.equals("!="))
+		return cmp != 0;
+	  if (operator.equals("<"))
+		return cmp < 0;
+	  if (operator.equals("<="))
+		return cmp <= 0;
+	  if (operator.equals(">"))
+		return cmp > 0;
+	  return cmp >= 0;
+	}
+  } //Condition class
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSQuery (SBEAMSClient client, String url) {
+	this.client = client;
+	this.url = url;
+	pushdown = MANAGE_TABLE.matcher(url).find();
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // Only these columns are kept, in this order; by default every column is
+  public SBEAMSQuery select (String[] columns) {
+	this.columns = columns;
+	return this;
+  }//select
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSQuery select (String column) {
+	return select(new String[] {column});
+  }//select
+//-----------------------------------------------------------------------------------------------
+  // operator is one of = != < <= > >= LIKE; LIKE takes % and _ wildcards
+  public SBEAMSQuery where (String column, String operator, String value) {
+	String op = operator.trim().toUpperCase();
+	if (op.equals("<>"))
+	  op = "!=";
+	if (Arrays.asList(OPERATORS).indexOf(op) == -1 || op.startsWith("I"))
+	  throw new IllegalArgumentException("unsupported operator "+operator);
+	return addCondition(column, op, new String[] {value});
+  }//where
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSQuery whereIn (String column, String[] values) {
+	return addCondition(column, "IN", values);
+  }//whereIn
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSQuery whereNull (String column) {
+	return addCondition(column, "IS NULL", new String[0]);
+  }//whereNull
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSQuery whereNotNull (String column) {
+	return addCondition(column, "IS NOT NULL", new String[0]);
+  }//whereNotNull
+//-----------------------------------------------------------------------------------------------
+  private SBEAMSQuery addCondition (String column, String operator, String[] values) {
+	Condition condition = new Condition();
+	condition.column = column;
+	condition.operator = operator;
+	condition.values = values;
+	condition.onServer = true;
+	for (int m=0;m<values.length;m++) {
+	  // ManageTable turns " into ' and rejects the words above, wherever they appear
+	  if (values[m].indexOf('"') != -1 || FORBIDDEN.matcher(values[m]).find())
+		condition.onServer = false;
+	}
+	if (FORBIDDEN.matcher(column).find())
+	  condition.onServer = false;
+	conditions.add(condition);
+	return this;
+  }//addCondition
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSQuery orderBy (String column, boolean ascending) {
+	order.add(new Object[] {column, Boolean.valueOf(ascending)});
+	return this;
+  }//orderBy
+//-----------------------------------------------------------------------------------------------
+  // At most this many rows; the connection is dropped once they have arrived
+  public SBEAMSQuery limit (int rows) {
+	limit = rows;
+	return this;
+  }//limit
+//-----------------------------------------------------------------------------------------------
+  // How the table's query names a column in SQL when that differs from its heading,
+  // as with the aliased tables of many ManageTable queries
+  public SBEAMSQuery alias (String column, String expression) {
+	expressions.put(column, expression);
+	return this;
+  }//alias
+//-----------------------------------------------------------------------------------------------
+  // Off, everything is done as the rows stream in, whatever the URL
+  public SBEAMSQuery setPushdown (boolean pushdown) {
+	this.pushdown = pushdown;
+	return this;
+  }//setPushdown
+//-----------------------------------------------------------------------------------------------
+  private String expression (String column) {
+	String expression = expressions.get(column);
+	return (expression == null) ? column : expression;
+  }//expression
+//-----------------------------------------------------------------------------------------------
+  private static String quote (String value) {
+	return "'"+value.replaceAll("'", "''")+"'";
+  }//quote
+//-----------------------------------------------------------------------------------------------
+  private boolean onServer (Condition condition) {
+	return pushdown && condition.onServer;
+  }//onServer
+//-----------------------------------------------------------------------------------------------
+  private boolean allOnServer () {
+	for (int m=0;m<conditions.size();m++) {
+	  if (!onServer(conditions.get(m)))
+		return false;
+	}
+	return true;
+  }//allOnServer
+//-----------------------------------------------------------------------------------------------
+  // The where clause handed to the server, or null
+  public String getWhereClause () {
+	StringBuffer where = new StringBuffer();
+	for (int m=0;m<conditions.size();m++) {
+	  Condition condition = conditions.get(m);
+	  if (!onServer(condition))
+		continue;
+	  if (where.length() > 0)
+		where.append(" AND ");
+	  where.append(expression(condition.column)).append(' ').append(condition.operator);
+	  if (condition.operator.equals("IN")) {
+		where.append(" (");
+		for (int v=0;v<condition.values.length;v++)
+		  where.append((v == 0) ? "" : ",").append(quote(condition.values[v]));
+		where.append(")");
+	  } else if (condition.values.length > 0) {
+		where.append(' ').append(quote(condition.values[0]));
+	  }
+	}
+	return (where.length() == 0) ? null : where.toString();
+  }//getWhereClause
+//-----------------------------------------------------------------------------------------------
+  // Request parameters carrying whatever the server can do
+  public String getParams () throws UnsupportedEncodingException {
+	StringBuffer params = new StringBuffer();
+	if (!pushdown)
+	  return "";
+	String where = getWhereClause();
+	if (where != null)
+	  params.append("where_clause=").append(URLEncoder.encode(where, "UTF-8"));
+	if (!order.isEmpty()) {
+	  StringBuffer orderBy = new StringBuffer();
+	  for (int m=0;m<order.size();m++) {
+		Object[] term = order.get(m);
+		orderBy.append((m == 0) ? "" : ",").append(expression((String)term[0]));
+		if (!((Boolean)term[1]).booleanValue())
+		  orderBy.append(" DESC");
+	  }
+	  params.append((params.length() == 0) ? "" : "&");
+	  params.append("orderby_clause=").append(URLEncoder.encode(orderBy.toString(), "UTF-8"));
+	}
+	// a server-side limit would count rows the client may still filter out
+	if (limit > 0 && allOnServer()) {
+	  params.append((params.length() == 0) ? "" : "&");
+	  params.append("rs_page_size=").append(limit).append("&rs_page_number=1");
+	}
+	return params.toString();
+  }//getParams
+//-----------------------------------------------------------------------------------------------
+  public Cursor open () throws Exception {
+	return new Cursor(client.openResultSet(url, getParams()));
+  }//open
+//-----------------------------------------------------------------------------------------------
+  // The one selected column, or null if the result set has no such column
+  public String[] fetchColumn (String column) throws Exception {
+	Cursor cursor;
+	try {
+	  cursor = select(column).open();
+	} catch (IllegalArgumentException e) {
+	  return null;
+	}
+	try {
+	  Vector<String> values = new Vector<String>();
+	  while (cursor.next())
+		values.add(cursor.getField(0));
+	  String[] result = new String[values.size()];
+	  values.toArray(result);
+	  return result;
+	} finally {
+	  cursor.close();
+	}
+  }//fetchColumn
+//-----------------------------------------------------------------------------------------------
+  // keyColumn to valueColumn for every matching row, or null if either column is missing
+  public Hashtable<String,String> fetchHash (String keyColumn, String valueColumn) throws Exception {
+	Cursor cursor;
+	try {
+	  cursor = select(new String[] {keyColumn, valueColumn}).open();
+	} catch (IllegalArgumentException e) {
+	  return null;
+	}
+	try {
+	  Hashtable<String,String> hash = new Hashtable<String,String>();
+	  while (cursor.next()) {
+		if (cursor.getField(0) != null && cursor.getField(1) != null)
+		  hash.put(cursor.getField(0), cursor.getField(1));
+	  }
+	  return hash;
+	} finally {
+	  cursor.close();
+	}
+  }//fetchHash
+//-----------------------------------------------------------------------------------------------
+  // NULL-free comparison as described at the top
+  static int compare (String a, String b) {
+	try {
+	  return Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+	} catch (NumberFormatException e) {
+	  return a.compareToIgnoreCase(b);
+	}
+  }//compare
+//-----------------------------------------------------------------------------------------------
+  static Pattern likePattern (String like) {
+	StringBuffer regex = new StringBuffer();
+	for (int m=0;m<like.length();m++) {
+	  char c = like.charAt(m);
+	  if (c == '%')
+		regex.append(".*");
+	  else if (c == '_')
+		regex.append('.');
+	  else
+		regex.append(Pattern.quote(String.valueOf(c)));
+	}
+	return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  }//likePattern
+//-----------------------------------------------------------------------------------------------
+  // The selected columns of the matching rows, forward only
+  public class Cursor {
+	private ResultSetCursor source;
+	private String[] headers;
+	private int[] selected;
+	private Condition[] filters;
+	private int[] filterColumns;
+	private Iterator<String[]> sorted = null;
+	private String[] current = null;
+	private int returned = 0;
+
+	Cursor (ResultSetCursor source) throws IOException {
+	  this.source = source;
+	  String[] names = (columns == null) ? source.getHeaders() : columns;
+	  headers = names.clone();
+	  selected = new int[names.length];
+	  for (int m=0;m<names.length;m++)
+		selected[m] = columnIndex(names[m]);
+
+	  ArrayList<Condition> clientSide = new ArrayList<Condition>();
+	  for (int m=0;m<conditions.size();m++) {
+		if (!onServer(conditions.get(m)))
+		  clientSide.add(conditions.get(m));
+	  }
+	  filters = new Condition[clientSide.size()];
+	  clientSide.toArray(filters);
+	  filterColumns = new int[filters.length];
+	  for (int m=0;m<filters.length;m++)
+		filterColumns[m] = columnIndex(filters[m].column);
+
+	  int[] sortColumns = new int[pushdown ? 0 : order.size()];
+	  for (int m=0;m<sortColumns.length;m++)
+		sortColumns[m] = columnIndex((String)order.get(m)[0]);
+
+	  int[] needed = new int[selected.length+filterColumns.length+sortColumns.length];
+	  System.arraycopy(selected, 0, needed, 0, selected.length);
+	  System.arraycopy(filterColumns, 0, needed, selected.length, filterColumns.length);
+	  System.arraycopy(sortColumns, 0, needed, selected.length+filterColumns.length, sortColumns.length);
+	  source.setProjection(needed);
+	  if (sortColumns.length > 0)
+		sorted = sortAll(sortColumns);
+	}
+
+	private int columnIndex (String column) {
+	  int index = source.getColumnIndex(column);
+	  if (index == -1) {
+		source.close();
+		throw new IllegalArgumentException("no column "+column+" in "+url);
+	  }
+	  return index;
+	}
+
+	// Rows off the wire that pass the client-side conditions, as full-width arrays
+	private String[] nextMatch () throws IOException {
+	  while (source.next()) {
+		boolean ok = true;
+		for (int m=0;m<filters.length && ok;m++)
+		  ok = filters[m].matches(source.getField(filterColumns[m]));
+		if (!ok)
+		  continue;
+		String[] row = new String[source.getHeaders().length];
+		for (int m=0;m<row.length;m++)
+		  row[m] = source.getField(m);
+		return row;
+	  }
+	  return null;
+	}
+
+	// Another CGI cannot sort for us, so the matching rows are gathered and sorted here
+	private Iterator<String[]> sortAll (final int[] sortColumns) throws IOException {
+	  ArrayList<String[]> rows = new ArrayList<String[]>();
+	  String[] row;
+	  while ((row = nextMatch()) != null)
+		rows.add(row);
+	  Collections.sort(rows, new Comparator<String[]>() {
+		  public int compare (String[] a, String[] b) {
+			for (int m=0;m<sortColumns.length;m++) {
+			  String x = a[sortColumns[m]];
+			  String y = b[sortColumns[m]];
+			  int cmp = SBEAMSQuery.compare((x == null) ? "" : x, (y == null) ? "" : y);
+			  if (cmp != 0)
+				return ((Boolean)order.get(m)[1]).booleanValue() ? cmp : -cmp;
+			}
+			return 0;
+		  }
+		});
+	  return rows.iterator();
+	}
+
+	public String[] getHeaders () {
+	  return headers;
+	}
+
+	public int getColumnIndex (String columnTitle) {
+	  for (int m=0;m<headers.length;m++) {
+		if (headers[m].equals(columnTitle))
+		  return m;
+	  }
+	  return -1;
+	}
+
+	// Advances to the next matching row, returning false once there are no more or
+	// the limit has been reached
+	public boolean next () throws IOException {
+	  if (limit > 0 && returned >= limit) {
+		close();
+		return false;
+	  }
+	  String[] row;
+	  if (sorted != null)
+		row = sorted.hasNext() ? sorted.next() : null;
+	  else
+		row = nextMatch();
+	  if (row == null) {
+		close();
+		return false;
+	  }
+	  current = new String[selected.length];
+	  for (int m=0;m<selected.length;m++)
+		current[m] = row[selected[m]];
+	  returned++;
+	  return true;
+	}
+
+	public String getField (int column) {
+	  return current[column];
+	}
+
+	public String getField (String columnTitle) {
+	  int column = getColumnIndex(columnTitle);
+	  return (column == -1) ? null : current[column];
+	}
+
+	public String[] getRow () {
+	  return current.clone();
+	}
+
+	public void close () {
+	  source.close();
+	}
+  } //Cursor class
+//-----------------------------------------------------------------------------------------------
+} //SBEAMSQuery class
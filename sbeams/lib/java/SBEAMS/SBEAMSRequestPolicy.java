@@ -0,0 +1,259 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+//-----------------------------------------------------------------------------------------------
+// Retry, hedging and circuit breaking for idempotent SBEAMS reads.  Failed attempts are
+// retried after a jittered exponential backoff.  With hedging on, an attempt that is slower
+// than the chosen percentile of recent response times gets a duplicate, and whichever
+// answers first wins.  After enough consecutive failures the circuit opens and reads fail
+// at once until a trial request gets through.
+public class SBEAMSRequestPolicy {
+
+  private static SBEAMSRequestPolicy sharedPolicy = null;
+  private static ExecutorService hedgePool = null;
+  private static Random random = new Random();
+
+  private int maxAttempts = Integer.getInteger("sbeams.retry.attempts", 3).intValue();
+  private long baseDelay = Long.getLong("sbeams.retry.baseDelay", 200).longValue();
+  private long maxDelay = Long.getLong("sbeams.retry.maxDelay", 5000).longValue();
+  private double hedgePercentile = 0;
+  private int hedgeMinSamples = 20;
+  private int failureThreshold = Integer.getInteger("sbeams.circuit.failures", 5).intValue();
+  private long openMillis = Long.getLong("sbeams.circuit.openTime", 30).longValue()*1000;
+
+  private long[] latencies = new long[256];
+  private int latencyCount = 0;
+  private int consecutiveFailures = 0;
+  private long openUntil = 0;
+  private boolean trialInFlight = false;
+  private long retries = 0;
+  private long hedges = 0;
+  private long rejections = 0;
+//-----------------------------------------------------------------------------------------------
+  // Policy used by every client that has not been given its own, so the circuit breaker
+  // sees the failures of all of them
+  public static synchronized SBEAMSRequestPolicy getSharedPolicy() {
+	if (sharedPolicy == null) {
+	  sharedPolicy = new SBEAMSRequestPolicy();
+	  String percentile = System.getProperty("sbeams.hedge.percentile");
+	  if (percentile != null)
+		sharedPolicy.setHedgePercentile(Double.parseDouble(percentile));
+	}
+	return sharedPolicy;
+  }//getSharedPolicy
+//-----------------------------------------------------------------------------------------------
+  private static synchronized ExecutorService getHedgePool() {
+	if (hedgePool == null) {
+	  hedgePool = Executors.newCachedThreadPool(new ThreadFactory() {
+		  private int count = 0;
+		  public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SBEAMSHedge-"+(++count));
+			t.setDaemon(true);
+			return t;
+		  }
+		});
+	}
+	return hedgePool;
+  }//getHedgePool
+//-----------------------------------------------------------------------------------------------
+  // 1 disables retries
+  public synchronized void setRetry(int maxAttempts, long baseDelay, long maxDelay) {
+	this.maxAttempts = Math.max(1, maxAttempts);
+	this.baseDelay = baseDelay;
+	this.maxDelay = maxDelay;
+  }//setRetry
+//-----------------------------------------------------------------------------------------------
+  // e.g. 0.95 hedges any attempt slower than 95% of recent ones; 0 turns hedging off
+  public synchronized void setHedgePercentile(double percentile) {
+	this.hedgePercentile = percentile;
+  }//setHedgePercentile
+//-----------------------------------------------------------------------------------------------
+  // Response times needed before hedging starts
+  public synchronized void setHedgeMinSamples(int samples) {
+	this.hedgeMinSamples = samples;
+  }//setHedgeMinSamples
+//-----------------------------------------------------------------------------------------------
+  // 0 disables the circuit breaker
+  public synchronized void setCircuitBreaker(int failureThreshold, long openMillis) {
+	this.failureThreshold = failureThreshold;
+	this.openMillis = openMillis;
+  }//setCircuitBreaker
+//-----------------------------------------------------------------------------------------------
+  public synchronized boolean isCircuitOpen() {
+	return openUntil > System.currentTimeMillis();
+  }//isCircuitOpen
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getRetryCount() {
+	return retries;
+  }//getRetryCount
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getHedgeCount() {
+	return hedges;
+  }//getHedgeCount
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getRejectedCount() {
+	return rejections;
+  }//getRejectedCount
+//-----------------------------------------------------------------------------------------------
+  // Runs an attempt, retrying and hedging as configured.  The attempt must be safe to
+  // repeat.  One that reads the whole body before returning is retried on a failure
+  // part way through the body too, and its hedges race complete responses.
+  public <T> T execute(Callable<T> attempt)
+	throws Exception {
+	for (int tries=1;;tries++) {
+	  boolean trial = admit();
+	  try {
+		T response = hedge(attempt);
+		succeeded(trial);
+		return response;
+	  } catch (Exception e) {
+		// a caller that cancelled the read says nothing about the server
+		boolean cancelled = Thread.currentThread().isInterrupted();
+		boolean transientFailure = !cancelled && isTransient(e);
+		failed(trial, transientFailure);
+		if (!transientFailure || tries >= maxAttempts)
+		  throw e;
+		long delay;
+		synchronized (this) {
+		  retries++;
+		  // "full jitter": anywhere up to the exponential ceiling
+		  long ceiling = Math.min(maxDelay, baseDelay << Math.min(tries-1, 20));
+		  delay = (long)(random.nextDouble()*ceiling);
+		}
+		Thread.sleep(delay);
+	  }
+	}
+  }//execute
+//-----------------------------------------------------------------------------------------------
+  private static boolean isTransient(Exception e) {
+	if (e instanceof HttpStatusException)
+	  return ((HttpStatusException)e).isTransient();
+	return e instanceof IOException && !(e instanceof FileNotFoundException);
+  }//isTransient
+//-----------------------------------------------------------------------------------------------
+  // Lets the request through unless the circuit is open.  Once the open period is over a
+  // single trial request is let through; true marks that trial.
+  private synchronized boolean admit()
+	throws IOException {
+	if (failureThreshold <= 0 || consecutiveFailures < failureThreshold)
+	  return false;
+	long now = System.currentTimeMillis();
+	if (now < openUntil || trialInFlight) {
+	  rejections++;
+	  throw new IOException("SBEAMS server unavailable; failing fast for another "+
+							Math.max(1, (openUntil-now)/1000)+"s");
+	}
+	trialInFlight = true;
+	return true;
+  }//admit
+//-----------------------------------------------------------------------------------------------
+  private synchronized void succeeded(boolean trial) {
+	if (trial)
+	  trialInFlight = false;
+	consecutiveFailures = 0;
+	openUntil = 0;
+  }//succeeded
+//-----------------------------------------------------------------------------------------------
+  private synchronized void failed(boolean trial, boolean transientFailure) {
+	if (trial)
+	  trialInFlight = false;
+	if (!transientFailure)
+	  return;
+	consecutiveFailures++;
+	if (failureThreshold > 0 && consecutiveFailures >= failureThreshold)
+	  openUntil = System.currentTimeMillis()+openMillis;
+  }//failed
+//-----------------------------------------------------------------------------------------------
+  private synchronized void recordLatency(long millis) {
+	latencies[latencyCount % latencies.length] = millis;
+	latencyCount++;
+  }//recordLatency
+//-----------------------------------------------------------------------------------------------
+  // Delay before a hedge is sent, or -1 if hedging is off or there is too little history
+  synchronized long getHedgeDelay() {
+	int samples = Math.min(latencyCount, latencies.length);
+	if (hedgePercentile <= 0 || samples < Math.max(1, hedgeMinSamples))
+	  return -1;
+	long[] sorted = new long[samples];
+	System.arraycopy(latencies, 0, sorted, 0, samples);
+	Arrays.sort(sorted);
+	int index = (int)Math.ceil(hedgePercentile*samples)-1;
+	return Math.max(1, sorted[Math.max(0, Math.min(samples-1, index))]);
+  }//getHedgeDelay
+//-----------------------------------------------------------------------------------------------
+  private <T> T hedge(Callable<T> attempt)
+	throws Exception {
+	long start = System.currentTimeMillis();
+	long delay = getHedgeDelay();
+	if (delay < 0) {
+	  T response = attempt.call();
+	  recordLatency(System.currentTimeMillis()-start);
+	  return response;
+	}
+
+	CompletionService<T> attempts = new ExecutorCompletionService<T>(getHedgePool());
+	Future<T> first = attempts.submit(attempt);
+	Future<T> second = null;
+	Future<T> done;
+	try {
+	  done = attempts.poll(delay, TimeUnit.MILLISECONDS);
+	  if (done == null) {
+		synchronized (this) {
+		  hedges++;
+		}
+		second = attempts.submit(attempt);
+		done = attempts.take();
+	  }
+	} catch (InterruptedException e) {
+	  discard(first);
+	  if (second != null)
+		discard(second);
+	  throw e;
+	}
+	Future<T> loser = (done == first) ? second : first;
+	try {
+	  T response = done.get();
+	  recordLatency(System.currentTimeMillis()-start);
+	  if (loser != null)
+		discard(loser);
+	  return response;
+	} catch (ExecutionException e) {
+	  if (loser == null)
+		throw unwrap(e);
+	}
+	// the first to finish failed, but the other attempt may still succeed
+	try {
+	  T response = loser.get();
+	  recordLatency(System.currentTimeMillis()-start);
+	  return response;
+	} catch (ExecutionException e) {
+	  throw unwrap(e);
+	} catch (InterruptedException e) {
+	  discard(loser);
+	  throw e;
+	}
+  }//hedge
+//-----------------------------------------------------------------------------------------------
+  private static Exception unwrap(ExecutionException e) {
+	return (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+  }//unwrap
+//-----------------------------------------------------------------------------------------------
+  // Closes the response of an attempt nobody is waiting for once it arrives; one that
+  // was read in full has nothing left open
+  private static void discard(final Future<?> attempt) {
+	getHedgePool().submit(new Runnable() {
+		public void run() {
+		  try {
+			Object response = attempt.get();
+			if (response instanceof TransportResponse)
+			  ((TransportResponse)response).disconnect();
+		  } catch (Exception e) {
+		  }
+		}
+	  });
+  }//discard
+//-----------------------------------------------------------------------------------------------
+}//SBEAMSRequestPolicy
@@ -0,0 +1,96 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.nio.channels.*;
+
+//-----------------------------------------------------------------------------------------------
+// Opens the data locations the loaders are given as streams, whatever their form:
+//   sbeamsIndirect://host/path   a file on SBEAMS, read with the client's login
+//   httpIndirect://host/path     a file on any other web server
+//   http:// or https:// URLs     as they are
+//   anything else                a local path
+// Remote reads go through an SBEAMSClient, so they share its session, response cache,
+// mirrors and request limits.  Without a client, one is made the first time an SBEAMS
+// location is opened.
+public class SBEAMSResolver {
+
+  public static String SBEAMS_INDIRECT = "sbeamsIndirect://";
+  public static String HTTP_INDIRECT = "httpIndirect://";
+
+  private SBEAMSClient client;
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSResolver (SBEAMSClient client) {
+	this.client = client;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSResolver () {
+	this(null);
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // The client remote reads use, or null if none has been needed yet
+  public synchronized SBEAMSClient getClient () {
+	return client;
+  }//getClient
+//-----------------------------------------------------------------------------------------------
+  private synchronized SBEAMSClient client ()
+	throws Exception {
+	if (client == null)
+	  client = new SBEAMSClient(true);
+	return client;
+  }//client
+//-----------------------------------------------------------------------------------------------
+  // The URL a location is fetched from, or null for a local path
+  public static String toURL (String uri) {
+	if (uri.startsWith(SBEAMS_INDIRECT))
+	  return "http://"+uri.substring(SBEAMS_INDIRECT.length());
+	if (uri.startsWith(HTTP_INDIRECT))
+	  return "http://"+uri.substring(HTTP_INDIRECT.length());
+	if (uri.startsWith("http://") || uri.startsWith("https://"))
+	  return uri;
+	return null;
+  }//toURL
+//-----------------------------------------------------------------------------------------------
+  public static boolean isRemote (String uri) {
+	return toURL(uri) != null;
+  }//isRemote
+//-----------------------------------------------------------------------------------------------
+  public InputStream open (String uri)
+	throws Exception {
+	return open(uri, 0, -1);
+  }//open
+//-----------------------------------------------------------------------------------------------
+  // length bytes starting at offset, or all the rest if length is negative
+  public InputStream open (String uri, long offset, long length)
+	throws Exception {
+	String url = toURL(uri);
+	if (url != null)
+	  return client().openStream(url, "", offset, length);
+	FileInputStream in = new FileInputStream(uri);
+	if (offset > 0)
+	  in.getChannel().position(offset);
+	return (length < 0) ? (InputStream)in : new RangeInputStream(in, 0, length);
+  }//open
+//-----------------------------------------------------------------------------------------------
+  // A local file is handed back as its FileChannel, positioned at offset, when the whole
+  // rest of it is wanted
+  public ReadableByteChannel openChannel (String uri, long offset, long length)
+	throws Exception {
+	if (toURL(uri) == null && length < 0) {
+	  FileChannel channel = new FileInputStream(uri).getChannel();
+	  channel.position(Math.max(offset, 0));
+	  return channel;
+	}
+	return Channels.newChannel(open(uri, offset, length));
+  }//openChannel
+//-----------------------------------------------------------------------------------------------
+  public ReadableByteChannel openChannel (String uri)
+	throws Exception {
+	return openChannel(uri, 0, -1);
+  }//openChannel
+//-----------------------------------------------------------------------------------------------
+  public BufferedReader openReader (String uri)
+	throws Exception {
+	return new BufferedReader(new InputStreamReader(open(uri)), 64*1024);
+  }//openReader
+//-----------------------------------------------------------------------------------------------
+}//SBEAMSResolver
@@ -0,0 +1,291 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.regex.*;
+
+//-----------------------------------------------------------------------------------------------
+// On-disk cache of SBEAMS responses, keyed by URL, POST parameters and SBEAMS user.
+// Only tables given a time-to-live are cached; stale entries are revalidated with
+// If-None-Match/If-Modified-Since when the server sent an ETag or Last-Modified.  The
+// directory is kept under maxBytes by evicting the least recently used entries.
+public class SBEAMSResponseCache {
+
+  private static SBEAMSResponseCache defaultCache = null;
+  private static Pattern tableParam = Pattern.compile("(?:^|.*&)TABLE_NAME=([^&]*).*");
+  private static String BODY = ".body";
+  private static String META = ".meta";
+  private File directory;
+  private long maxBytes;
+  private long defaultTTL = 0;
+  private Hashtable<String,Long> tableTTLs = new Hashtable<String,Long>();
+//-----------------------------------------------------------------------------------------------
+  public static class Entry {
+	private String key;
+	private File body;
+	private Properties meta;
+	Entry (String key, File body, Properties meta) {
+	  this.key = key;
+	  this.body = body;
+	  this.meta = meta;
+	}
+	public boolean isFresh(long ttl) {
+	  long stored = Long.parseLong(meta.getProperty("stored", "0"));
+	  return System.currentTimeMillis() - stored < ttl*1000;
+	}
+	// conditional request headers, or null if the server gave no validators
+	public Hashtable<String,String> getValidators() {
+	  Hashtable<String,String> validators = new Hashtable<String,String>();
+	  if (meta.getProperty("ETag") != null)
+		validators.put("If-None-Match", meta.getProperty("ETag"));
+	  if (meta.getProperty("Last-Modified") != null)
+		validators.put("If-Modified-Since", meta.getProperty("Last-Modified"));
+	  return validators.isEmpty() ? null : validators;
+	}
+	public String getURL() {
+	  return meta.getProperty("url");
+	}
+  } //Entry class
+//-----------------------------------------------------------------------------------------------
+  protected static class CachedResponse extends TransportResponse {
+	private Entry entry;
+	CachedResponse (Entry entry) {
+	  this.entry = entry;
+	}
+	public int getStatusCode() {
+	  return 200;
+	}
+	public String getHeaderField(String name) {
+	  return entry.meta.getProperty(name);
+	}
+	public InputStream getInputStream() throws IOException {
+	  return new FileInputStream(entry.body);
+	}
+	public String getProtocol() {
+	  return "cache";
+	}
+	public void disconnect() {
+	}
+  } //CachedResponse class
+//-----------------------------------------------------------------------------------------------
+  // Copies the body into the cache as the caller reads it.  The entry is only committed
+  // once the whole body has been read, so aborted downloads never leave partial entries.
+  protected class FillingStream extends FilterInputStream {
+	private String key;
+	private Properties meta;
+	private File temp;
+	private OutputStream out;
+	private boolean done = false;
+	FillingStream (InputStream in, String key, Properties meta) throws IOException {
+	  super(in);
+	  this.key = key;
+	  this.meta = meta;
+	  temp = File.createTempFile(key, ".part", directory);
+	  out = new BufferedOutputStream(new FileOutputStream(temp));
+	}
+	public int read() throws IOException {
+	  int b = super.read();
+	  if (b == -1)
+		finish(true);
+	  else if (!done)
+		out.write(b);
+	  return b;
+	}
+	public int read(byte[] b, int off, int len) throws IOException {
+	  int n = super.read(b, off, len);
+	  if (n == -1)
+		finish(true);
+	  else if (!done)
+		out.write(b, off, n);
+	  return n;
+	}
+	public void close() throws IOException {
+	  finish(false);
+	  super.close();
+	}
+	private void finish(boolean complete) throws IOException {
+	  if (done)
+		return;
+	  done = true;
+	  out.close();
+	  if (complete)
+		commit(key, temp, meta);
+	  else
+		temp.delete();
+	}
+  } //FillingStream class
+//-----------------------------------------------------------------------------------------------
+  public SBEAMSResponseCache (File directory, long maxBytes) {
+	this.directory = directory;
+	this.maxBytes = maxBytes;
+	directory.mkdirs();
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  public static synchronized SBEAMSResponseCache getDefaultCache() {
+	if (defaultCache == null) {
+	  File dir = new File(System.getProperty("user.home"), ".sbeamsCache");
+	  long maxBytes = Long.getLong("sbeams.cache.maxBytes", 64L*1024*1024).longValue();
+	  defaultCache = new SBEAMSResponseCache(dir, maxBytes);
+	}
+	return defaultCache;
+  }//getDefaultCache
+//-----------------------------------------------------------------------------------------------
+  public synchronized void setTableTTL(String tableName, long seconds) {
+	tableTTLs.put(tableName, Long.valueOf(seconds));
+  }//setTableTTL
+//-----------------------------------------------------------------------------------------------
+  // Applies to requests without a TABLE_NAME of their own; 0 leaves them uncached
+  public synchronized void setDefaultTTL(long seconds) {
+	defaultTTL = seconds;
+  }//setDefaultTTL
+//-----------------------------------------------------------------------------------------------
+  public synchronized long getTTL(String params) {
+	if (params != null) {
+	  Matcher match = tableParam.matcher(params);
+	  if (match.matches() && tableTTLs.containsKey(match.group(1)))
+		return tableTTLs.get(match.group(1)).longValue();
+	}
+	return defaultTTL;
+  }//getTTL
+//-----------------------------------------------------------------------------------------------
+  public String key(String user, String url, String params) {
+	try {
+	  MessageDigest sha = MessageDigest.getInstance("SHA-1");
+	  byte[] digest = sha.digest((user+"\n"+url+"\n"+params).getBytes("UTF-8"));
+	  StringBuffer hex = new StringBuffer();
+	  for (int m=0;m<digest.length;m++) {
+		hex.append(Character.forDigit((digest[m] >> 4) & 0xf, 16));
+		hex.append(Character.forDigit(digest[m] & 0xf, 16));
+	  }
+	  return hex.toString();
+	} catch (Exception e) {
+	  throw new RuntimeException("SHA-1 unavailable: "+e.getMessage());
+	}
+  }//key
+//-----------------------------------------------------------------------------------------------
+  public synchronized Entry lookup(String key) {
+	File body = new File(directory, key+BODY);
+	File metaFile = new File(directory, key+META);
+	if (!body.exists() || !metaFile.exists())
+	  return null;
+	Properties meta = readMeta(metaFile);
+	if (meta == null)
+	  return null;
+	body.setLastModified(System.currentTimeMillis());
+	return new Entry(key, body, meta);
+  }//lookup
+//-----------------------------------------------------------------------------------------------
+  public TransportResponse open(Entry entry) {
+	return new CachedResponse(entry);
+  }//open
+//-----------------------------------------------------------------------------------------------
+  // Wraps a fresh 200 response so that reading it to the end also stores it
+  public TransportResponse store(String key, String url, TransportResponse response)
+	throws IOException {
+	String cacheControl = response.getHeaderField("Cache-Control");
+	if (response.getStatusCode() != 200 ||
+		(cacheControl != null && cacheControl.indexOf("no-store") >= 0))
+	  return response;
+	Properties meta = new Properties();
+	meta.setProperty("url", url);
+	String[] saved = {"Content-Type", "ETag", "Last-Modified"};
+	for (int m=0;m<saved.length;m++) {
+	  if (response.getHeaderField(saved[m]) != null)
+		meta.setProperty(saved[m], response.getHeaderField(saved[m]));
+	}
+	return new FilteredResponse(response, new FillingStream(response.getInputStream(), key, meta));
+  }//store
+//-----------------------------------------------------------------------------------------------
+  // The server answered 304 Not Modified, so the entry is good for another TTL
+  public synchronized void revalidated(Entry entry) {
+	entry.meta.setProperty("stored", String.valueOf(System.currentTimeMillis()));
+	writeMeta(new File(directory, entry.key+META), entry.meta);
+  }//revalidated
+//-----------------------------------------------------------------------------------------------
+  private synchronized void commit(String key, File temp, Properties meta) {
+	File body = new File(directory, key+BODY);
+	body.delete();
+	if (!temp.renameTo(body)) {
+	  temp.delete();
+	  return;
+	}
+	meta.setProperty("stored", String.valueOf(System.currentTimeMillis()));
+	writeMeta(new File(directory, key+META), meta);
+	evict();
+  }//commit
+//-----------------------------------------------------------------------------------------------
+  // Drops least recently used entries until the bodies fit in maxBytes
+  private void evict() {
+	File[] bodies = directory.listFiles(new FilenameFilter() {
+		public boolean accept(File dir, String name) {
+		  return name.endsWith(BODY);
+		}
+	  });
+	if (bodies == null)
+	  return;
+	long total = 0;
+	for (int m=0;m<bodies.length;m++)
+	  total += bodies[m].length();
+	if (total <= maxBytes)
+	  return;
+	Arrays.sort(bodies, new Comparator<File>() {
+		public int compare(File a, File b) {
+		  long diff = a.lastModified() - b.lastModified();
+		  return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+	  });
+	for (int m=0;m<bodies.length && total > maxBytes;m++) {
+	  total -= bodies[m].length();
+	  String name = bodies[m].getName();
+	  new File(directory, name.substring(0, name.length()-BODY.length())+META).delete();
+	  bodies[m].delete();
+	}
+  }//evict
+//-----------------------------------------------------------------------------------------------
+  public synchronized void clear() {
+	File[] files = directory.listFiles();
+	for (int m=0;files != null && m<files.length;m++)
+	  files[m].delete();
+  }//clear
+//-----------------------------------------------------------------------------------------------
+  // The cache lives in the OS user's home directory; remembering who last logged in
+  // lets a warm start answer lookups before anyone has been prompted for a password.
+  public synchronized String getLastUser() {
+	Properties owner = readMeta(new File(directory, "user"));
+	return (owner == null) ? "" : owner.getProperty("user", "");
+  }//getLastUser
+//-----------------------------------------------------------------------------------------------
+  public synchronized void setLastUser(String user) {
+	if (user == null || user.equals(getLastUser()))
+	  return;
+	Properties owner = new Properties();
+	owner.setProperty("user", user);
+	writeMeta(new File(directory, "user"), owner);
+  }//setLastUser
+//-----------------------------------------------------------------------------------------------
+  private Properties readMeta(File file) {
+	if (!file.exists())
+	  return null;
+	Properties meta = new Properties();
+	try {
+	  InputStream in = new FileInputStream(file);
+	  meta.load(in);
+	  in.close();
+	} catch (IOException e) {
+	  return null;
+	}
+	return meta;
+  }//readMeta
+//-----------------------------------------------------------------------------------------------
+  private void writeMeta(File file, Properties meta) {
+	try {
+	  OutputStream out = new FileOutputStream(file);
+	  meta.store(out, null);
+	  out.close();
+	} catch (IOException e) {
+	  System.err.println("Can't write cache entry "+file);
+	}
+  }//writeMeta
+//-----------------------------------------------------------------------------------------------
+}//SBEAMSResponseCache
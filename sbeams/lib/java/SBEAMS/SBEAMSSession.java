@@ -0,0 +1,146 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+//-----------------------------------------------------------------------------------------------
+// An SBEAMS login cookie that any number of clients can share.  The cookie's expiry is
+// parsed once when it is set, and a background login renews it shortly before it runs
+// out, so requests never wait on main.cgi once the first login is done.
+public class SBEAMSSession {
+
+  private static SBEAMSSession sharedSession = null;
+  private static ScheduledExecutorService scheduler = null;
+  private static long REFRESH_MARGIN = Long.getLong("sbeams.session.refreshMargin", 300).longValue()*1000;
+  // how long a cookie without an expires attribute is trusted before logging in again
+  private static long DEFAULT_LIFETIME = Long.getLong("sbeams.session.defaultLifetime", 1800).longValue()*1000;
+  private static Pattern EXPIRES = Pattern.compile("expires\\=\\s*(?:\\w+\\,\\s*)?(\\d+)[\\-\\s](\\w+)[\\-\\s](\\d+)\\s+(\\d+)\\:(\\d+)\\:(\\d+)",
+												   Pattern.CASE_INSENSITIVE);
+  private static String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+  private volatile String cookie = null;
+  private volatile String userName = null;
+  private volatile long expiresAt = 0;
+  private Callable<?> refresher = null;
+  private ScheduledFuture<?> refresh = null;
+//-----------------------------------------------------------------------------------------------
+  // Session used by clients that are not given credentials of their own
+  public static synchronized SBEAMSSession getSharedSession() {
+	if (sharedSession == null)
+	  sharedSession = new SBEAMSSession();
+	return sharedSession;
+  }//getSharedSession
+//-----------------------------------------------------------------------------------------------
+  private static synchronized ScheduledExecutorService getScheduler() {
+	if (scheduler == null) {
+	  scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		  public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SBEAMSSession-refresh");
+			t.setDaemon(true);
+			return t;
+		  }
+		});
+	}
+	return scheduler;
+  }//getScheduler
+//-----------------------------------------------------------------------------------------------
+  public String getCookie() {
+	return cookie;
+  }//getCookie
+//-----------------------------------------------------------------------------------------------
+  // Milliseconds since the epoch, or 0 when there is no cookie.  A cookie that carries
+  // no expiry is given sbeams.session.defaultLifetime seconds from when it was set.
+  public long getExpiresAt() {
+	return expiresAt;
+  }//getExpiresAt
+//-----------------------------------------------------------------------------------------------
+  public boolean isValid() {
+	return cookie != null && System.currentTimeMillis() < expiresAt;
+  }//isValid
+//-----------------------------------------------------------------------------------------------
+  public synchronized void setCookie(String cookie) {
+	this.cookie = cookie;
+	if (cookie == null) {
+	  expiresAt = 0;
+	}else {
+	  expiresAt = parseExpiry(cookie);
+	  if (expiresAt == 0)
+		expiresAt = System.currentTimeMillis()+DEFAULT_LIFETIME;
+	}
+	scheduleRefresh();
+  }//setCookie
+//-----------------------------------------------------------------------------------------------
+  // A cookie from a login as the given user
+  public synchronized void setCookie(String cookie, String userName) {
+	this.userName = userName;
+	setCookie(cookie);
+  }//setCookie
+//-----------------------------------------------------------------------------------------------
+  // Who the cookie belongs to, if it came from a login
+  public String getUserName() {
+	return userName;
+  }//getUserName
+//-----------------------------------------------------------------------------------------------
+  public synchronized void invalidate() {
+	setCookie(null);
+  }//invalidate
+//-----------------------------------------------------------------------------------------------
+  // The refresher logs in again without prompting and returns Boolean.TRUE if it got a
+  // new cookie.  It runs on a background thread ahead of each expiry, holding the
+  // session's lock so it cannot race a login made by a request.
+  public synchronized void setRefresher(Callable<?> refresher) {
+	this.refresher = refresher;
+	scheduleRefresh();
+  }//setRefresher
+//-----------------------------------------------------------------------------------------------
+  private void scheduleRefresh() {
+	if (refresh != null) {
+	  refresh.cancel(false);
+	  refresh = null;
+	}
+	long remaining = expiresAt - System.currentTimeMillis();
+	if (refresher == null || expiresAt == 0 || remaining <= 0)
+	  return;
+	// short-lived cookies are renewed halfway through their life
+	long delay = (remaining > 2*REFRESH_MARGIN) ? remaining-REFRESH_MARGIN : remaining/2;
+	final Callable<?> task = refresher;
+	refresh = getScheduler().schedule(new Runnable() {
+		public void run() {
+		  try {
+			synchronized (SBEAMSSession.this) {
+			  task.call();
+			}
+		  } catch (Exception e) {
+			// the next request logs in again once the old cookie expires
+			System.err.println("SBEAMS session refresh failed: "+e.getMessage());
+		  }
+		}
+	  }, delay, TimeUnit.MILLISECONDS);
+  }//scheduleRefresh
+//-----------------------------------------------------------------------------------------------
+  // Reads the expires attribute of a Set-Cookie value, e.g.
+  //   SBEAMSName=xyz; path=/; expires=Fri, 21-Jan-2005 18:00:00 GMT
+  // Returns 0 if there is none.
+  public static long parseExpiry(String cookie) {
+	Matcher match = EXPIRES.matcher(cookie);
+	if (!match.find())
+	  return 0;
+	String monthName = match.group(2).toLowerCase();
+	int month = MONTHS.indexOf(monthName.length() < 3 ? "?" : monthName.substring(0, 3));
+	if (monthName.startsWith("jly"))
+	  month = 6*3;
+	if (month < 0 || month % 3 != 0)
+	  return 0;
+	int year = Integer.parseInt(match.group(3));
+	if (year < 100)
+	  year += (year < 70) ? 2000 : 1900;
+	Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+	calendar.clear();
+	calendar.set(year, month/3, Integer.parseInt(match.group(1)),
+				 Integer.parseInt(match.group(4)), Integer.parseInt(match.group(5)),
+				 Integer.parseInt(match.group(6)));
+	return calendar.getTime().getTime();
+  }//parseExpiry
+//-----------------------------------------------------------------------------------------------
+}//SBEAMSSession
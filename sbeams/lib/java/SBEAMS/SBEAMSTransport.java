@@ -0,0 +1,18 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.util.*;
+
+//-----------------------------------------------------------------------------------------------
+// Carries a single request to the server.  Implementations decide how connections
+// are pooled and reused, so SBEAMSClient never opens a socket on its own.
+public interface SBEAMSTransport {
+//-----------------------------------------------------------------------------------------------
+  public TransportResponse send (String method, String urlString, Hashtable<String,String> headers, byte[] body)
+	throws IOException;
+//-----------------------------------------------------------------------------------------------
+  public String getName();
+//-----------------------------------------------------------------------------------------------
+  public void shutdown();
+//-----------------------------------------------------------------------------------------------
+}//SBEAMSTransport
@@ -0,0 +1,213 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+import java.net.URLEncoder;
+import java.util.*;
+
+//-----------------------------------------------------------------------------------------------
+// A local copy of an SBEAMS table, keyed on its primary key, that is kept current by
+// fetching only the rows modified since the last refresh.  The watermark is the latest
+// date_modified seen; each refresh asks ManageTable for rows at or after it (rows that
+// changed within the watermark's second are simply merged again) and replaces them by
+// key.  ManageTable never returns deleted rows, so a deletion cannot show up in a
+// delta: every fullRefreshEvery-th refresh reloads the whole table to drop them.
+// Timestamps are compared as text, which holds for the yyyy-mm-dd hh:mm:ss form SBEAMS
+// prints.  The copy can be saved to a file so a new run starts from its watermark.
+public class SyncedTable {
+
+  private SBEAMSClient client;
+  private String tableURL;
+  private String keyColumn;
+  private String modifiedColumn = "date_modified";
+  private String modifiedExpression = "date_modified";
+  private int fullRefreshEvery = 0;
+  private File file = null;
+
+  private String[] headers = null;
+  private LinkedHashMap<String,String[]> rows = new LinkedHashMap<String,String[]>();
+  private String watermark = null;
+  private int refreshes = 0;
+//-----------------------------------------------------------------------------------------------
+  // tableURL is a ManageTable query for the table in tsv output mode
+  public SyncedTable (SBEAMSClient client, String tableURL, String keyColumn) {
+	this.client = client;
+	this.tableURL = tableURL;
+	this.keyColumn = keyColumn;
+  }//constructor
+//-----------------------------------------------------------------------------------------------
+  // The timestamp column as it is headed in the output, and as the table's query must
+  // name it in a where clause (ManageTable queries often alias their tables)
+  public synchronized void setModifiedColumn (String column, String expression) {
+	modifiedColumn = column;
+	modifiedExpression = expression;
+  }//setModifiedColumn
+//-----------------------------------------------------------------------------------------------
+  // Reload everything on every n-th refresh to catch deletions; 0 never does
+  public synchronized void setFullRefreshEvery (int n) {
+	fullRefreshEvery = n;
+  }//setFullRefreshEvery
+//-----------------------------------------------------------------------------------------------
+  // Saves the copy here after each refresh and starts from it if it already exists
+  public synchronized void setFile (File file) throws IOException {
+	this.file = file;
+	if (file.exists() && headers == null)
+	  load();
+  }//setFile
+//-----------------------------------------------------------------------------------------------
+  public synchronized String getWatermark () {
+	return watermark;
+  }//getWatermark
+//-----------------------------------------------------------------------------------------------
+  public synchronized String[] getHeaders () {
+	return headers;
+  }//getHeaders
+//-----------------------------------------------------------------------------------------------
+  public synchronized int size () {
+	return rows.size();
+  }//size
+//-----------------------------------------------------------------------------------------------
+  public synchronized String[] getRow (String key) {
+	String[] row = rows.get(key);
+	return (row == null) ? null : row.clone();
+  }//getRow
+//-----------------------------------------------------------------------------------------------
+  // Rows in the order they were first seen, copied
+  public synchronized String[][] getRows () {
+	String[][] copy = new String[rows.size()][];
+	int m = 0;
+	for (Iterator<String[]> it = rows.values().iterator(); it.hasNext();)
+	  copy[m++] = it.next().clone();
+	return copy;
+  }//getRows
+//-----------------------------------------------------------------------------------------------
+  // Brings the copy up to date and returns the number of rows fetched
+  public synchronized int refresh () throws Exception {
+	refreshes++;
+	boolean full = watermark == null || headers == null ||
+	  (fullRefreshEvery > 0 && refreshes % fullRefreshEvery == 0);
+	return full ? reload() : merge();
+  }//refresh
+//-----------------------------------------------------------------------------------------------
+  public synchronized int reload () throws Exception {
+	ResultSetCursor cursor = openRows(null);
+	try {
+	  LinkedHashMap<String,String[]> fresh = new LinkedHashMap<String,String[]>();
+	  headers = cursor.getHeaders();
+	  watermark = null;
+	  int count = read(cursor, fresh);
+	  rows = fresh;
+	  save();
+	  return count;
+	} finally {
+	  cursor.close();
+	}
+  }//reload
+//-----------------------------------------------------------------------------------------------
+  private int merge () throws Exception {
+	ResultSetCursor cursor = openRows(modifiedExpression+" >= '"+watermark.replaceAll("'", "''")+"'");
+	try {
+	  // the table has been altered since the copy was taken
+	  if (!Arrays.equals(headers, cursor.getHeaders()) && cursor.getHeaders().length > 0) {
+		cursor.close();
+		return reload();
+	  }
+	  int count = read(cursor, rows);
+	  save();
+	  return count;
+	} finally {
+	  cursor.close();
+	}
+  }//merge
+//-----------------------------------------------------------------------------------------------
+  // Replaces rows by key, dropping any marked deleted, and advances the watermark
+  private int read (ResultSetCursor cursor, Map<String,String[]> into) throws IOException {
+	int key = cursor.getColumnIndex(keyColumn);
+	if (key == -1)
+	  throw new IOException("no key column "+keyColumn+" in "+tableURL);
+	int modified = cursor.getColumnIndex(modifiedColumn);
+	if (modified == -1)
+	  throw new IOException("no "+modifiedColumn+" column in "+tableURL);
+	int status = cursor.getColumnIndex("record_status");
+	int count = 0;
+	while (cursor.next()) {
+	  count++;
+	  String[] row = fullRow(cursor);
+	  String stamp = row[modified];
+	  if (stamp != null && stamp.length() > 0 && (watermark == null || stamp.compareTo(watermark) > 0))
+		watermark = stamp;
+	  if (status != -1 && "D".equals(row[status]))
+		into.remove(row[key]);
+	  else
+		into.put(row[key], row);
+	}
+	return count;
+  }//read
+//-----------------------------------------------------------------------------------------------
+  // A field for every column, short rows padded out with empty strings
+  private static String[] fullRow (ResultSetCursor cursor) {
+	String[] row = new String[cursor.getHeaders().length];
+	for (int m=0;m<row.length;m++)
+	  row[m] = cursor.getField(m);
+	return row;
+  }//fullRow
+//-----------------------------------------------------------------------------------------------
+  // Rows matching the where clause, or every row for null.  FULL detail is asked for so
+  // the audit columns are included.
+  protected ResultSetCursor openRows (String whereClause) throws Exception {
+	StringBuffer url = new StringBuffer(tableURL);
+	url.append((tableURL.indexOf('?') == -1) ? "?" : "&");
+	url.append("table_detail_level=FULL");
+	if (whereClause != null)
+	  url.append("&where_clause=").append(URLEncoder.encode(whereClause, "UTF-8"));
+	return client.openResultSet(url.toString());
+  }//openRows
+//-----------------------------------------------------------------------------------------------
+  // Watermark on the first line, then the table as tsv; written aside and renamed
+  private void save () throws IOException {
+	if (file == null)
+	  return;
+	File temp = new File(file.getPath()+".tmp");
+	PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8")));
+	try {
+	  out.print((watermark == null) ? "" : watermark);
+	  out.print("\n");
+	  writeLine(out, headers);
+	  for (Iterator<String[]> it = rows.values().iterator(); it.hasNext();)
+		writeLine(out, it.next());
+	} finally {
+	  out.close();
+	}
+	file.delete();
+	if (!temp.renameTo(file))
+	  throw new IOException("could not rename "+temp+" to "+file);
+  }//save
+//-----------------------------------------------------------------------------------------------
+  private static void writeLine (PrintWriter out, String[] fields) {
+	for (int m=0;m<fields.length;m++) {
+	  if (m > 0)
+		out.print('\t');
+	  out.print((fields[m] == null) ? "" : fields[m]);
+	}
+	out.print('\n');
+  }//writeLine
+//-----------------------------------------------------------------------------------------------
+  private void load () throws IOException {
+	BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+	try {
+	  String mark = in.readLine();
+	  ResultSetCursor cursor = new ResultSetCursor(in);
+	  int key = cursor.getColumnIndex(keyColumn);
+	  if (mark == null || key == -1)
+		return;
+	  LinkedHashMap<String,String[]> saved = new LinkedHashMap<String,String[]>();
+	  while (cursor.next())
+		saved.put(cursor.getField(key), fullRow(cursor));
+	  headers = cursor.getHeaders();
+	  rows = saved;
+	  watermark = (mark.length() == 0) ? null : mark;
+	} finally {
+	  in.close();
+	}
+  }//load
+//-----------------------------------------------------------------------------------------------
+} //SyncedTable class
@@ -0,0 +1,32 @@
+//-----------------------------------------------------------------------------------------------
+package SBEAMS;
+import java.io.*;
+
+//-----------------------------------------------------------------------------------------------
+// The status, headers and still-open body of a request sent through an SBEAMSTransport.
+// Closing the body stream after reading it to the end hands the connection back to the
+// pool; disconnect() throws the connection away instead.
+public abstract class TransportResponse {
+//-----------------------------------------------------------------------------------------------
+  public abstract int getStatusCode() throws IOException;
+//-----------------------------------------------------------------------------------------------
+  public abstract String getHeaderField(String name);
+//-----------------------------------------------------------------------------------------------
+  public abstract InputStream getInputStream() throws IOException;
+//-----------------------------------------------------------------------------------------------
+  public abstract String getProtocol();
+//-----------------------------------------------------------------------------------------------
+  public abstract void disconnect();
+//-----------------------------------------------------------------------------------------------
+  // Milliseconds spent opening the connection, TLS included: 0 for a reused pooled
+  // connection and -1 when the transport cannot tell
+  public long getConnectTime() {
+	return -1;
+  }//getConnectTime
+//-----------------------------------------------------------------------------------------------
+  // Timings being gathered for this request, or null if it is not being measured
+  public RequestMetrics getRequestMetrics() {
+	return null;
+  }//getRequestMetrics
+//-----------------------------------------------------------------------------------------------
+}//TransportResponse
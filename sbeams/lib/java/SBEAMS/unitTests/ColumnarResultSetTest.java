@@ -0,0 +1,127 @@
+// ColumnarResultSetTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import SBEAMS.ResultSetCursor;
+import SBEAMS.ColumnarResultSet;
+
+//--------------------------------------------------------------------------------------
+public class ColumnarResultSetTest extends TestCase {
+
+  private String table = "gene_id\tname\tratio\tplate\tbig\n"+
+                         "1\tVNG0001\t0.5\t007\t5000000000\n"+
+                         "2\tVNG0002\t\t008\t1\n"+
+                         "3\tVNG0001\t-125.5\t009\t\n";
+
+//------------------------------------------------------------------------------
+public ColumnarResultSetTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testInferredTypes () throws Exception
+{
+  System.out.println ("testInferredTypes");
+  ColumnarResultSet rs = ColumnarResultSet.read(new ResultSetCursor(new StringReader(table)),
+                                                null, null);
+  assertTrue (rs.getRowCount() == 3);
+  assertTrue (rs.getColumnCount() == 5);
+  assertTrue (rs.getColumnType(0) == ColumnarResultSet.INT);
+  assertTrue (rs.getColumnType(1) == ColumnarResultSet.STRING);
+  assertTrue (rs.getColumnType(2) == ColumnarResultSet.DOUBLE);
+  // leading zeros would be lost as numbers
+  assertTrue (rs.getColumnType(3) == ColumnarResultSet.STRING);
+  assertTrue (rs.getColumnType(4) == ColumnarResultSet.LONG);
+
+  int[] ids = rs.getInts(0);
+  assertTrue (ids.length == 3 && ids[2] == 3);
+  assertTrue (rs.getDictionary(1).length == 2);
+  assertTrue (rs.getStringCodes(1)[0] == rs.getStringCodes(1)[2]);
+  assertTrue (rs.getDoubles(2)[2] == -125.5);
+  assertTrue (rs.isNull(1, 2));
+  assertTrue (Double.isNaN(rs.getDoubles(2)[1]));
+  assertEquals ("008", rs.getString(1, 3));
+  assertTrue (rs.getLongs(4)[0] == 5000000000L);
+  assertTrue (rs.isNull(2, 4));
+  assertTrue (rs.getString(2, 4) == null);
+}
+//--------------------------------------------------------------------------------------
+public void testTextPreserved () throws Exception
+{
+  System.out.println ("testTextPreserved");
+  String text = "padded\texponent\tmixed\twidened\tblank\n"+
+				"1.50\t1e5\t1\t1\t\n"+
+				"2.25\t2.5\t2.5\t5000000000\tx\n"+
+				"\t3.5\t3\t\t\n";
+  ColumnarResultSet rs = ColumnarResultSet.read(new ResultSetCursor(new StringReader(text)),
+												null, null);
+  // values that would print differently as numbers stay strings
+  assertTrue (rs.getColumnType(0) == ColumnarResultSet.STRING);
+  assertEquals ("1.50", rs.getString(0, 0));
+  assertTrue (rs.getColumnType(1) == ColumnarResultSet.STRING);
+  assertEquals ("1e5", rs.getString(0, 1));
+  assertTrue (rs.getColumnType(2) == ColumnarResultSet.STRING);
+  assertEquals ("1", rs.getString(0, 2));
+  assertEquals ("3", rs.getString(2, 2));
+  assertTrue (rs.getColumnType(3) == ColumnarResultSet.LONG);
+  assertTrue (rs.getLongs(3)[0] == 1 && rs.isNull(2, 3));
+  // an empty string seen before the column turned out to be text is kept
+  assertTrue (rs.getColumnType(4) == ColumnarResultSet.STRING);
+  assertEquals ("", rs.getString(0, 4));
+  assertEquals ("x", rs.getString(1, 4));
+
+  // declared numeric columns all trim, and hold blanks as nulls
+  text = "i\td\n 7 \t 2.5 \n \t \n";
+  rs = ColumnarResultSet.read(new ResultSetCursor(new StringReader(text)), null,
+							  new int[] {ColumnarResultSet.INT, ColumnarResultSet.DOUBLE});
+  assertTrue (rs.getInts(0)[0] == 7 && rs.getDoubles(1)[0] == 2.5);
+  assertTrue (rs.isNull(1, 0) && rs.isNull(1, 1));
+}
+//--------------------------------------------------------------------------------------
+public void testProjection () throws Exception
+{
+  System.out.println ("testProjection");
+  ResultSetCursor cursor = new ResultSetCursor(new StringReader(table));
+  ColumnarResultSet rs = ColumnarResultSet.read(cursor, new String[] {"ratio", "gene_id"},
+                                                new int[] {ColumnarResultSet.DOUBLE,
+                                                           ColumnarResultSet.LONG});
+  assertTrue (rs.getColumnCount() == 2);
+  assertTrue (rs.getColumnIndex("gene_id") == 1);
+  assertTrue (rs.getLongs(1)[1] == 2);
+  assertTrue (rs.getDoubles(0)[0] == 0.5);
+}
+//--------------------------------------------------------------------------------------
+public void testErrors () throws Exception
+{
+  System.out.println ("testErrors");
+  try {
+	ColumnarResultSet.read(new ResultSetCursor(new StringReader(table)),
+	                       new String[] {"missing"}, null);
+	fail ("expected IOException for a missing column");
+  } catch (IOException e) {
+  }
+  try {
+	ColumnarResultSet.read(new ResultSetCursor(new StringReader(table)),
+	                       new String[] {"name"}, new int[] {ColumnarResultSet.INT});
+	fail ("expected IOException for a non-numeric value");
+  } catch (IOException e) {
+	assertTrue (e.getMessage().indexOf("VNG0001") >= 0);
+  }
+  ColumnarResultSet rs = ColumnarResultSet.read(new ResultSetCursor(new StringReader(table)),
+                                                new String[] {"name"}, null);
+  try {
+	rs.getInts(0);
+	fail ("expected IllegalArgumentException for a STRING column");
+  } catch (IllegalArgumentException e) {
+  }
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (ColumnarResultSetTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // ColumnarResultSetTest
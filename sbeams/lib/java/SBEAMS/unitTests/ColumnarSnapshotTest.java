@@ -0,0 +1,93 @@
+// ColumnarSnapshotTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import SBEAMS.ResultSetCursor;
+import SBEAMS.ColumnarResultSet;
+import SBEAMS.ColumnarSnapshot;
+
+//--------------------------------------------------------------------------------------
+public class ColumnarSnapshotTest extends TestCase {
+
+  private String table = "gene_id\tname\tratio\tbig\n"+
+						 "1\tVNG0001\t0.5\t5000000000\n"+
+						 "2\tVNG000\u00e92\t\t1\n"+
+						 "3\tVNG0001\t-125.5\t\n";
+  private File file;
+
+//------------------------------------------------------------------------------
+public ColumnarSnapshotTest (String name) 
+{
+  super (name);
+}
+//------------------------------------------------------------------------------
+public void setUp () throws Exception
+{
+  file = File.createTempFile("snapshot", ".sbcs");
+}
+//------------------------------------------------------------------------------
+public void tearDown () throws Exception
+{
+  file.delete();
+}
+//--------------------------------------------------------------------------------------
+public void testRoundTrip () throws Exception
+{
+  System.out.println ("testRoundTrip");
+  ColumnarResultSet rs = ColumnarResultSet.read(new ResultSetCursor(new StringReader(table)),
+												null, null);
+  ColumnarSnapshot.write(rs, "http://host/sbeams/cgi/x", file);
+  ColumnarSnapshot snapshot = ColumnarSnapshot.open(file);
+  assertEquals ("http://host/sbeams/cgi/x", snapshot.getSourceURL());
+  assertTrue (snapshot.getRowCount() == 3);
+  assertTrue (snapshot.getColumnCount() == 4);
+  assertTrue (snapshot.getColumnIndex("ratio") == 2);
+  for (int column=0;column<4;column++) {
+	assertTrue (snapshot.getColumnType(column) == rs.getColumnType(column));
+	for (int row=0;row<3;row++) {
+	  assertEquals (rs.getString(row, column), snapshot.getString(row, column));
+	  assertTrue (snapshot.isNull(row, column) == rs.isNull(row, column));
+	}
+  }
+  assertTrue (snapshot.getInts(0).get(2) == 3);
+  assertTrue (snapshot.getLongs(3).get(0) == 5000000000L);
+  assertTrue (Double.isNaN(snapshot.getDoubles(2).get(1)));
+  assertTrue (snapshot.getDictionary(1).length == 2);
+  assertTrue (snapshot.getStringCodes(1).get(0) == snapshot.getStringCodes(1).get(2));
+}
+//--------------------------------------------------------------------------------------
+public void testEmpty () throws Exception
+{
+  System.out.println ("testEmpty");
+  ColumnarResultSet rs = ColumnarResultSet.read(new ResultSetCursor(new StringReader("a\tb\n")),
+												null, new int[] {ColumnarResultSet.STRING,
+																 ColumnarResultSet.INT});
+  ColumnarSnapshot.write(rs, "u", file);
+  ColumnarSnapshot snapshot = ColumnarSnapshot.open(file);
+  assertTrue (snapshot.getRowCount() == 0);
+  assertTrue (snapshot.getDictionary(0).length == 0);
+  assertTrue (snapshot.getInts(1).remaining() == 0);
+}
+//--------------------------------------------------------------------------------------
+public void testNotASnapshot () throws Exception
+{
+  System.out.println ("testNotASnapshot");
+  FileWriter out = new FileWriter(file);
+  out.write("organism_id\tname\n");
+  out.close();
+  try {
+	ColumnarSnapshot.open(file);
+	fail ("expected IOException");
+  } catch (IOException e) {
+  }
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (ColumnarSnapshotTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // ColumnarSnapshotTest
@@ -0,0 +1,96 @@
+// IndexedResultSetTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.util.*;
+import SBEAMS.ResultSetCursor;
+import SBEAMS.IndexedResultSet;
+
+//--------------------------------------------------------------------------------------
+public class IndexedResultSetTest extends TestCase {
+
+  private String table = "project_id\torganism\tname\n"+
+						 "1\tHs\tliver\n"+
+						 "2\tHs\tbrain\n"+
+						 "3\tHalo\tliver\n"+
+						 "4\tHs\n";
+
+//------------------------------------------------------------------------------
+public IndexedResultSetTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+private IndexedResultSet read () throws Exception
+{
+  return IndexedResultSet.read(new ResultSetCursor(new StringReader(table)));
+}
+//--------------------------------------------------------------------------------------
+public void testSingleKey () throws Exception
+{
+  System.out.println ("testSingleKey");
+  IndexedResultSet rs = read();
+  // the short last row is kept
+  assertTrue (rs.getRowCount() == 4);
+  assertEquals ("brain", rs.lookup("project_id", "2", "name"));
+  assertEquals ("", rs.lookup("project_id", "4", "name"));
+  assertTrue (rs.lookup("project_id", "9", "name") == null);
+  assertTrue (rs.getIndex("project_id") == rs.getIndex("project_id"));
+}
+//--------------------------------------------------------------------------------------
+public void testMultiValue () throws Exception
+{
+  System.out.println ("testMultiValue");
+  IndexedResultSet rs = read();
+  int[] rows = rs.getIndex("organism").getRows("Hs");
+  assertTrue (rows.length == 3 && rows[0] == 0 && rows[2] == 3);
+  String[] names = rs.lookupAll("name", "liver", "project_id");
+  assertTrue (names.length == 2);
+  assertEquals ("3", names[1]);
+  assertTrue (rs.getIndex("organism").getKeyCount() == 2);
+}
+//--------------------------------------------------------------------------------------
+public void testRepeatedKey () throws Exception
+{
+  System.out.println ("testRepeatedKey");
+  String[][] rows = new String[200000][];
+  for (int m=0;m<rows.length;m++)
+	rows[m] = new String[] {String.valueOf(m), (m%10 == 0) ? "odd one" : "same"};
+  IndexedResultSet rs = new IndexedResultSet(new String[] {"id", "group"}, rows);
+  int[] same = rs.getIndex("group").getRows("same");
+  assertTrue (same.length == 180000);
+  assertTrue (same[0] == 1 && same[179999] == 199999);
+  assertTrue (rs.getIndex("group").getRows("odd one").length == 20000);
+
+  // rows and headers handed out are copies
+  rs.getRow(1)[1] = "changed";
+  assertEquals ("same", rs.getField(1, "group"));
+  rs.getHeaders()[1] = "changed";
+  assertTrue (rs.getColumnIndex("group") == 1);
+}
+//--------------------------------------------------------------------------------------
+public void testCompositeKey () throws Exception
+{
+  System.out.println ("testCompositeKey");
+  IndexedResultSet rs = read();
+  IndexedResultSet.Index index = rs.getIndex(new String[] {"organism", "name"});
+  assertTrue (index.getRow(new String[] {"Halo", "liver"}) == 2);
+  assertTrue (!index.containsKey(new String[] {"Halo", "brain"}));
+  Map map = rs.toMap("organism", "project_id");
+  assertEquals ("1", map.get("Hs"));
+  try {
+	rs.getIndex("missing");
+	fail ("expected IllegalArgumentException");
+  } catch (IllegalArgumentException e) {
+  }
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (IndexedResultSetTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // IndexedResultSetTest
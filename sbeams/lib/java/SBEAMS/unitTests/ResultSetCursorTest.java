@@ -0,0 +1,82 @@
+// ResultSetCursorTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import SBEAMS.ResultSetCursor;
+
+//--------------------------------------------------------------------------------------
+public class ResultSetCursorTest extends TestCase {
+
+  private String table = "organism_id\tfull_name\tabbreviation\n"+
+                         "2\tHomo sapiens\tHs\n"+
+                         "\n"+
+                         "6\tHalobacterium sp. NRC-1\t\r\n"+
+                         "7\tOther";
+
+//------------------------------------------------------------------------------
+public ResultSetCursorTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testHeaders () throws Exception
+{
+  System.out.println ("testHeaders");
+  ResultSetCursor cursor = new ResultSetCursor(new StringReader(table));
+  assertTrue (cursor.getHeaders().length == 3);
+  assertTrue (cursor.getColumnIndex("full_name") == 1);
+  assertTrue (cursor.getColumnIndex("missing") == -1);
+  cursor.close();
+}
+//--------------------------------------------------------------------------------------
+public void testRows () throws Exception
+{
+  System.out.println ("testRows");
+  ResultSetCursor cursor = new ResultSetCursor(new StringReader(table));
+  assertTrue (cursor.next());
+  assertEquals ("Homo sapiens", cursor.getField("full_name"));
+  assertTrue (cursor.next());
+  assertEquals ("6", cursor.getField(0));
+  assertEquals ("", cursor.getField(2));
+  assertTrue (cursor.getFieldCount() == 3);
+  assertTrue (cursor.next());
+  assertEquals ("Other", cursor.getField(1));
+  assertTrue (cursor.getFieldCount() == 2);
+  assertEquals ("", cursor.getField(2));
+  assertTrue (!cursor.next());
+  assertTrue (cursor.getRowNumber() == 3);
+}
+//--------------------------------------------------------------------------------------
+public void testSmallBuffer () throws Exception
+{
+  System.out.println ("testSmallBuffer");
+  // fields longer than the read buffer must be stitched back together
+  StringBuffer longName = new StringBuffer();
+  for (int m=0;m<20000;m++)
+	longName.append((char)('a'+(m%26)));
+  String data = "id\tname\n1\t"+longName+"\n2\tb\n";
+  ResultSetCursor cursor = new ResultSetCursor(new StringReader(data));
+  assertTrue (cursor.next());
+  assertEquals (longName.toString(), cursor.getField(1));
+  assertTrue (cursor.next());
+  assertEquals ("b", cursor.getField(1));
+  assertTrue (!cursor.next());
+}
+//--------------------------------------------------------------------------------------
+public void testEmpty () throws Exception
+{
+  System.out.println ("testEmpty");
+  ResultSetCursor cursor = new ResultSetCursor(new StringReader(""));
+  assertTrue (cursor.getHeaders().length == 0);
+  assertTrue (!cursor.next());
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (ResultSetCursorTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // ResultSetCursorTest
@@ -0,0 +1,127 @@
+// ResultSetJoinTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.util.*;
+import SBEAMS.ResultSetCursor;
+import SBEAMS.ResultSetJoin;
+
+//--------------------------------------------------------------------------------------
+public class ResultSetJoinTest extends TestCase {
+
+  private String projects = "project_id\tname\tPI_contact_id\n"+
+							"1\tHalo\t10\n"+
+							"2\tYeast\t11\n"+
+							"3\tOrphan\t12\n";
+  private String experiments = "experiment_id\tproject_id\texperiment_name\n"+
+							   "100\t1\thalo_light\n"+
+							   "101\t2\tyeast_gal\n"+
+							   "102\t1\thalo_dark\n"+
+							   "103\t9\tstray\n"+
+							   "104\t\tunassigned\n"+
+							   "105\t2\tyeast_raf\n";
+
+//------------------------------------------------------------------------------
+public ResultSetJoinTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+private ResultSetCursor cursor (String table) throws Exception
+{
+  return new ResultSetCursor(new StringReader(table));
+}
+//--------------------------------------------------------------------------------------
+private List rows (ResultSetJoin join) throws Exception
+{
+  List rows = new ArrayList();
+  while (join.next())
+	rows.add(Arrays.asList(join.getRow()).toString());
+  return rows;
+}
+//--------------------------------------------------------------------------------------
+public void testInnerJoin () throws Exception
+{
+  System.out.println ("testInnerJoin");
+  ResultSetJoin join = new ResultSetJoin(cursor(experiments), "project_id", new String[] {"experiment_name"},
+										 cursor(projects), "project_id", new String[] {"name"},
+										 ResultSetJoin.INNER);
+  assertEquals ("[experiment_name, name]", Arrays.asList(join.getHeaders()).toString());
+  List rows = rows(join);
+  // projects ran out first, so experiments are streamed and keep their order
+  assertEquals ("[[halo_light, Halo], [yeast_gal, Yeast], [halo_dark, Halo], [yeast_raf, Yeast]]",
+				rows.toString());
+  assertTrue (join.getRowNumber() == 4);
+}
+//--------------------------------------------------------------------------------------
+public void testLeftJoinStreamedLeft () throws Exception
+{
+  System.out.println ("testLeftJoinStreamedLeft");
+  ResultSetJoin join = new ResultSetJoin(cursor(experiments), "project_id", new String[] {"experiment_id"},
+										 cursor(projects), "project_id", new String[] {"name"},
+										 ResultSetJoin.LEFT);
+  List rows = rows(join);
+  assertEquals ("[[100, Halo], [101, Yeast], [102, Halo], [103, null], [104, null], [105, Yeast]]",
+				rows.toString());
+}
+//--------------------------------------------------------------------------------------
+public void testLeftJoinHashedLeft () throws Exception
+{
+  System.out.println ("testLeftJoinHashedLeft");
+  ResultSetJoin join = new ResultSetJoin(cursor(projects), "project_id", new String[] {"name"},
+										 cursor(experiments), "project_id", new String[] {"experiment_id"},
+										 ResultSetJoin.LEFT);
+  assertTrue (join.next());
+  assertEquals ("Halo", join.getField("name"));
+  assertEquals ("100", join.getField("experiment_id"));
+  List rows = rows(join);
+  // the project with no experiments comes once the experiments are exhausted
+  assertEquals ("[[Yeast, 101], [Halo, 102], [Yeast, 105], [Orphan, null]]", rows.toString());
+}
+//--------------------------------------------------------------------------------------
+public void testAllColumns () throws Exception
+{
+  System.out.println ("testAllColumns");
+  ResultSetJoin join = new ResultSetJoin(cursor(projects), "project_id", cursor(experiments),
+										 "project_id", ResultSetJoin.INNER);
+  assertTrue (join.getHeaders().length == 6);
+  assertTrue (join.getColumnIndex("experiment_name") == 5);
+  List rows = rows(join);
+  assertTrue (rows.size() == 4);
+  assertEquals ("[1, Halo, 10, 100, 1, halo_light]", rows.get(0));
+}
+//--------------------------------------------------------------------------------------
+public void testEmptySide () throws Exception
+{
+  System.out.println ("testEmptySide");
+  ResultSetJoin join = new ResultSetJoin(cursor(experiments), "project_id", null,
+										 cursor("project_id\tname\n"), "project_id", null,
+										 ResultSetJoin.LEFT);
+  List rows = rows(join);
+  assertTrue (rows.size() == 6);
+  assertEquals ("[100, 1, halo_light, null, null]", rows.get(0));
+
+  join = new ResultSetJoin(cursor(experiments), "project_id", null,
+						   cursor("project_id\tname\n"), "project_id", null, ResultSetJoin.INNER);
+  assertTrue (!join.next());
+}
+//--------------------------------------------------------------------------------------
+public void testMissingColumn () throws Exception
+{
+  System.out.println ("testMissingColumn");
+  try {
+	new ResultSetJoin(cursor(projects), "nope", cursor(experiments), "project_id", ResultSetJoin.INNER);
+	fail ("expected the missing key column to be reported");
+  } catch (IllegalArgumentException e) {
+  }
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (ResultSetJoinTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // ResultSetJoinTest
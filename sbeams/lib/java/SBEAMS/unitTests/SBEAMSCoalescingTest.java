@@ -0,0 +1,133 @@
+// SBEAMSCoalescingTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.util.*;
+import java.util.concurrent.*;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+// Identical reads made at the same time are answered by one request; checked against
+// SBEAMSStandInServer, slowed down so that the reads overlap
+public class SBEAMSCoalescingTest extends TestCase {
+
+  private static int READERS = 8;
+  private SBEAMSStandInServer server;
+  private ExecutorService threads;
+  private String base;
+  private String url;
+
+//------------------------------------------------------------------------------
+public SBEAMSCoalescingTest (String name) 
+{
+  super (name);
+}
+//------------------------------------------------------------------------------
+public void setUp () throws Exception
+{
+  server = new SBEAMSStandInServer();
+  server.addUser("tester", "secret");
+  server.addTable("MA_condition", 100);
+  server.start();
+  base = server.getBaseURL();
+  url = base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv";
+  threads = Executors.newFixedThreadPool(READERS);
+}
+//------------------------------------------------------------------------------
+public void tearDown () throws Exception
+{
+  threads.shutdownNow();
+  server.stop();
+}
+//--------------------------------------------------------------------------------------
+private SBEAMSClient newClient () throws Exception
+{
+  SBEAMSClient client = new SBEAMSClient("tester", "secret", base);
+  client.setMetrics(null);
+  // logged in up front, so only the reads overlap
+  client.fetchSbeamsPage(url, 1);
+  return client;
+}
+//--------------------------------------------------------------------------------------
+// Starts every read at once and waits for them all
+private List read (final SBEAMSClient[] clients, final String target) throws Exception
+{
+  final CountDownLatch start = new CountDownLatch(1);
+  List results = new ArrayList();
+  for (int m=0;m<READERS;m++) {
+	final SBEAMSClient client = clients[m % clients.length];
+	results.add(threads.submit(new Callable() {
+		public Object call() throws Exception {
+		  start.await();
+		  return client.fetchSbeamsPage(target);
+		}
+	  }));
+  }
+  start.countDown();
+  return results;
+}
+//--------------------------------------------------------------------------------------
+public void testSharedRead () throws Exception
+{
+  System.out.println ("testSharedRead");
+  SBEAMSClient client = newClient();
+  long before = server.getRequestCount("ManageTable.cgi");
+  server.setLatency(300, 0);
+  List results = read(new SBEAMSClient[] {client}, url);
+  String first = (String)((Future)results.get(0)).get();
+  assertTrue (first.startsWith("MA_condition_id\t"));
+  for (int m=1;m<results.size();m++)
+	assertEquals (first, ((Future)results.get(m)).get());
+  assertTrue (server.getRequestCount("ManageTable.cgi") == before+1);
+}
+//--------------------------------------------------------------------------------------
+public void testSharedFailure () throws Exception
+{
+  System.out.println ("testSharedFailure");
+  SBEAMSClient client = newClient();
+  server.setLatency(300, 0);
+  String missing = base+"/cgi/Missing.cgi";
+  List results = read(new SBEAMSClient[] {client}, missing);
+  for (int m=0;m<results.size();m++) {
+	try {
+	  ((Future)results.get(m)).get();
+	  fail ("expected every reader to see the 404");
+	} catch (ExecutionException e) {
+	  assertTrue (e.getCause() instanceof HttpStatusException);
+	}
+  }
+  assertTrue (server.getRequestCount("Missing.cgi") == 1);
+
+  // the failed read is not left behind for later ones to wait on
+  server.setLatency(0, 0);
+  try {
+	client.fetchSbeamsPage(missing);
+	fail ("expected the 404 again");
+  } catch (HttpStatusException e) {
+  }
+  assertTrue (server.getRequestCount("Missing.cgi") == 2);
+}
+//--------------------------------------------------------------------------------------
+public void testSessionsNotShared () throws Exception
+{
+  System.out.println ("testSessionsNotShared");
+  // each client has a session and cookie of its own, and posted its own login
+  SBEAMSClient[] clients = {newClient(), newClient()};
+  assertTrue (server.getLoginCount() == 2);
+  assertTrue (!clients[0].getSession().getCookie().equals(clients[1].getSession().getCookie()));
+  long before = server.getRequestCount("ManageTable.cgi");
+  server.setLatency(300, 0);
+  List results = read(clients, url);
+  for (int m=0;m<results.size();m++)
+	((Future)results.get(m)).get();
+  assertTrue (server.getRequestCount("ManageTable.cgi") == before+2);
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSCoalescingTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSCoalescingTest
@@ -0,0 +1,115 @@
+// SBEAMSConcurrencyLimiterTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.util.concurrent.*;
+import SBEAMS.SBEAMSConcurrencyLimiter;
+
+//--------------------------------------------------------------------------------------
+public class SBEAMSConcurrencyLimiterTest extends TestCase {
+
+  private static String HOST = "db.example.org";
+
+//------------------------------------------------------------------------------
+public SBEAMSConcurrencyLimiterTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+// fills the host's limit from this thread and releases everything with the given latency
+private void round (SBEAMSConcurrencyLimiter limiter, long latency, boolean overloaded) throws Exception
+{
+  int limit = limiter.getLimit(HOST);
+  SBEAMSConcurrencyLimiter.Permit[] permits = new SBEAMSConcurrencyLimiter.Permit[limit];
+  for (int m=0;m<limit;m++)
+	permits[m] = limiter.acquire(HOST);
+  for (int m=0;m<limit;m++)
+	permits[m].release(latency, overloaded);
+}
+//--------------------------------------------------------------------------------------
+public void testGrowsWhileFast () throws Exception
+{
+  System.out.println ("testGrowsWhileFast");
+  SBEAMSConcurrencyLimiter limiter = new SBEAMSConcurrencyLimiter(4, 16);
+  assertTrue (limiter.getLimit(HOST) == 4);
+  for (int m=0;m<40;m++)
+	round(limiter, 50, false);
+  assertTrue (limiter.getLimit(HOST) == 16);
+  assertTrue (limiter.getInFlight(HOST) == 0);
+  assertTrue (limiter.getLimit("other.example.org") == 4);
+}
+//--------------------------------------------------------------------------------------
+public void testIdleDoesNotGrow () throws Exception
+{
+  System.out.println ("testIdleDoesNotGrow");
+  SBEAMSConcurrencyLimiter limiter = new SBEAMSConcurrencyLimiter(4, 16);
+  for (int m=0;m<100;m++)
+	limiter.acquire(HOST).release(50, false);
+  assertTrue (limiter.getLimit(HOST) == 4);
+}
+//--------------------------------------------------------------------------------------
+public void testOneCutPerRound () throws Exception
+{
+  System.out.println ("testOneCutPerRound");
+  SBEAMSConcurrencyLimiter limiter = new SBEAMSConcurrencyLimiter(8, 16);
+  round(limiter, 50, true);
+  // eight failures from requests sent together cut the limit once
+  assertTrue (limiter.getCutCount(HOST) == 1);
+  assertTrue (limiter.getLimit(HOST) == 6);
+  round(limiter, 50, true);
+  assertTrue (limiter.getCutCount(HOST) == 2);
+  for (int m=0;m<20;m++)
+	round(limiter, 50, true);
+  assertTrue (limiter.getLimit(HOST) == 1);
+}
+//--------------------------------------------------------------------------------------
+public void testSlowResponsesCut () throws Exception
+{
+  System.out.println ("testSlowResponsesCut");
+  SBEAMSConcurrencyLimiter limiter = new SBEAMSConcurrencyLimiter(8, 16);
+  round(limiter, 40, false);
+  assertTrue (limiter.getCutCount(HOST) == 0);
+  // well over twice the best latency seen means requests are queueing at the server
+  round(limiter, 400, false);
+  assertTrue (limiter.getCutCount(HOST) == 1);
+  assertTrue (limiter.getLimit(HOST) < 8);
+}
+//--------------------------------------------------------------------------------------
+public void testWaitsForRoom () throws Exception
+{
+  System.out.println ("testWaitsForRoom");
+  final SBEAMSConcurrencyLimiter limiter = new SBEAMSConcurrencyLimiter(1, 1);
+  SBEAMSConcurrencyLimiter.Permit first = limiter.acquire(HOST);
+  // the same thread is never made to wait on itself
+  SBEAMSConcurrencyLimiter.Permit nested = limiter.acquire(HOST);
+  assertTrue (limiter.getInFlight(HOST) == 2);
+
+  FutureTask other = new FutureTask(new Callable() {
+	  public Object call() throws Exception {
+		return limiter.acquire(HOST);
+	  }
+	});
+  new Thread(other).start();
+  try {
+	other.get(200, TimeUnit.MILLISECONDS);
+	fail ("another thread should wait while the host is at its limit");
+  } catch (TimeoutException e) {
+  }
+  nested.release(10, false);
+  first.release(10, false);
+  // releasing twice has no further effect
+  first.release(10, false);
+  SBEAMSConcurrencyLimiter.Permit third = (SBEAMSConcurrencyLimiter.Permit)other.get(2, TimeUnit.SECONDS);
+  assertTrue (limiter.getInFlight(HOST) == 1);
+  third.release(10, false);
+  assertTrue (limiter.getInFlight(HOST) == 0);
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSConcurrencyLimiterTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSConcurrencyLimiterTest
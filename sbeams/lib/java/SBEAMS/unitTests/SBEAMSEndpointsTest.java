@@ -0,0 +1,128 @@
+// SBEAMSEndpointsTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.util.*;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+public class SBEAMSEndpointsTest extends TestCase {
+
+  // answers each URL with the status registered for its server, or fails to connect
+  private static class ProbeTransport implements SBEAMSTransport {
+	Hashtable statuses = new Hashtable();
+	Vector urls = new Vector();
+	public TransportResponse send(String method, String urlString, Hashtable<String,String> headers, byte[] body)
+	  throws IOException {
+	  urls.add(urlString);
+	  for (Enumeration e = statuses.keys(); e.hasMoreElements();) {
+		String base = (String)e.nextElement();
+		if (urlString.startsWith(base))
+		  return new Response(((Integer)statuses.get(base)).intValue());
+	  }
+	  throw new IOException("connection refused");
+	}
+	public String getName() { return "probe"; }
+	public void shutdown() { }
+  } //ProbeTransport class
+
+  private static class Response extends TransportResponse {
+	int status;
+	Response (int status) {
+	  this.status = status;
+	}
+	public int getStatusCode() { return status; }
+	public String getHeaderField(String name) { return null; }
+	public InputStream getInputStream() { return new ByteArrayInputStream(new byte[0]); }
+	public String getProtocol() { return "test"; }
+	public void disconnect() { }
+  } //Response class
+
+//------------------------------------------------------------------------------
+public SBEAMSEndpointsTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testUnmeasuredKeepsGivenOrder () throws Exception
+{
+  System.out.println ("testUnmeasuredKeepsGivenOrder");
+  SBEAMSEndpoints endpoints = new SBEAMSEndpoints(new String[] {"http://a/sbeams/", "http://b/sbeams"});
+  SBEAMSEndpoints.Endpoint[] order = endpoints.route();
+  assertEquals ("http://a/sbeams", order[0].getBaseURL());
+  assertEquals ("http://b/sbeams", order[1].getBaseURL());
+  assertTrue (endpoints.getPrimary() == order[0]);
+  assertTrue (order[0].getLatency() < 0);
+}
+//--------------------------------------------------------------------------------------
+public void testFastestFirst () throws Exception
+{
+  System.out.println ("testFastestFirst");
+  SBEAMSEndpoints endpoints = new SBEAMSEndpoints(new String[] {"http://a/sbeams", "http://b/sbeams", "http://c/sbeams"});
+  SBEAMSEndpoints.Endpoint[] all = endpoints.getEndpoints();
+  endpoints.succeeded(all[0], 300);
+  endpoints.succeeded(all[1], 40);
+  endpoints.succeeded(all[2], 120);
+  SBEAMSEndpoints.Endpoint[] order = endpoints.route();
+  assertTrue (order[0] == all[1]);
+  assertTrue (order[1] == all[2]);
+  assertTrue (order[2] == all[0]);
+
+  // one slow response moves the average only part of the way
+  endpoints.succeeded(all[1], 240);
+  assertTrue (all[1].getLatency() > 40 && all[1].getLatency() < 240);
+  assertTrue (endpoints.route()[0] == all[1]);
+}
+//--------------------------------------------------------------------------------------
+public void testFailedServerGoesLast () throws Exception
+{
+  System.out.println ("testFailedServerGoesLast");
+  SBEAMSEndpoints endpoints = new SBEAMSEndpoints(new String[] {"http://a/sbeams", "http://b/sbeams"});
+  SBEAMSEndpoints.Endpoint[] all = endpoints.getEndpoints();
+  endpoints.succeeded(all[0], 10);
+  endpoints.succeeded(all[1], 500);
+  endpoints.failed(all[0]);
+  assertTrue (!all[0].isHealthy());
+  assertTrue (all[0].getFailures() == 1);
+  SBEAMSEndpoints.Endpoint[] order = endpoints.route();
+  assertTrue (order[0] == all[1]);
+  // still offered as a last resort
+  assertTrue (order[1] == all[0]);
+
+  endpoints.succeeded(all[0], 10);
+  assertTrue (all[0].isHealthy());
+  assertTrue (all[0].getFailures() == 0);
+  assertTrue (endpoints.route()[0] == all[0]);
+}
+//--------------------------------------------------------------------------------------
+public void testProbe () throws Exception
+{
+  System.out.println ("testProbe");
+  SBEAMSEndpoints endpoints = new SBEAMSEndpoints(new String[] {"http://a/sbeams", "http://b/sbeams", "http://c/sbeams"});
+  ProbeTransport transport = new ProbeTransport();
+  transport.statuses.put("http://a/", new Integer(503));
+  transport.statuses.put("http://b/", new Integer(200));
+  endpoints.probe(transport);
+  SBEAMSEndpoints.Endpoint[] all = endpoints.getEndpoints();
+  assertTrue (!all[0].isHealthy());
+  assertTrue (all[1].isHealthy());
+  assertTrue (all[1].getLatency() >= 0);
+  assertTrue (!all[2].isHealthy());
+  assertTrue (endpoints.route()[0] == all[1]);
+  assertTrue (transport.urls.contains("http://c/sbeams/cgi/main.cgi"));
+
+  // a login page without a cookie still means the server is up
+  transport.statuses.put("http://a/", new Integer(401));
+  endpoints.probe(transport);
+  assertTrue (all[0].isHealthy());
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSEndpointsTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSEndpointsTest
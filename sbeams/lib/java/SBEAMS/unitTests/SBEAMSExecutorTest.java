@@ -0,0 +1,122 @@
+// SBEAMSExecutorTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+// Background requests: the executor's limit on requests in flight, and the asynchronous
+// fetches built on it against SBEAMSStandInServer
+public class SBEAMSExecutorTest extends TestCase {
+
+//------------------------------------------------------------------------------
+public SBEAMSExecutorTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testLimit () throws Exception
+{
+  System.out.println ("testLimit");
+  SBEAMSExecutor executor = new SBEAMSExecutor(3);
+  final AtomicInteger running = new AtomicInteger();
+  final AtomicInteger peak = new AtomicInteger();
+  Future[] tasks = new Future[12];
+  try {
+	for (int m=0;m<tasks.length;m++) {
+	  final int task = m;
+	  tasks[m] = executor.submit(new Callable() {
+		  public Object call() throws Exception {
+			int now = running.incrementAndGet();
+			synchronized (peak) {
+			  peak.set(Math.max(peak.get(), now));
+			}
+			Thread.sleep(50);
+			running.decrementAndGet();
+			return Integer.valueOf(task);
+		  }
+		});
+	}
+	for (int m=0;m<tasks.length;m++)
+	  assertEquals (Integer.valueOf(m), tasks[m].get(10, TimeUnit.SECONDS));
+  } finally {
+	executor.shutdown();
+  }
+  assertTrue (executor.getMaxParallel() == 3);
+  assertTrue (peak.get() > 1 && peak.get() <= 3);
+}
+//--------------------------------------------------------------------------------------
+public void testFailure () throws Exception
+{
+  System.out.println ("testFailure");
+  SBEAMSExecutor executor = new SBEAMSExecutor(2);
+  try {
+	Future failed = executor.submit(new Callable() {
+		public Object call() throws Exception {
+		  throw new IllegalStateException("boom");
+		}
+	  });
+	try {
+	  failed.get();
+	  fail ("expected the task's exception");
+	} catch (ExecutionException e) {
+	  assertTrue (e.getCause() instanceof IllegalStateException);
+	}
+	// the failed task gave its permit back
+	for (int m=0;m<4;m++) {
+	  Future ok = executor.submit(new Callable() {
+		  public Object call() {
+			return "ok";
+		  }
+		});
+	  assertEquals ("ok", ok.get(10, TimeUnit.SECONDS));
+	}
+  } finally {
+	executor.shutdown();
+  }
+}
+//--------------------------------------------------------------------------------------
+public void testAsyncPages () throws Exception
+{
+  System.out.println ("testAsyncPages");
+  SBEAMSStandInServer server = new SBEAMSStandInServer();
+  server.addUser("tester", "secret");
+  server.addTable("MA_condition", 50);
+  server.start();
+  try {
+	String base = server.getBaseURL();
+	SBEAMSClient client = new SBEAMSClient("tester", "secret", base);
+	client.setMetrics(null);
+	// logged in up front, so only the pages are timed
+	client.fetchSbeamsPage(base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv&rs_page_size=1");
+	server.setLatency(100, 0);
+	String[] urls = new String[6];
+	for (int m=0;m<urls.length;m++)
+	  urls[m] = base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv"+
+		"&rs_page_size=5&rs_page_number="+(m+1);
+	long start = System.currentTimeMillis();
+	Future[] pages = client.fetchSbeamsPagesAsync(urls);
+	for (int m=0;m<pages.length;m++) {
+	  String[] lines = ((String)pages[m].get(30, TimeUnit.SECONDS)).split("\n");
+	  assertTrue (lines.length == 6);
+	  assertTrue (lines[1].startsWith((5*m+1)+"\t"));
+	}
+	// the pages were fetched side by side, on the one session
+	assertTrue (System.currentTimeMillis()-start < 6*100);
+	assertTrue (server.getLoginCount() == 1);
+	assertTrue (server.getRequestCount("ManageTable.cgi") == 7);
+  } finally {
+	server.stop();
+  }
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSExecutorTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSExecutorTest
@@ -0,0 +1,176 @@
+// SBEAMSLoadTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+// Drives an SBEAMSClient at a series of concurrency levels and reports throughput and
+// latency percentiles for each.  Runs against an SBEAMSStandInServer unless -url names a
+// real server.
+//
+//   java SBEAMS.unitTests.SBEAMSLoadTest [-rows 10000] [-latency 20] [-jitter 5]
+//        [-requests 200] [-levels 1,2,4,8,16,32] [-mode cursor|page|download]
+//        [-url base -user name -password secret -table TABLE_NAME]
+public class SBEAMSLoadTest {
+
+  private SBEAMSClient client;
+  private String url;
+  private String mode;
+  private AtomicLong rowsRead = new AtomicLong();
+  private AtomicLong errors = new AtomicLong();
+
+//--------------------------------------------------------------------------------------
+public SBEAMSLoadTest (SBEAMSClient client, String url, String mode)
+{
+  this.client = client;
+  this.url = url;
+  this.mode = mode;
+}
+//--------------------------------------------------------------------------------------
+// One request, read to the end
+private void request () throws Exception
+{
+  if (mode.equals("page")) {
+	String page = client.fetchSbeamsPage(url);
+	int rows = 0;
+	for (int m=page.indexOf('\n');m != -1;m=page.indexOf('\n', m+1))
+	  rows++;
+	rowsRead.addAndGet(Math.max(0, rows-1));
+  } else if (mode.equals("download")) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	rowsRead.addAndGet(client.downloadToChannel(url, "", java.nio.channels.Channels.newChannel(out), null));
+  } else {
+	ResultSetCursor cursor = client.openResultSet(url);
+	try {
+	  while (cursor.next());
+	  rowsRead.addAndGet(cursor.getRowNumber());
+	} finally {
+	  cursor.close();
+	}
+  }
+}
+//--------------------------------------------------------------------------------------
+// Runs count requests with concurrency threads and returns a line of results
+public String run (int concurrency, int count) throws Exception
+{
+  rowsRead.set(0);
+  errors.set(0);
+  final long[] latencies = new long[count];
+  ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+  long start = System.nanoTime();
+  List futures = new ArrayList();
+  for (int m=0;m<count;m++) {
+	final int slot = m;
+	futures.add(pool.submit(new Runnable() {
+		public void run() {
+		  long begin = System.nanoTime();
+		  try {
+			request();
+		  } catch (Exception e) {
+			errors.incrementAndGet();
+		  }
+		  latencies[slot] = System.nanoTime()-begin;
+		}
+	  }));
+  }
+  for (int m=0;m<futures.size();m++)
+	((Future)futures.get(m)).get();
+  double seconds = (System.nanoTime()-start)/1e9;
+  pool.shutdown();
+
+  Arrays.sort(latencies);
+  String host = new java.net.URL(url).getAuthority();
+  SBEAMSConcurrencyLimiter limiter = client.getConcurrencyLimiter();
+  return pad(String.valueOf(concurrency), 6)+pad(String.valueOf(count), 9)+
+	pad(String.valueOf(errors.get()), 7)+
+	pad(format(count/seconds), 10)+pad(format(rowsRead.get()/seconds), 12)+
+	pad(millis(percentile(latencies, 50)), 9)+pad(millis(percentile(latencies, 90)), 9)+
+	pad(millis(percentile(latencies, 99)), 9)+pad(millis(latencies[count-1]), 9)+
+	pad((limiter == null) ? "-" : String.valueOf(limiter.getLimit(host)), 7);
+}
+//--------------------------------------------------------------------------------------
+private static long percentile (long[] sorted, int p)
+{
+  int index = (int)Math.ceil(sorted.length*p/100.0)-1;
+  return sorted[Math.max(0, Math.min(sorted.length-1, index))];
+}
+//--------------------------------------------------------------------------------------
+private static String millis (long nanos)
+{
+  return format(nanos/1e6);
+}
+//--------------------------------------------------------------------------------------
+private static String format (double value)
+{
+  if (value >= 1000)
+	return String.valueOf(Math.round(value));
+  return String.valueOf(Math.round(value*10)/10.0);
+}
+//--------------------------------------------------------------------------------------
+private static String pad (String value, int width)
+{
+  StringBuffer padded = new StringBuffer();
+  for (int m=value.length();m<width;m++)
+	padded.append(' ');
+  return padded.append(value).toString();
+}
+//--------------------------------------------------------------------------------------
+private static String option (Map options, String name, String otherwise)
+{
+  String value = (String)options.get(name);
+  return (value == null) ? otherwise : value;
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) throws Exception
+{
+  Map options = new HashMap();
+  for (int m=0;m+1<args.length;m+=2)
+	options.put(args[m].replaceFirst("^-+", ""), args[m+1]);
+  int rows = Integer.parseInt(option(options, "rows", "10000"));
+  int requests = Integer.parseInt(option(options, "requests", "200"));
+  String mode = option(options, "mode", "cursor");
+  String[] levels = option(options, "levels", "1,2,4,8,16,32").split(",");
+
+  SBEAMSStandInServer server = null;
+  String base = (String)options.get("url");
+  String user = option(options, "user", "loadtest");
+  String password = option(options, "password", "loadtest");
+  String table = option(options, "table", "MA_condition");
+  if (base == null) {
+	server = new SBEAMSStandInServer();
+	server.addUser(user, password);
+	server.addTable(table, rows);
+	byte[] file = new byte[rows*64];
+	new Random(1).nextBytes(file);
+	server.addFile("matrix_output", file);
+	server.setLatency(Long.parseLong(option(options, "latency", "20")),
+					  Long.parseLong(option(options, "jitter", "5")));
+	server.start();
+	base = server.getBaseURL();
+  }
+  String url = mode.equals("download") ? base+"/cgi/Microarray/ViewFile.cgi?action=download&FILE_NAME=matrix_output"
+	: base+"/cgi/ManageTable.cgi?TABLE_NAME="+table+"&output_mode=tsv";
+
+  SBEAMSClient client = new SBEAMSClient(user, password, base);
+  client.setRequestPolicy(null);
+  client.setMetrics(new SBEAMSMetrics());
+  SBEAMSLoadTest test = new SBEAMSLoadTest(client, url, mode);
+  // warm up the login, connections and JIT before measuring
+  test.run(1, Math.min(requests, 5));
+
+  System.out.println(client.getTransport().getName()+", mode "+mode+", "+url);
+  System.out.println("  conc requests errors     req/s  "+(mode.equals("download") ? "   bytes/s" : "    rows/s")+
+					 "   p50 ms   p90 ms   p99 ms   max ms  limit");
+  for (int m=0;m<levels.length;m++)
+	System.out.println(test.run(Integer.parseInt(levels[m].trim()), requests));
+  if (server != null)
+	server.stop();
+  System.exit(0);
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSLoadTest
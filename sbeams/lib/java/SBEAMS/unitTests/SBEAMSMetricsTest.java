@@ -0,0 +1,63 @@
+// SBEAMSMetricsTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import SBEAMS.SBEAMSMetrics;
+
+//--------------------------------------------------------------------------------------
+public class SBEAMSMetricsTest extends TestCase {
+
+//------------------------------------------------------------------------------
+public SBEAMSMetricsTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testHistogram () throws Exception
+{
+  System.out.println ("testHistogram");
+  SBEAMSMetrics.Histogram histogram = new SBEAMSMetrics.Histogram();
+  for (int m=1;m<=1000;m++)
+	histogram.record(m);
+  assertTrue (histogram.getCount() == 1000);
+  assertTrue (histogram.getMax() == 1000);
+  assertTrue (Math.abs(histogram.getMean()-500.5) < 0.001);
+  long p50 = histogram.getPercentile(0.5);
+  long p99 = histogram.getPercentile(0.99);
+  assertTrue (p50 >= 500 && p50 <= 500*1.07);
+  assertTrue (p99 >= 990 && p99 <= 1000);
+  // exact below 16ms
+  SBEAMSMetrics.Histogram small = new SBEAMSMetrics.Histogram();
+  small.record(3);
+  small.record(7);
+  assertTrue (small.getPercentile(0.5) == 3);
+  assertTrue (small.getPercentile(1.0) == 7);
+  small.record(5000000000L);
+  assertTrue (small.getPercentile(1.0) == 5000000000L);
+}
+//--------------------------------------------------------------------------------------
+public void testEndpoints () throws Exception
+{
+  System.out.println ("testEndpoints");
+  SBEAMSMetrics metrics = new SBEAMSMetrics();
+  metrics.recordCacheHit("/cgi/ManageTable.cgi?TABLE_NAME=organism");
+  metrics.recordCacheHit("/cgi/ManageTable.cgi?TABLE_NAME=organism");
+  metrics.recordCacheHit("/cgi/main.cgi");
+  assertTrue (metrics.getEndpoints().length == 2);
+  assertTrue (metrics.getCacheHitCount() == 3);
+  assertTrue (metrics.getEndpoint("/cgi/main.cgi").getCacheHitCount() == 1);
+  assertTrue (metrics.describeEndpoint("/cgi/main.cgi").indexOf("cacheHits=1") >= 0);
+  assertTrue (metrics.describeEndpoint("/missing") == null);
+  metrics.reset();
+  assertTrue (metrics.getEndpoints().length == 0);
+  assertTrue (metrics.getRequestCount() == 0);
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSMetricsTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSMetricsTest
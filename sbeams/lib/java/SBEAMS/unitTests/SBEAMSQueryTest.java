@@ -0,0 +1,124 @@
+// SBEAMSQueryTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.util.*;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+public class SBEAMSQueryTest extends TestCase {
+
+  private SBEAMSStandInServer server;
+  private SBEAMSClient client;
+  private String url;
+
+//------------------------------------------------------------------------------
+public SBEAMSQueryTest (String name) 
+{
+  super (name);
+}
+//------------------------------------------------------------------------------
+public void setUp () throws Exception
+{
+  server = new SBEAMSStandInServer();
+  server.addUser("tester", "secret");
+  server.addTable("MA_condition", 250);
+  server.start();
+  client = new SBEAMSClient("tester", "secret", server.getBaseURL());
+  client.setMetrics(null);
+  url = server.getBaseURL()+"/cgi/Microarray/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv";
+}
+//------------------------------------------------------------------------------
+public void tearDown () throws Exception
+{
+  server.stop();
+}
+//--------------------------------------------------------------------------------------
+public void testParams () throws Exception
+{
+  System.out.println ("testParams");
+  SBEAMSQuery query = client.query(url).alias("name", "C.name")
+	.where("name", "<>", "O'Brien").whereIn("organism_id", new String[] {"2", "3"})
+	.whereNotNull("value").orderBy("name", false).limit(5);
+  assertEquals ("C.name != 'O''Brien' AND organism_id IN ('2','3') AND value IS NOT NULL",
+				query.getWhereClause());
+  String params = query.getParams();
+  assertTrue (params.indexOf("orderby_clause=C.name+DESC") != -1);
+  assertTrue (params.endsWith("&rs_page_size=5&rs_page_number=1"));
+
+  // ManageTable would refuse this value, so it is filtered here and the limit with it
+  query.where("name", "=", "last update");
+  assertEquals ("C.name != 'O''Brien' AND organism_id IN ('2','3') AND value IS NOT NULL",
+				query.getWhereClause());
+  assertTrue (query.getParams().indexOf("rs_page_size") == -1);
+
+  assertEquals ("", client.query("http://localhost/cgi/Other.cgi").where("a", "=", "1").getParams());
+  try {
+	query.where("name", "~", "x");
+	fail ("expected the unknown operator to be refused");
+  } catch (IllegalArgumentException e) {
+  }
+}
+//--------------------------------------------------------------------------------------
+public void testPushdown () throws Exception
+{
+  System.out.println ("testPushdown");
+  SBEAMSQuery.Cursor cursor = client.query(url).select(new String[] {"name", "MA_condition_id"})
+	.where("organism_id", "=", "3").where("MA_condition_id", ">=", "100")
+	.orderBy("MA_condition_id", false).limit(10).open();
+  assertTrue (cursor.getHeaders().length == 2);
+  int count = 0;
+  int previous = Integer.MAX_VALUE;
+  while (cursor.next()) {
+	int id = Integer.parseInt(cursor.getField(1));
+	assertTrue (id >= 100 && id < previous && id%7 == 3);
+	assertEquals ("MA_condition_"+id, cursor.getField("name"));
+	previous = id;
+	count++;
+  }
+  assertTrue (count == 10);
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 1);
+
+  Hashtable hash = client.query(url).where("MA_condition_id", "<", "4").fetchHash("name", "organism_id");
+  assertTrue (hash.size() == 3);
+  assertEquals ("2", hash.get("MA_condition_2"));
+  assertTrue (client.query(url).fetchColumn("no_such_column") == null);
+}
+//--------------------------------------------------------------------------------------
+public void testClientSide () throws Exception
+{
+  System.out.println ("testClientSide");
+  // LIKE and IN are evaluated here when the server is not given them
+  SBEAMSQuery query = client.query(url).setPushdown(false)
+	.where("name", "LIKE", "ma_condition_1_").whereIn("organism_id", new String[] {"1", "4", "5"})
+	.orderBy("value", false).limit(3);
+  assertEquals ("", query.getParams());
+  SBEAMSQuery.Cursor cursor = query.open();
+  int count = 0;
+  double previous = Double.MAX_VALUE;
+  while (cursor.next()) {
+	int id = Integer.parseInt(cursor.getField("MA_condition_id"));
+	double value = Double.parseDouble(cursor.getField("value"));
+	assertTrue (id >= 10 && id <= 19);
+	assertTrue ("145".indexOf(cursor.getField("organism_id")) != -1);
+	assertTrue (value <= previous);
+	previous = value;
+	count++;
+  }
+  assertTrue (count == 3);
+
+  String[] names = client.query(url).setPushdown(false).whereNull("value").fetchColumn("name");
+  assertTrue (names.length == 0);
+  names = client.query(url).setPushdown(false).where("MA_condition_id", ">", "240").limit(4).fetchColumn("name");
+  assertTrue (names.length == 4);
+  assertEquals ("MA_condition_241", names[0]);
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSQueryTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSQueryTest
@@ -0,0 +1,162 @@
+// SBEAMSRequestPolicyTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+public class SBEAMSRequestPolicyTest extends TestCase {
+
+  // fails the first failures calls, sleeping slowMillis on call number slowCall
+  private static class Attempt implements Callable {
+	AtomicInteger calls = new AtomicInteger();
+	int failures;
+	IOException error;
+	int slowCall = -1;
+	long slowMillis = 0;
+	Attempt (int failures, IOException error) {
+	  this.failures = failures;
+	  this.error = error;
+	}
+	public Object call() throws Exception {
+	  int call = calls.incrementAndGet();
+	  if (call == slowCall)
+		Thread.sleep(slowMillis);
+	  if (call <= failures)
+		throw error;
+	  return new Response(call);
+	}
+  } //Attempt class
+
+  private static class Response extends TransportResponse {
+	int call;
+	Response (int call) {
+	  this.call = call;
+	}
+	public int getStatusCode() { return 200; }
+	public String getHeaderField(String name) { return null; }
+	public InputStream getInputStream() { return new ByteArrayInputStream(new byte[0]); }
+	public String getProtocol() { return "test"; }
+	public void disconnect() { }
+  } //Response class
+
+//------------------------------------------------------------------------------
+public SBEAMSRequestPolicyTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testRetry () throws Exception
+{
+  System.out.println ("testRetry");
+  SBEAMSRequestPolicy policy = new SBEAMSRequestPolicy();
+  policy.setRetry(3, 1, 5);
+  Attempt attempt = new Attempt(2, new IOException("reset"));
+  assertTrue (((Response)policy.execute(attempt)).call == 3);
+  assertTrue (policy.getRetryCount() == 2);
+
+  attempt = new Attempt(5, new HttpStatusException(503, "x"));
+  try {
+	policy.execute(attempt);
+	fail ("expected the last failure after three attempts");
+  } catch (HttpStatusException e) {
+	assertTrue (attempt.calls.get() == 3);
+  }
+}
+//--------------------------------------------------------------------------------------
+public void testNoRetryOnClientError () throws Exception
+{
+  System.out.println ("testNoRetryOnClientError");
+  SBEAMSRequestPolicy policy = new SBEAMSRequestPolicy();
+  policy.setRetry(3, 1, 5);
+  Attempt attempt = new Attempt(1, new HttpStatusException(404, "x"));
+  try {
+	policy.execute(attempt);
+	fail ("expected the 404");
+  } catch (HttpStatusException e) {
+	assertTrue (attempt.calls.get() == 1);
+  }
+}
+//--------------------------------------------------------------------------------------
+public void testCircuitBreaker () throws Exception
+{
+  System.out.println ("testCircuitBreaker");
+  SBEAMSRequestPolicy policy = new SBEAMSRequestPolicy();
+  policy.setRetry(1, 1, 1);
+  policy.setCircuitBreaker(2, 200);
+  Attempt attempt = new Attempt(2, new IOException("refused"));
+  for (int m=0;m<2;m++) {
+	try {
+	  policy.execute(attempt);
+	  fail ("expected a failure");
+	} catch (IOException e) {
+	}
+  }
+  assertTrue (policy.isCircuitOpen());
+  try {
+	policy.execute(attempt);
+	fail ("expected to fail fast");
+  } catch (IOException e) {
+	assertTrue (attempt.calls.get() == 2);
+	assertTrue (policy.getRejectedCount() == 1);
+  }
+  Thread.sleep(250);
+  // the trial request closes the circuit again
+  assertTrue (policy.execute(attempt) != null);
+  assertTrue (!policy.isCircuitOpen());
+}
+//--------------------------------------------------------------------------------------
+public void testCancelledReadsKeepCircuitClosed () throws Exception
+{
+  System.out.println ("testCancelledReadsKeepCircuitClosed");
+  SBEAMSRequestPolicy policy = new SBEAMSRequestPolicy();
+  policy.setRetry(3, 1, 1);
+  policy.setCircuitBreaker(2, 200);
+  Attempt attempt = new Attempt(4, new InterruptedIOException("cancelled"));
+  for (int m=0;m<4;m++) {
+	Thread.currentThread().interrupt();
+	try {
+	  policy.execute(attempt);
+	  fail ("expected the cancelled read to fail");
+	} catch (InterruptedIOException e) {
+	} finally {
+	  Thread.interrupted();
+	}
+  }
+  // neither retried nor counted against the server
+  assertTrue (attempt.calls.get() == 4);
+  assertTrue (!policy.isCircuitOpen());
+  assertTrue (policy.execute(attempt) != null);
+}
+//--------------------------------------------------------------------------------------
+public void testHedge () throws Exception
+{
+  System.out.println ("testHedge");
+  SBEAMSRequestPolicy policy = new SBEAMSRequestPolicy();
+  policy.setHedgePercentile(0.9);
+  policy.setHedgeMinSamples(5);
+  Attempt attempt = new Attempt(0, null);
+  for (int m=0;m<5;m++)
+	policy.execute(attempt);
+  assertTrue (policy.getHedgeCount() == 0);
+
+  attempt.slowCall = 6;
+  attempt.slowMillis = 2000;
+  long start = System.currentTimeMillis();
+  Response response = (Response)policy.execute(attempt);
+  assertTrue (response.call == 7);
+  assertTrue (System.currentTimeMillis()-start < 1000);
+  assertTrue (policy.getHedgeCount() == 1);
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSRequestPolicyTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSRequestPolicyTest
@@ -0,0 +1,138 @@
+// SBEAMSResolverTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+public class SBEAMSResolverTest extends TestCase {
+
+  private SBEAMSStandInServer server;
+  private SBEAMSClient client;
+  private byte[] data;
+  private String uri;
+
+//------------------------------------------------------------------------------
+public SBEAMSResolverTest (String name) 
+{
+  super (name);
+}
+//------------------------------------------------------------------------------
+public void setUp () throws Exception
+{
+  data = new byte[100000];
+  for (int m=0;m<data.length;m++)
+	data[m] = (byte)(m*31);
+  server = new SBEAMSStandInServer();
+  server.addUser("tester", "secret");
+  server.addFile("matrix_output", data);
+  server.start();
+  client = new SBEAMSClient("tester", "secret", server.getBaseURL());
+  client.setMetrics(null);
+  uri = "sbeamsIndirect://"+server.getBaseURL().substring("http://".length())+
+	"/cgi/Microarray/ViewFile.cgi?action=read&FILE_NAME=matrix_output";
+}
+//------------------------------------------------------------------------------
+public void tearDown () throws Exception
+{
+  server.stop();
+}
+//------------------------------------------------------------------------------
+private static byte[] readAll (InputStream in) throws IOException
+{
+  ByteArrayOutputStream out = new ByteArrayOutputStream();
+  byte[] buffer = new byte[4096];
+  int n;
+  while ((n = in.read(buffer)) != -1)
+	out.write(buffer, 0, n);
+  in.close();
+  return out.toByteArray();
+}
+//------------------------------------------------------------------------------
+private boolean sameAs (byte[] read, int offset)
+{
+  for (int m=0;m<read.length;m++) {
+	if (read[m] != data[offset+m])
+	  return false;
+  }
+  return true;
+}
+//--------------------------------------------------------------------------------------
+public void testToURL () throws Exception
+{
+  System.out.println ("testToURL");
+  assertEquals ("http://db/sbeams/tmp/x.xsd", SBEAMSResolver.toURL("sbeamsIndirect://db/sbeams/tmp/x.xsd"));
+  assertEquals ("http://db:8080/halo/DataFetcher.py", SBEAMSResolver.toURL("httpIndirect://db:8080/halo/DataFetcher.py"));
+  assertEquals ("https://db/x", SBEAMSResolver.toURL("https://db/x"));
+  assertTrue (SBEAMSResolver.toURL("/tmp/matrix_output") == null);
+  assertTrue (!SBEAMSResolver.isRemote("C:\\data\\x.mrna"));
+}
+//--------------------------------------------------------------------------------------
+public void testLocal () throws Exception
+{
+  System.out.println ("testLocal");
+  File file = File.createTempFile("resolver", ".mrna");
+  file.deleteOnExit();
+  FileOutputStream out = new FileOutputStream(file);
+  out.write(data);
+  out.close();
+  SBEAMSResolver resolver = new SBEAMSResolver();
+  assertTrue (readAll(resolver.open(file.getPath())).length == data.length);
+  byte[] range = readAll(resolver.open(file.getPath(), 5000, 300));
+  assertTrue (range.length == 300 && sameAs(range, 5000));
+
+  ReadableByteChannel channel = resolver.openChannel(file.getPath(), 99990, -1);
+  ByteBuffer buffer = ByteBuffer.allocate(100);
+  while (channel.read(buffer) != -1);
+  channel.close();
+  assertTrue (buffer.position() == 10);
+  assertTrue (resolver.getClient() == null);
+}
+//--------------------------------------------------------------------------------------
+public void testRemoteRanges () throws Exception
+{
+  System.out.println ("testRemoteRanges");
+  SBEAMSResolver resolver = new SBEAMSResolver(client);
+  byte[] all = readAll(resolver.open(uri));
+  assertTrue (all.length == data.length && sameAs(all, 0));
+
+  byte[] range = readAll(resolver.open(uri, 70000, 1000));
+  assertTrue (range.length == 1000 && sameAs(range, 70000));
+  byte[] tail = readAll(resolver.open(uri, 99000, -1));
+  assertTrue (tail.length == 1000 && sameAs(tail, 99000));
+  assertTrue (readAll(resolver.open(uri, 200000, 10)).length == 0);
+
+  // a server that ignores the Range sends everything, and the front is skipped here
+  server.setRangeSupport(false);
+  range = readAll(resolver.open(uri, 70000, 1000));
+  assertTrue (range.length == 1000 && sameAs(range, 70000));
+  assertTrue (server.getLoginCount() == 1);
+}
+//--------------------------------------------------------------------------------------
+public void testSharedCache () throws Exception
+{
+  System.out.println ("testSharedCache");
+  File directory = File.createTempFile("resolver", "cache");
+  directory.delete();
+  SBEAMSResponseCache cache = new SBEAMSResponseCache(directory, 1<<24);
+  cache.setDefaultTTL(600);
+  client.setResponseCache(cache);
+  SBEAMSResolver resolver = new SBEAMSResolver(client);
+  readAll(resolver.open(uri));
+  long requests = server.getRequestCount("ViewFile.cgi");
+  byte[] range = readAll(resolver.open(uri, 1234, 5678));
+  assertTrue (range.length == 5678 && sameAs(range, 1234));
+  assertTrue (server.getRequestCount("ViewFile.cgi") == requests);
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSResolverTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSResolverTest
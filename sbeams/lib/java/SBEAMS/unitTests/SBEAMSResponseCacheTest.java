@@ -0,0 +1,140 @@
+// SBEAMSResponseCacheTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+// The on-disk response cache in front of SBEAMSStandInServer
+public class SBEAMSResponseCacheTest extends TestCase {
+
+  private SBEAMSStandInServer server;
+  private SBEAMSClient client;
+  private SBEAMSResponseCache cache;
+  private File directory;
+  private String base;
+
+//------------------------------------------------------------------------------
+public SBEAMSResponseCacheTest (String name) 
+{
+  super (name);
+}
+//------------------------------------------------------------------------------
+public void setUp () throws Exception
+{
+  server = new SBEAMSStandInServer();
+  server.addUser("tester", "secret");
+  server.addTable("MA_condition", 200);
+  server.addTable("MA_array", 200);
+  server.addTable("MA_other", 10);
+  server.start();
+  base = server.getBaseURL();
+  directory = File.createTempFile("sbeamsCache", "");
+  directory.delete();
+  client = new SBEAMSClient("tester", "secret", base);
+  client.setMetrics(null);
+}
+//------------------------------------------------------------------------------
+public void tearDown () throws Exception
+{
+  server.stop();
+  if (cache != null)
+	cache.clear();
+  directory.delete();
+}
+//--------------------------------------------------------------------------------------
+private String table (String name)
+{
+  return base+"/cgi/ManageTable.cgi?TABLE_NAME="+name+"&output_mode=tsv";
+}
+//--------------------------------------------------------------------------------------
+private int bodies ()
+{
+  String[] names = directory.list();
+  int count = 0;
+  for (int m=0;names != null && m<names.length;m++) {
+	if (names[m].endsWith(".body"))
+	  count++;
+  }
+  return count;
+}
+//--------------------------------------------------------------------------------------
+public void testTTL () throws Exception
+{
+  System.out.println ("testTTL");
+  cache = new SBEAMSResponseCache(directory, 1024*1024);
+  cache.setTableTTL("MA_condition", 1);
+  client.setResponseCache(cache);
+
+  String page = client.fetchSbeamsPage(table("MA_condition"));
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 1);
+  assertEquals (page, client.fetchSbeamsPage(table("MA_condition")));
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 1);
+
+  // tables without a TTL are not kept
+  client.fetchSbeamsPage(table("MA_other"));
+  client.fetchSbeamsPage(table("MA_other"));
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 3);
+  assertTrue (bodies() == 1);
+
+  // once stale the entry goes back to the server
+  Thread.sleep(1100);
+  assertEquals (page, client.fetchSbeamsPage(table("MA_condition")));
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 4);
+}
+//--------------------------------------------------------------------------------------
+public void testEviction () throws Exception
+{
+  System.out.println ("testEviction");
+  // room for one table, not two
+  SBEAMSClient sizer = new SBEAMSClient("tester", "secret", base);
+  int size = sizer.fetchSbeamsPage(table("MA_condition")).getBytes("UTF-8").length;
+  cache = new SBEAMSResponseCache(directory, size*3/2);
+  cache.setDefaultTTL(3600);
+  client.setResponseCache(cache);
+  long before = server.getRequestCount("ManageTable.cgi");
+
+  client.fetchSbeamsPage(table("MA_condition"));
+  Thread.sleep(1100);
+  client.fetchSbeamsPage(table("MA_array"));
+  assertTrue (bodies() == 1);
+  assertTrue (server.getRequestCount("ManageTable.cgi") == before+2);
+
+  // the older table was the one evicted
+  client.fetchSbeamsPage(table("MA_array"));
+  assertTrue (server.getRequestCount("ManageTable.cgi") == before+2);
+  client.fetchSbeamsPage(table("MA_condition"));
+  assertTrue (server.getRequestCount("ManageTable.cgi") == before+3);
+}
+//--------------------------------------------------------------------------------------
+public void testTruncatedRead () throws Exception
+{
+  System.out.println ("testTruncatedRead");
+  cache = new SBEAMSResponseCache(directory, 1024*1024);
+  cache.setTableTTL("MA_condition", 3600);
+  client.setResponseCache(cache);
+
+  // a body read only in part is never committed
+  InputStream in = client.openStream(table("MA_condition"), "");
+  assertTrue (in.read(new byte[100]) > 0);
+  in.close();
+  assertTrue (bodies() == 0);
+  client.fetchSbeamsPage(table("MA_condition"), 5);
+  assertTrue (bodies() == 0);
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 2);
+
+  String page = client.fetchSbeamsPage(table("MA_condition"));
+  assertTrue (bodies() == 1);
+  assertEquals (page, client.fetchSbeamsPage(table("MA_condition")));
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 3);
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSResponseCacheTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSResponseCacheTest
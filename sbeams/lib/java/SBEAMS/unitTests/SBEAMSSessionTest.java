@@ -0,0 +1,88 @@
+// SBEAMSSessionTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import SBEAMS.SBEAMSSession;
+
+//--------------------------------------------------------------------------------------
+public class SBEAMSSessionTest extends TestCase {
+
+//------------------------------------------------------------------------------
+public SBEAMSSessionTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testParseExpiry () throws Exception
+{
+  System.out.println ("testParseExpiry");
+  long expires = SBEAMSSession.parseExpiry("SBEAMSName=abc; path=/; expires=Fri, 21-Jan-2005 18:00:00 GMT");
+  Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+  calendar.setTimeInMillis(expires);
+  assertTrue (calendar.get(Calendar.YEAR) == 2005);
+  assertTrue (calendar.get(Calendar.MONTH) == Calendar.JANUARY);
+  assertTrue (calendar.get(Calendar.DATE) == 21);
+  assertTrue (calendar.get(Calendar.HOUR_OF_DAY) == 18);
+  assertTrue (SBEAMSSession.parseExpiry("SBEAMSName=abc; expires=Mon, 04-Jly-2005 01:02:03") ==
+			  SBEAMSSession.parseExpiry("SBEAMSName=abc; expires=Mon, 04-Jul-2005 01:02:03"));
+  assertTrue (SBEAMSSession.parseExpiry("SBEAMSName=abc; path=/") == 0);
+}
+//--------------------------------------------------------------------------------------
+public void testValidity () throws Exception
+{
+  System.out.println ("testValidity");
+  SBEAMSSession session = new SBEAMSSession();
+  assertTrue (!session.isValid());
+  // a cookie without an expiry is only trusted for a while
+  session.setCookie("SBEAMSName=abc; path=/");
+  assertTrue (session.isValid());
+  assertTrue (session.getExpiresAt() > System.currentTimeMillis() &&
+			  session.getExpiresAt() <= System.currentTimeMillis()+1800*1000L);
+  session.setCookie("SBEAMSName=abc; path=/; expires=Fri, 21-Jan-2005 18:00:00 GMT");
+  assertTrue (!session.isValid());
+  session.setCookie(cookieExpiringIn(3600));
+  assertTrue (session.isValid());
+  session.invalidate();
+  assertTrue (!session.isValid());
+}
+//--------------------------------------------------------------------------------------
+public void testRefresh () throws Exception
+{
+  System.out.println ("testRefresh");
+  final SBEAMSSession session = new SBEAMSSession();
+  final CountDownLatch refreshed = new CountDownLatch(1);
+  final boolean[] locked = new boolean[1];
+  session.setCookie(cookieExpiringIn(2));
+  session.setRefresher(new Callable() {
+	  public Object call() throws Exception {
+		// requests logging in take the same lock
+		locked[0] = Thread.holdsLock(session);
+		session.setCookie(cookieExpiringIn(3600));
+		refreshed.countDown();
+		return Boolean.TRUE;
+	  }
+	});
+  assertTrue (refreshed.await(5, TimeUnit.SECONDS));
+  assertTrue (locked[0]);
+  assertTrue (session.getExpiresAt() > System.currentTimeMillis()+60000);
+}
+//--------------------------------------------------------------------------------------
+private static String cookieExpiringIn (int seconds)
+{
+  SimpleDateFormat format = new SimpleDateFormat("EEE, dd-MMM-yyyy HH:mm:ss", Locale.US);
+  format.setTimeZone(TimeZone.getTimeZone("GMT"));
+  return "SBEAMSName=abc; path=/; expires="+
+	format.format(new Date(System.currentTimeMillis()+seconds*1000L))+" GMT";
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSSessionTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSSessionTest
@@ -0,0 +1,574 @@
+// SBEAMSStandInServer.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.*;
+import java.util.zip.*;
+
+//--------------------------------------------------------------------------------------
+// An in-process stand-in for an SBEAMS server, enough of one to test and load the client
+// without a live instance.  It answers
+//   main.cgi        logins, setting an SBEAMSName cookie that expires
+//   ManageTable.cgi tab-delimited tables, with where_clause (col op 'value' joined by
+//                   AND), orderby_clause, rs_page_size and rs_page_number; rows whose
+//                   record_status is D are left out as ManageTable does
+//   ViewFile.cgi    FILE_NAME downloads, honouring Range and If-Range
+// Tables go out gzipped to clients that accept it, or deflated, zlib-wrapped or raw, when
+// the server is set to.
+// Every other request without a live cookie gets the login page.  Tables are either given
+// outright or generated on the fly from a row count, and every response can be delayed
+// to mimic a loaded server.
+public class SBEAMSStandInServer {
+
+  public static final int GZIP = 0;
+  public static final int DEFLATE = 1;
+  // raw deflate data labelled deflate, as some servers send
+  public static final int RAW_DEFLATE = 2;
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private Hashtable users = new Hashtable();
+  private ConcurrentHashMap sessions = new ConcurrentHashMap();
+  private ConcurrentHashMap tables = new ConcurrentHashMap();
+  private ConcurrentHashMap files = new ConcurrentHashMap();
+  private volatile long latency = 0;
+  private volatile long jitter = 0;
+  private volatile long sessionLifetime = 3600;
+  private volatile boolean rangeSupport = true;
+  private volatile boolean pagingSupport = true;
+  private volatile int compression = GZIP;
+  private volatile int interruptions = 0;
+  private volatile long interruptAfter = 0;
+  private AtomicLong requests = new AtomicLong();
+  private AtomicLong logins = new AtomicLong();
+  private ConcurrentHashMap scriptCounts = new ConcurrentHashMap();
+  private Random random = new Random();
+
+  private static Pattern CONDITION = Pattern.compile("\\s*(?:\\w+\\.)?(\\w+)\\s*(=|!=|<>|>=|<=|>|<)\\s*(?:'((?:[^']|'')*)'|(-?[\\d.]+))\\s*");
+  private static Pattern AND = Pattern.compile("\\s+AND\\s+", Pattern.CASE_INSENSITIVE);
+  private static Pattern COOKIE = Pattern.compile("SBEAMSName=([^;\\s]+)");
+  private static String LOGIN_PAGE = "<HTML><BODY><FORM METHOD=\"post\" ACTION=\"main.cgi\">"+
+	"<INPUT NAME=\"username\"><INPUT TYPE=\"password\" NAME=\"password\">"+
+	"<INPUT TYPE=\"submit\" NAME=\"login\" VALUE=\" Login \"></FORM></BODY></HTML>\n";
+//--------------------------------------------------------------------------------------
+  // A table as ManageTable would print it; rows may be made on demand
+  public static abstract class Table {
+	public abstract String[] getHeaders();
+	public abstract int getRowCount();
+	public abstract String[] getRow(int row);
+  } //Table class
+//--------------------------------------------------------------------------------------
+  private static class FixedTable extends Table {
+	String[] headers;
+	String[][] rows;
+	FixedTable (String[] headers, String[][] rows) {
+	  this.headers = headers;
+	  this.rows = rows;
+	}
+	public String[] getHeaders() { return headers; }
+	public int getRowCount() { return rows.length; }
+	public String[] getRow(int row) { return rows[row]; }
+  } //FixedTable class
+//--------------------------------------------------------------------------------------
+  // name_id, name, organism_id, value, date_created, date_modified, record_status; each
+  // row modified one second after the one before
+  private static class GeneratedTable extends Table {
+	String name;
+	int rowCount;
+	String[] headers;
+	long epoch;
+	GeneratedTable (String name, int rowCount) {
+	  this.name = name;
+	  this.rowCount = rowCount;
+	  headers = new String[] {name+"_id", "name", "organism_id", "value",
+							  "date_created", "date_modified", "record_status"};
+	  epoch = new GregorianCalendar(2005, Calendar.JANUARY, 1).getTimeInMillis();
+	}
+	public String[] getHeaders() { return headers; }
+	public int getRowCount() { return rowCount; }
+	public String[] getRow(int row) {
+	  SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	  return new String[] {String.valueOf(row+1), name+"_"+(row+1), String.valueOf(row%7+1),
+						   String.valueOf((row*37%10000)/100.0), format.format(new Date(epoch)),
+						   format.format(new Date(epoch+row*1000L)), "N"};
+	}
+  } //GeneratedTable class
+//--------------------------------------------------------------------------------------
+  // Listens on a free port of the loopback interface
+  public SBEAMSStandInServer () throws IOException
+  {
+	server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("localhost"), 0), 0);
+	executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+		  Thread t = new Thread(r, "SBEAMSStandInServer");
+		  t.setDaemon(true);
+		  return t;
+		}
+	  });
+	server.setExecutor(executor);
+	server.createContext("/sbeams/", new HttpHandler() {
+		// an IOException is left to the server, which drops the connection
+		public void handle(HttpExchange exchange) throws IOException {
+		  try {
+			dispatch(exchange);
+		  } catch (RuntimeException e) {
+			e.printStackTrace();
+		  }
+		  exchange.close();
+		}
+	  });
+  }
+//--------------------------------------------------------------------------------------
+  public void start ()
+  {
+	server.start();
+  }
+//--------------------------------------------------------------------------------------
+  public void stop ()
+  {
+	server.stop(0);
+	executor.shutdownNow();
+  }
+//--------------------------------------------------------------------------------------
+  public String getBaseURL ()
+  {
+	return "http://localhost:"+server.getAddress().getPort()+"/sbeams";
+  }
+//--------------------------------------------------------------------------------------
+  public void addUser (String userName, String password)
+  {
+	users.put(userName, password);
+  }
+//--------------------------------------------------------------------------------------
+  public void addTable (String name, String[] headers, String[][] rows)
+  {
+	tables.put(name, new FixedTable(headers, rows));
+  }
+//--------------------------------------------------------------------------------------
+  public void addTable (String name, int rowCount)
+  {
+	tables.put(name, new GeneratedTable(name, rowCount));
+  }
+//--------------------------------------------------------------------------------------
+  public void addTable (String name, Table table)
+  {
+	tables.put(name, table);
+  }
+//--------------------------------------------------------------------------------------
+  public void addFile (String name, byte[] data)
+  {
+	files.put(name, data);
+  }
+//--------------------------------------------------------------------------------------
+  // Every response waits latency milliseconds, give or take up to jitter
+  public void setLatency (long latency, long jitter)
+  {
+	this.latency = latency;
+	this.jitter = jitter;
+  }
+//--------------------------------------------------------------------------------------
+  public void setSessionLifetime (long seconds)
+  {
+	sessionLifetime = seconds;
+  }
+//--------------------------------------------------------------------------------------
+  // Off, ViewFile sends the whole file whatever Range is asked for, as the real CGI does
+  public void setRangeSupport (boolean rangeSupport)
+  {
+	this.rangeSupport = rangeSupport;
+  }
+//--------------------------------------------------------------------------------------
+  // Off, ManageTable ignores rs_page_size and rs_page_number and sends every row
+  public void setPagingSupport (boolean pagingSupport)
+  {
+	this.pagingSupport = pagingSupport;
+  }
+//--------------------------------------------------------------------------------------
+  // GZIP, DEFLATE or RAW_DEFLATE, for clients whose Accept-Encoding allows it
+  public void setCompression (int compression)
+  {
+	this.compression = compression;
+  }
+//--------------------------------------------------------------------------------------
+  // The next count downloads break off after the given number of bytes
+  public void interruptDownloads (int count, long afterBytes)
+  {
+	interruptAfter = afterBytes;
+	interruptions = count;
+  }
+//--------------------------------------------------------------------------------------
+  public long getRequestCount ()
+  {
+	return requests.get();
+  }
+//--------------------------------------------------------------------------------------
+  // Requests for one script, main.cgi or ManageTable.cgi for instance
+  public long getRequestCount (String script)
+  {
+	AtomicLong count = (AtomicLong)scriptCounts.get(script);
+	return (count == null) ? 0 : count.get();
+  }
+//--------------------------------------------------------------------------------------
+  public long getLoginCount ()
+  {
+	return logins.get();
+  }
+//--------------------------------------------------------------------------------------
+  private void dispatch (HttpExchange exchange) throws IOException
+  {
+	requests.incrementAndGet();
+	String path = exchange.getRequestURI().getPath();
+	String script = path.substring(path.lastIndexOf('/')+1);
+	scriptCounts.putIfAbsent(script, new AtomicLong());
+	((AtomicLong)scriptCounts.get(script)).incrementAndGet();
+	Map params = readParams(exchange);
+	delay();
+
+	if (script.equals("main.cgi")) {
+	  login(exchange, params);
+	  return;
+	}
+	if (!loggedIn(exchange)) {
+	  send(exchange, 200, "text/html", LOGIN_PAGE);
+	  return;
+	}
+	if (script.equals("ManageTable.cgi"))
+	  manageTable(exchange, params);
+	else if (script.equals("ViewFile.cgi"))
+	  viewFile(exchange, params);
+	else
+	  send(exchange, 404, "text/html", "<HTML><BODY>Not Found</BODY></HTML>\n");
+  }
+//--------------------------------------------------------------------------------------
+  private void delay ()
+  {
+	long wait = latency;
+	if (jitter > 0)
+	  wait += (long)((random.nextDouble()*2-1)*jitter);
+	if (wait <= 0)
+	  return;
+	try {
+	  Thread.sleep(wait);
+	} catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	}
+  }
+//--------------------------------------------------------------------------------------
+  // Query string and form body together
+  private static Map readParams (HttpExchange exchange) throws IOException
+  {
+	Map params = new HashMap();
+	parseParams(exchange.getRequestURI().getRawQuery(), params);
+	ByteArrayOutputStream body = new ByteArrayOutputStream();
+	InputStream in = exchange.getRequestBody();
+	byte[] buf = new byte[4096];
+	int n;
+	while ((n = in.read(buf)) != -1)
+	  body.write(buf, 0, n);
+	parseParams(body.toString("UTF-8"), params);
+	return params;
+  }
+//--------------------------------------------------------------------------------------
+  private static void parseParams (String encoded, Map params) throws IOException
+  {
+	if (encoded == null || encoded.length() == 0)
+	  return;
+	String[] pairs = encoded.split("&");
+	for (int m=0;m<pairs.length;m++) {
+	  int eq = pairs[m].indexOf('=');
+	  if (eq <= 0)
+		continue;
+	  params.put(URLDecoder.decode(pairs[m].substring(0, eq), "UTF-8"),
+				 URLDecoder.decode(pairs[m].substring(eq+1), "UTF-8"));
+	}
+  }
+//--------------------------------------------------------------------------------------
+  private boolean loggedIn (HttpExchange exchange)
+  {
+	String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+	if (cookie == null)
+	  return false;
+	Matcher match = COOKIE.matcher(cookie);
+	if (!match.find())
+	  return false;
+	Long expires = (Long)sessions.get(match.group(1));
+	return expires != null && expires.longValue() > System.currentTimeMillis();
+  }
+//--------------------------------------------------------------------------------------
+  private void login (HttpExchange exchange, Map params) throws IOException
+  {
+	String user = (String)params.get("username");
+	String password = (String)params.get("password");
+	if (user != null && password != null && password.equals(users.get(user))) {
+	  logins.incrementAndGet();
+	  String token = Long.toHexString(random.nextLong())+Long.toHexString(System.nanoTime());
+	  long expires = System.currentTimeMillis()+sessionLifetime*1000;
+	  sessions.put(token, new Long(expires));
+	  SimpleDateFormat format = new SimpleDateFormat("EEE, dd-MMM-yyyy HH:mm:ss", Locale.US);
+	  format.setTimeZone(TimeZone.getTimeZone("GMT"));
+	  exchange.getResponseHeaders().add("Set-Cookie", "SBEAMSName="+token+"; path=/; expires="+
+										format.format(new Date(expires))+" GMT");
+	  send(exchange, 200, "text/html", "<HTML><BODY>Welcome "+user+"</BODY></HTML>\n");
+	  return;
+	}
+	send(exchange, 200, "text/html", LOGIN_PAGE);
+  }
+//--------------------------------------------------------------------------------------
+  private void manageTable (HttpExchange exchange, Map params) throws IOException
+  {
+	Table table = (Table)tables.get(String.valueOf(params.get("TABLE_NAME")));
+	if (table == null) {
+	  send(exchange, 200, "text/html", "<HTML><BODY>ERROR: unknown table</BODY></HTML>\n");
+	  return;
+	}
+	String[] headers = table.getHeaders();
+	List conditions;
+	int[] order;
+	try {
+	  conditions = parseWhere((String)params.get("where_clause"), headers);
+	  order = parseOrder((String)params.get("orderby_clause"), headers);
+	} catch (IllegalArgumentException e) {
+	  send(exchange, 500, "text/html", "<HTML><BODY>ERROR: "+e.getMessage()+"</BODY></HTML>\n");
+	  return;
+	}
+	int status = indexOf(headers, "record_status");
+	int pageSize = pagingSupport ? intParam(params, "rs_page_size", Integer.MAX_VALUE) : Integer.MAX_VALUE;
+	int pageNumber = pagingSupport ? intParam(params, "rs_page_number", 1) : 1;
+	long skip = (long)pageSize*(pageNumber-1);
+
+	Writer out = startBody(exchange, "text/tab-separated-values");
+	try {
+	  writeRow(out, headers);
+	  Iterator rows = (order == null) ? null : sortedRows(table, order);
+	  int next = 0;
+	  long matched = 0;
+	  int written = 0;
+	  while (written < pageSize) {
+		String[] row;
+		if (rows != null) {
+		  if (!rows.hasNext())
+			break;
+		  row = (String[])rows.next();
+		} else {
+		  if (next >= table.getRowCount())
+			break;
+		  row = table.getRow(next++);
+		}
+		if ((status != -1 && "D".equals(row[status])) || !matches(row, conditions))
+		  continue;
+		if (matched++ < skip)
+		  continue;
+		writeRow(out, row);
+		written++;
+	  }
+	} finally {
+	  out.close();
+	}
+  }
+//--------------------------------------------------------------------------------------
+  private static int intParam (Map params, String name, int otherwise)
+  {
+	try {
+	  return Integer.parseInt((String)params.get(name));
+	} catch (NumberFormatException e) {
+	  return otherwise;
+	}
+  }
+//--------------------------------------------------------------------------------------
+  private static int indexOf (String[] headers, String column)
+  {
+	for (int m=0;m<headers.length;m++) {
+	  if (headers[m].equalsIgnoreCase(column))
+		return m;
+	}
+	return -1;
+  }
+//--------------------------------------------------------------------------------------
+  // Each condition is {column index, operator, value}
+  private static List parseWhere (String where, String[] headers)
+  {
+	List conditions = new ArrayList();
+	if (where == null || where.trim().length() == 0)
+	  return conditions;
+	String[] terms = AND.split(where.trim());
+	for (int m=0;m<terms.length;m++) {
+	  Matcher match = CONDITION.matcher(terms[m]);
+	  if (!match.matches())
+		throw new IllegalArgumentException("can't parse where clause term "+terms[m]);
+	  int column = indexOf(headers, match.group(1));
+	  if (column == -1)
+		throw new IllegalArgumentException("no column "+match.group(1));
+	  String value = (match.group(3) != null) ? match.group(3).replaceAll("''", "'") : match.group(4);
+	  conditions.add(new Object[] {new Integer(column), match.group(2), value});
+	}
+	return conditions;
+  }
+//--------------------------------------------------------------------------------------
+  private static boolean matches (String[] row, List conditions)
+  {
+	for (int m=0;m<conditions.size();m++) {
+	  Object[] condition = (Object[])conditions.get(m);
+	  int column = ((Integer)condition[0]).intValue();
+	  String op = (String)condition[1];
+	  int cmp = compare((column < row.length) ? row[column] : "", (String)condition[2]);
+	  boolean ok;
+	  if (op.equals("="))
+		ok = cmp == 0;
+	  else if (op.equals("!=") || op.equals("<>"))
+		ok = cmp != 0;
+	  else if (op.equals(">="))
+		ok = cmp >= 0;
+	  else if (op.equals("<="))
+		ok = cmp <= 0;
+	  else if (op.equals(">"))
+		ok = cmp > 0;
+	  else
+		ok = cmp < 0;
+	  if (!ok)
+		return false;
+	}
+	return true;
+  }
+//--------------------------------------------------------------------------------------
+  // Numerically when both sides are numbers, as text otherwise
+  private static int compare (String a, String b)
+  {
+	try {
+	  return Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+	} catch (NumberFormatException e) {
+	  return a.compareTo(b);
+	}
+  }
+//--------------------------------------------------------------------------------------
+  // Column indexes to sort on, negated and offset by one for DESC; null for no ordering
+  private static int[] parseOrder (String orderBy, String[] headers)
+  {
+	if (orderBy == null || orderBy.trim().length() == 0)
+	  return null;
+	String[] terms = orderBy.trim().split("\\s*,\\s*");
+	int[] order = new int[terms.length];
+	for (int m=0;m<terms.length;m++) {
+	  String[] words = terms[m].split("\\s+");
+	  String name = words[0].substring(words[0].indexOf('.')+1);
+	  int column = indexOf(headers, name);
+	  if (column == -1)
+		throw new IllegalArgumentException("no column "+name);
+	  boolean descending = words.length > 1 && words[1].equalsIgnoreCase("DESC");
+	  order[m] = descending ? -(column+1) : column;
+	}
+	return order;
+  }
+//--------------------------------------------------------------------------------------
+  private static Iterator sortedRows (Table table, final int[] order)
+  {
+	List rows = new ArrayList(table.getRowCount());
+	for (int m=0;m<table.getRowCount();m++)
+	  rows.add(table.getRow(m));
+	Collections.sort(rows, new Comparator() {
+		public int compare(Object a, Object b) {
+		  for (int m=0;m<order.length;m++) {
+			int column = (order[m] < 0) ? -order[m]-1 : order[m];
+			int cmp = SBEAMSStandInServer.compare(((String[])a)[column], ((String[])b)[column]);
+			if (cmp != 0)
+			  return (order[m] < 0) ? -cmp : cmp;
+		  }
+		  return 0;
+		}
+	  });
+	return rows.iterator();
+  }
+//--------------------------------------------------------------------------------------
+  private static void writeRow (Writer out, String[] row) throws IOException
+  {
+	for (int m=0;m<row.length;m++) {
+	  if (m > 0)
+		out.write('\t');
+	  out.write((row[m] == null) ? "" : row[m]);
+	}
+	out.write('\n');
+  }
+//--------------------------------------------------------------------------------------
+  private void viewFile (HttpExchange exchange, Map params) throws IOException
+  {
+	String name = (String)params.get("FILE_NAME");
+	byte[] data = (name == null) ? null : (byte[])files.get(name);
+	if (data == null) {
+	  send(exchange, 500, "text/html", "<HTML><BODY>Couldn't open "+name+"</BODY></HTML>\n");
+	  return;
+	}
+	String etag = "\""+name+"-"+data.length+"-"+Arrays.hashCode(data)+"\"";
+	Headers headers = exchange.getResponseHeaders();
+	headers.add("Content-Type", "application/force-download");
+	headers.add("Content-Disposition", "filename="+name);
+
+	int start = 0;
+	String range = exchange.getRequestHeaders().getFirst("Range");
+	String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+	if (rangeSupport) {
+	  headers.add("ETag", etag);
+	  headers.add("Accept-Ranges", "bytes");
+	  Matcher match = Pattern.compile("bytes=(\\d+)-").matcher((range == null) ? "" : range);
+	  if (match.matches() && (ifRange == null || ifRange.equals(etag))) {
+		start = Integer.parseInt(match.group(1));
+		if (start >= data.length) {
+		  headers.add("Content-Range", "bytes */"+data.length);
+		  exchange.sendResponseHeaders(416, -1);
+		  return;
+		}
+		headers.add("Content-Range", "bytes "+start+"-"+(data.length-1)+"/"+data.length);
+	  }
+	}
+	int end = data.length;
+	boolean interrupt = false;
+	synchronized (this) {
+	  if (interruptions > 0) {
+		interruptions--;
+		interrupt = true;
+		end = (int)Math.min(data.length, start+interruptAfter);
+	  }
+	}
+	exchange.sendResponseHeaders((start > 0) ? 206 : 200, data.length-start);
+	OutputStream out = exchange.getResponseBody();
+	out.write(data, start, end-start);
+	out.flush();
+	if (interrupt && end < data.length)
+	  throw new IOException("download of "+name+" interrupted at "+end+" bytes");
+  }
+//--------------------------------------------------------------------------------------
+  // Compresses the body when the client accepts it, and sends it chunked
+  private Writer startBody (HttpExchange exchange, String contentType) throws IOException
+  {
+	exchange.getResponseHeaders().add("Content-Type", contentType);
+	String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+	String encoding = (compression == GZIP) ? "gzip" : "deflate";
+	boolean compress = accept != null && accept.indexOf(encoding) != -1;
+	if (compress)
+	  exchange.getResponseHeaders().add("Content-Encoding", encoding);
+	exchange.sendResponseHeaders(200, 0);
+	OutputStream out = exchange.getResponseBody();
+	if (compress && compression == GZIP)
+	  out = new GZIPOutputStream(out, 8192);
+	else if (compress)
+	  out = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, compression == RAW_DEFLATE), 8192);
+	return new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 16384);
+  }
+//--------------------------------------------------------------------------------------
+  private static void send (HttpExchange exchange, int status, String contentType, String body)
+	throws IOException
+  {
+	byte[] bytes = body.getBytes("UTF-8");
+	exchange.getResponseHeaders().add("Content-Type", contentType);
+	exchange.sendResponseHeaders(status, bytes.length);
+	OutputStream out = exchange.getResponseBody();
+	out.write(bytes);
+	out.close();
+  }
+//--------------------------------------------------------------------------------------
+} // SBEAMSStandInServer
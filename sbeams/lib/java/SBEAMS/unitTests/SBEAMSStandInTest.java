@@ -0,0 +1,249 @@
+// SBEAMSStandInTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import SBEAMS.*;
+
+//--------------------------------------------------------------------------------------
+// The client end to end against SBEAMSStandInServer, so it can be checked without the
+// live server SBEAMSClientTest needs
+public class SBEAMSStandInTest extends TestCase {
+
+  private SBEAMSStandInServer server;
+  private SBEAMSClient client;
+  private String base;
+
+//------------------------------------------------------------------------------
+public SBEAMSStandInTest (String name) 
+{
+  super (name);
+}
+//------------------------------------------------------------------------------
+public void setUp () throws Exception
+{
+  server = new SBEAMSStandInServer();
+  server.addUser("tester", "secret");
+  server.addTable("MA_condition", 250);
+  server.start();
+  base = server.getBaseURL();
+  client = new SBEAMSClient("tester", "secret", base);
+  client.setMetrics(null);
+}
+//------------------------------------------------------------------------------
+public void tearDown () throws Exception
+{
+  server.stop();
+}
+//--------------------------------------------------------------------------------------
+public void testLoginAndTable () throws Exception
+{
+  System.out.println ("testLoginAndTable");
+  String[] names = client.fetchSbeamsResultSetColumn(base+"/cgi/Microarray/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv",
+													 "name");
+  assertTrue (names.length == 250);
+  assertEquals ("MA_condition_1", names[0]);
+  assertTrue (client.goodCookie());
+  assertTrue (server.getLoginCount() == 1);
+
+  client.fetchSbeamsPage(base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv");
+  assertTrue (server.getLoginCount() == 1);
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 2);
+}
+//--------------------------------------------------------------------------------------
+public void testCompression () throws Exception
+{
+  System.out.println ("testCompression");
+  int[] modes = {SBEAMSStandInServer.GZIP, SBEAMSStandInServer.DEFLATE, SBEAMSStandInServer.RAW_DEFLATE};
+  for (int m=0;m<modes.length;m++) {
+	server.setCompression(modes[m]);
+	SBEAMSClient reader = new SBEAMSClient("tester", "secret", base);
+	reader.setMetrics(null);
+	String[] names = reader.fetchSbeamsResultSetColumn(base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv",
+													   "name");
+	assertTrue (names.length == 250);
+	assertEquals ("MA_condition_250", names[249]);
+	assertTrue (reader.getCompressedBytesRead() > 0);
+	assertTrue (reader.getCompressedBytesRead() < reader.getUncompressedBytesRead());
+  }
+}
+//--------------------------------------------------------------------------------------
+public void testWhereOrderAndPaging () throws Exception
+{
+  System.out.println ("testWhereOrderAndPaging");
+  String url = base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv";
+  ResultSetCursor cursor = client.openResultSet(url, "where_clause=organism_id+%3D+3+AND+MA_condition_id+%3E%3D+100"+
+												"&orderby_clause=MA_condition_id+DESC&rs_page_size=10&rs_page_number=2");
+  int count = 0;
+  int previous = Integer.MAX_VALUE;
+  while (cursor.next()) {
+	int id = Integer.parseInt(cursor.getField("MA_condition_id"));
+	assertTrue (id >= 100 && id < previous);
+	assertEquals ("3", cursor.getField("organism_id"));
+	previous = id;
+	count++;
+  }
+  assertTrue (count == 10);
+
+  ResultSetCursor paged = client.openPagedResultSet(url, 60);
+  count = 0;
+  while (paged.next())
+	assertEquals (String.valueOf(++count), paged.getField(0));
+  assertTrue (count == 250);
+}
+//--------------------------------------------------------------------------------------
+public void testPagingIgnored () throws Exception
+{
+  System.out.println ("testPagingIgnored");
+  server.addTable("MA_exact", 60);
+  server.setPagingSupport(false);
+  String url = base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_exact&output_mode=tsv";
+  ResultSetCursor paged = client.openPagedResultSet(url, 60);
+  int count = 0;
+  while (paged.next())
+	assertEquals (String.valueOf(++count), paged.getField(0));
+  assertTrue (count == 60);
+  // the repeat of page 1 ends the read before any pages are fetched ahead
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 2);
+
+  url = base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv";
+  paged = client.openPagedResultSet(url, 60);
+  count = 0;
+  while (paged.next())
+	assertEquals (String.valueOf(++count), paged.getField(0));
+  assertTrue (count == 250);
+  assertTrue (server.getRequestCount("ManageTable.cgi") == 3);
+}
+//--------------------------------------------------------------------------------------
+public void testRepeatedPages () throws Exception
+{
+  System.out.println ("testRepeatedPages");
+  String[] values = {"a", "b", "x", "x", "x", "x", "c"};
+  String[][] rows = new String[values.length][];
+  for (int m=0;m<values.length;m++)
+	rows[m] = new String[] {values[m]};
+  server.addTable("MA_repeats", new String[] {"value"}, rows);
+  String url = base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_repeats&output_mode=tsv";
+  ResultSetCursor paged = client.openPagedResultSet(url, 2);
+  int count = 0;
+  // pages 2 and 3 are the same, which once paging is confirmed is just data
+  while (paged.next())
+	assertEquals (values[count++], paged.getField("value"));
+  assertTrue (count == values.length);
+}
+//--------------------------------------------------------------------------------------
+public void testPagedReadInBackground () throws Exception
+{
+  System.out.println ("testPagedReadInBackground");
+  final String url = base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv";
+  SBEAMSClient.setMaxParallelRequests(1);
+  try {
+	Future count = client.submitRequest(new Callable() {
+		public Object call() throws Exception {
+		  ResultSetCursor paged = client.openPagedResultSet(url, 20);
+		  int rows = 0;
+		  while (paged.next())
+			rows++;
+		  return Integer.valueOf(rows);
+		}
+	  });
+	assertEquals (Integer.valueOf(250), count.get(30, TimeUnit.SECONDS));
+  } finally {
+	SBEAMSClient.setMaxParallelRequests(8);
+  }
+}
+//--------------------------------------------------------------------------------------
+public void testLoginPageWithoutCookie () throws Exception
+{
+  System.out.println ("testLoginPageWithoutCookie");
+  SBEAMSClient stranger = new SBEAMSClient("tester", "secret", base);
+  stranger.setCookie("SBEAMSName=forged; path=/");
+  String page = stranger.fetchSbeamsPage(base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv");
+  assertTrue (page.indexOf("password") != -1);
+  assertTrue (server.getLoginCount() == 0);
+}
+//--------------------------------------------------------------------------------------
+public void testSyncedTable () throws Exception
+{
+  System.out.println ("testSyncedTable");
+  SyncedTable table = new SyncedTable(client, base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv",
+									  "MA_condition_id");
+  assertTrue (table.refresh() == 250);
+  // only the rows modified within the last watermark's second come again
+  assertTrue (table.refresh() == 1);
+  assertTrue (table.size() == 250);
+}
+//--------------------------------------------------------------------------------------
+public void testPageRetriedPartWay () throws Exception
+{
+  System.out.println ("testPageRetriedPartWay");
+  StringBuffer text = new StringBuffer();
+  for (int m=0;m<2000;m++)
+	text.append("line ").append(m).append('\n');
+  server.addFile("notes", text.toString().getBytes("UTF-8"));
+  server.interruptDownloads(1, 5000);
+  SBEAMSRequestPolicy policy = new SBEAMSRequestPolicy();
+  policy.setRetry(3, 1, 5);
+  client.setRequestPolicy(policy);
+  // the body breaking off is retried like a failure to connect
+  String page = client.fetchSbeamsPage(base+"/cgi/ViewFile.cgi?FILE_NAME=notes");
+  assertEquals (text.toString(), page);
+  assertTrue (server.getRequestCount("ViewFile.cgi") == 2);
+  assertTrue (policy.getRetryCount() == 1);
+}
+//--------------------------------------------------------------------------------------
+public void testFailedOpenReleasesPermit () throws Exception
+{
+  System.out.println ("testFailedOpenReleasesPermit");
+  server.addFile("notes", "name\tvalue\nfirst\t1\n".getBytes("UTF-8"));
+  server.interruptDownloads(1, 0);
+  SBEAMSConcurrencyLimiter limiter = new SBEAMSConcurrencyLimiter(1, 1);
+  client.setConcurrencyLimiter(limiter);
+  client.fetchSbeamsPage(base+"/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv", 1);
+  String host = new java.net.URL(base).getAuthority();
+  // the body breaks off before the header line is read
+  try {
+	client.openResultSet(base+"/cgi/ViewFile.cgi?FILE_NAME=notes").close();
+	fail ("expected the broken body to fail the open");
+  } catch (IOException e) {
+  }
+  assertTrue (limiter.getInFlight(host) == 0);
+  ResultSetCursor cursor = client.openResultSet(base+"/cgi/ViewFile.cgi?FILE_NAME=notes");
+  assertTrue (cursor.next());
+  assertEquals ("first", cursor.getField("name"));
+  cursor.close();
+}
+//--------------------------------------------------------------------------------------
+public void testResumedDownload () throws Exception
+{
+  System.out.println ("testResumedDownload");
+  byte[] data = new byte[300000];
+  new Random(7).nextBytes(data);
+  server.addFile("matrix_output", data);
+  server.interruptDownloads(2, 100000);
+  File file = File.createTempFile("standin", ".dat");
+  try {
+	long length = client.downloadToFile(base+"/cgi/Microarray/ViewFile.cgi?action=download&FILE_NAME=matrix_output",
+										"", file, null);
+	assertTrue (length == data.length);
+	DataInputStream in = new DataInputStream(new FileInputStream(file));
+	byte[] read = new byte[data.length];
+	in.readFully(read);
+	in.close();
+	assertTrue (Arrays.equals(data, read));
+	assertTrue (server.getRequestCount("ViewFile.cgi") == 3);
+  } finally {
+	file.delete();
+  }
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SBEAMSStandInTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SBEAMSStandInTest
@@ -0,0 +1,125 @@
+// SyncedTableTest.java
+//--------------------------------------------------------------------------------------
+package SBEAMS.unitTests;
+//--------------------------------------------------------------------------------------
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import java.io.*;
+import java.util.*;
+import SBEAMS.ResultSetCursor;
+import SBEAMS.SyncedTable;
+
+//--------------------------------------------------------------------------------------
+public class SyncedTableTest extends TestCase {
+
+  // answers from a list of canned tables, remembering the where clauses it was given
+  private static class CannedTable extends SyncedTable {
+	LinkedList tables = new LinkedList();
+	Vector whereClauses = new Vector();
+	CannedTable () {
+	  super(null, "http://x/sbeams/cgi/ManageTable.cgi?TABLE_NAME=MA_condition&output_mode=tsv",
+			"condition_id");
+	}
+	protected ResultSetCursor openRows(String whereClause) throws Exception {
+	  whereClauses.add((whereClause == null) ? "" : whereClause);
+	  return new ResultSetCursor(new StringReader((String)tables.removeFirst()));
+	}
+  } //CannedTable class
+
+  private static String HEADER = "condition_id\tcondition_name\tdate_modified\trecord_status\n";
+
+//------------------------------------------------------------------------------
+public SyncedTableTest (String name) 
+{
+  super (name);
+}
+//--------------------------------------------------------------------------------------
+public void testDeltaMerge () throws Exception
+{
+  System.out.println ("testDeltaMerge");
+  CannedTable table = new CannedTable();
+  table.tables.add(HEADER+
+				   "1\theat\t2005-01-03 10:00:00\tN\n"+
+				   "2\tcold\t2005-01-05 09:30:00\tN\n"+
+				   "3\tdark\t2005-01-04 12:00:00\tN\n");
+  table.tables.add(HEADER+
+				   "2\tcold shock\t2005-01-06 08:00:00\tM\n"+
+				   "4\tlight\t2005-01-06 08:00:01\tN\n"+
+				   "1\theat\t2005-01-06 09:00:00\tD\n");
+  assertTrue (table.refresh() == 3);
+  assertEquals ("", table.whereClauses.get(0));
+  assertEquals ("2005-01-05 09:30:00", table.getWatermark());
+
+  assertTrue (table.refresh() == 3);
+  assertEquals ("date_modified >= '2005-01-05 09:30:00'", table.whereClauses.get(1));
+  assertTrue (table.size() == 3);
+  assertTrue (table.getRow("1") == null);
+  assertEquals ("cold shock", table.getRow("2")[1]);
+  assertEquals ("light", table.getRow("4")[1]);
+  assertEquals ("2005-01-06 09:00:00", table.getWatermark());
+  // rows keep the order they were first seen in
+  assertEquals ("2", table.getRows()[0][0]);
+}
+//--------------------------------------------------------------------------------------
+public void testFullRefresh () throws Exception
+{
+  System.out.println ("testFullRefresh");
+  CannedTable table = new CannedTable();
+  table.setFullRefreshEvery(2);
+  table.tables.add(HEADER+"1\theat\t2005-01-03 10:00:00\tN\n2\tcold\t2005-01-05 09:30:00\tN\n");
+  table.tables.add(HEADER+"1\theat\t2005-01-03 10:00:00\tN\n");
+  table.tables.add(HEADER);
+  table.refresh();
+  table.refresh();
+  // the second refresh reloaded everything, so the vanished row is gone
+  assertEquals ("", table.whereClauses.get(1));
+  assertTrue (table.size() == 1);
+  table.refresh();
+  assertTrue (((String)table.whereClauses.get(2)).startsWith("date_modified >="));
+  assertTrue (table.size() == 1);
+}
+//--------------------------------------------------------------------------------------
+public void testChangedColumnsReload () throws Exception
+{
+  System.out.println ("testChangedColumnsReload");
+  CannedTable table = new CannedTable();
+  table.tables.add(HEADER+"1\theat\t2005-01-03 10:00:00\tN\n");
+  table.tables.add("condition_id\tcondition_name\tnotes\tdate_modified\trecord_status\n");
+  table.tables.add("condition_id\tcondition_name\tnotes\tdate_modified\trecord_status\n"+
+				   "1\theat\tnew\t2005-01-03 10:00:00\tN\n");
+  table.refresh();
+  table.refresh();
+  assertTrue (table.getHeaders().length == 5);
+  assertEquals ("new", table.getRow("1")[2]);
+}
+//--------------------------------------------------------------------------------------
+public void testSaveAndLoad () throws Exception
+{
+  System.out.println ("testSaveAndLoad");
+  File file = File.createTempFile("synced", ".tsv");
+  file.delete();
+  try {
+	CannedTable table = new CannedTable();
+	table.setFile(file);
+	table.tables.add(HEADER+"1\theat\t2005-01-03 10:00:00\tN\n2\t\t2005-01-05 09:30:00\tN\n");
+	table.refresh();
+
+	CannedTable again = new CannedTable();
+	again.setFile(file);
+	assertEquals ("2005-01-05 09:30:00", again.getWatermark());
+	assertTrue (again.size() == 2);
+	assertEquals ("", again.getRow("2")[1]);
+	again.tables.add(HEADER);
+	assertTrue (again.refresh() == 0);
+	assertTrue (again.whereClauses.get(0).toString().indexOf("2005-01-05 09:30:00") != -1);
+  } finally {
+	file.delete();
+  }
+}
+//--------------------------------------------------------------------------------------
+public static void main (String [] args) 
+{
+  junit.textui.TestRunner.run (new TestSuite (SyncedTableTest.class));
+}
+//--------------------------------------------------------------------------------------
+} // SyncedTableTest